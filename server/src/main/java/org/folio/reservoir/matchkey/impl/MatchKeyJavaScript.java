@@ -8,8 +8,10 @@ import io.vertx.ext.web.client.predicate.ResponsePredicate;
 import java.util.Collection;
 import org.folio.okapi.common.WebClientFactory;
 import org.folio.reservoir.matchkey.MatchKeyMethod;
+import org.folio.reservoir.module.impl.JavaScriptEngine;
+import org.folio.reservoir.module.impl.JsonProxy;
+import org.folio.reservoir.module.impl.ModuleJavaScript;
 import org.graalvm.polyglot.Context;
-import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 
 /**
@@ -21,16 +23,18 @@ public class MatchKeyJavaScript implements MatchKeyMethod {
 
   Value getKeysFunction;
   Context context;
+  boolean objectConvention;
 
   Future<Value> evalUrl(Vertx vertx, String url) {
-    WebClient webClient = WebClientFactory.getWebClient(vertx);
     String moduleName = url.substring(url.lastIndexOf("/") + 1);
-    return webClient.getAbs(url)
-        .expect(ResponsePredicate.SC_OK)
-        .send()
-        .map(response -> context.eval(Source
-          .newBuilder("js", response.bodyAsString(), moduleName)
-          .buildLiteral()));
+    return JavaScriptEngine.getCode(url, () -> {
+      WebClient webClient = WebClientFactory.getWebClient(vertx);
+      return webClient.getAbs(url)
+          .expect(ResponsePredicate.SC_OK)
+          .send()
+          .map(response -> response.bodyAsString());
+    })
+        .map(code -> context.eval(JavaScriptEngine.getSource(moduleName, code)));
   }
 
   @Override
@@ -41,6 +45,14 @@ public class MatchKeyJavaScript implements MatchKeyMethod {
       return Future.failedFuture(
         new IllegalArgumentException("javascript: url or script must be given"));
     }
+    // convention "object" passes payload as read-only object instead of JSON string
+    String convention = configuration.getString("convention");
+    if (convention != null && !ModuleJavaScript.CONVENTION_STRING.equals(convention)
+        && !ModuleJavaScript.CONVENTION_OBJECT.equals(convention)) {
+      return Future.failedFuture(
+        new IllegalArgumentException("javascript: unknown convention '" + convention + "'"));
+    }
+    objectConvention = ModuleJavaScript.CONVENTION_OBJECT.equals(convention);
     Future<Void> future = Future.succeededFuture();
     if (url != null) {
       // if url is specified and ends with mjs, assume it is a ES module that exports a
@@ -48,11 +60,12 @@ public class MatchKeyJavaScript implements MatchKeyMethod {
       final boolean isModule = url.endsWith("mjs");
       if (isModule) {
         context = Context.newBuilder("js")
+            .engine(JavaScriptEngine.getEngine())
             .allowExperimentalOptions(true)
             .option("js.esm-eval-returns-exports", "true")
             .build();
       } else {
-        context = Context.create("js");
+        context = Context.newBuilder("js").engine(JavaScriptEngine.getEngine()).build();
       }
       future = evalUrl(vertx, url)
           .map(value -> getKeysFunction = isModule ? value.getMember("matchkey") : value)
@@ -62,10 +75,10 @@ public class MatchKeyJavaScript implements MatchKeyMethod {
     // evaluates to a function that accepts an object and returns an array of strings
     if (script != null) {
       if (context == null) {
-        context = Context.create("js");
+        context = Context.newBuilder("js").engine(JavaScriptEngine.getEngine()).build();
       }
       future = future
-          .map(v -> getKeysFunction = context.eval("js", script))
+          .map(v -> getKeysFunction = context.eval(JavaScriptEngine.getSource("script.js", script)))
           .mapEmpty();
     }
     return future;
@@ -82,7 +95,8 @@ public class MatchKeyJavaScript implements MatchKeyMethod {
 
   @Override
   public void getKeys(JsonObject payload, Collection<String> keys) {
-    Value value = getKeysFunction.execute(payload.encode());
+    Value value = getKeysFunction.execute(
+        objectConvention ? JsonProxy.wrap(payload) : payload.encode());
     if (value.hasArrayElements()) {
       for (int i = 0; i < value.getArraySize(); i++) {
         Value memberValue = value.getArrayElement(i);
@@ -19,6 +19,10 @@ public class ModuleExecutable {
   }
 
 
+  public String getModuleName() {
+    return invocation.getModuleName();
+  }
+
   public Future<JsonObject> execute(JsonObject input) {
     return module.execute(invocation.getFunctionName(), input);
 
@@ -0,0 +1,91 @@
+package org.folio.reservoir.module;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.micrometer.backends.BackendRegistries;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker pool for module execution.
+ *
+ * <p>Matchers and transformers are CPU bound. They execute unordered on a pool of their
+ * own, so that they can not starve other blocking work on the Vert.x worker pool. Time
+ * spent waiting for a worker and time spent executing is reported per module.
+ */
+public final class ModuleWorker {
+  public static final String POOL_NAME = "reservoir-module";
+  private static final String QUEUE_METRIC = "reservoir.module.queue";
+  private static final String EXECUTE_METRIC = "reservoir.module.execute";
+  private static int poolSize = Runtime.getRuntime().availableProcessors();
+  private static final Map<Vertx, WorkerExecutor> executors = new HashMap<>();
+
+  private ModuleWorker() { }
+
+  /**
+   * Set number of threads for module execution.
+   *
+   * <p>Takes effect for pools created after the call.
+   * @param size number of threads; must be at least 1
+   */
+  public static void setPoolSize(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("module worker pool size must be at least 1");
+    }
+    poolSize = size;
+  }
+
+  public static int getPoolSize() {
+    return poolSize;
+  }
+
+  static synchronized WorkerExecutor getExecutor(Vertx vertx) {
+    return executors.computeIfAbsent(vertx,
+        v -> v.createSharedWorkerExecutor(POOL_NAME, poolSize));
+  }
+
+  /**
+   * Execute blocking module code on the module worker pool.
+   * @param vertx Vert.x instance
+   * @param moduleId module identifier for metrics
+   * @param handler blocking code that completes the promise
+   * @param <T> result type
+   * @return future with result of handler
+   */
+  public static <T> Future<T> execute(Vertx vertx, String moduleId,
+      Handler<Promise<T>> handler) {
+
+    MeterRegistry registry = BackendRegistries.getDefaultNow();
+    long queued = System.nanoTime();
+    return getExecutor(vertx).<T>executeBlocking(promise -> {
+      long start = System.nanoTime();
+      Promise<T> result = Promise.promise();
+      try {
+        handler.handle(result);
+      } catch (Exception e) {
+        result.tryFail(e);
+      }
+      if (registry != null) {
+        timer(registry, QUEUE_METRIC, "Wait for a module worker", moduleId)
+            .record(start - queued, TimeUnit.NANOSECONDS);
+        timer(registry, EXECUTE_METRIC, "Module execution", moduleId)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      }
+      result.future().onComplete(promise);
+    }, false);
+  }
+
+  private static Timer timer(MeterRegistry registry, String name, String description,
+      String moduleId) {
+    return Timer.builder(name)
+        .description(description)
+        .tag("module", moduleId)
+        .register(registry);
+  }
+}
@@ -0,0 +1,632 @@
+package org.folio.reservoir.module.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Goldrush match keys computed over MARC-in-JSON.
+ *
+ * <p>Java port of {@code js/matchkeys/goldrush/goldrush.mjs} (2021) and
+ * {@code js/matchkeys/goldrush2024/goldrush.mjs} (2024). The keys are identical to those
+ * of the JavaScript versions; JavaScript semantics (truthiness, trim, substring, Unicode
+ * Diacritic property) are reproduced where they matter.
+ */
+public final class Goldrush {
+
+  private static final String DEFAULT_LEADER = "00000nam a22000000a 4500";
+
+  private static final String PUNCTUATION = " !\"#$()*+,-./:;<=>?@[\\]^_`|~\u00a9";
+
+  private static final Pattern LEADING_A = Pattern.compile("^ *[aA] +");
+  private static final Pattern LEADING_AN = Pattern.compile("^ *[aA]n +");
+  private static final Pattern LEADING_THE = Pattern.compile("^ *[tT]he +");
+  private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-zA-Z0-9]");
+  private static final Pattern NON_DIGIT = Pattern.compile("[^0-9]");
+  private static final Pattern FOUR_DIGITS = Pattern.compile("[0-9]{4}");
+  private static final Pattern YEAR = Pattern.compile("[1-9][0-9]{3}");
+  private static final Pattern LEADING_DIGITS = Pattern.compile("^[0-9]{1,3}");
+  private static final Pattern LEADING_LETTERS = Pattern.compile("^[a-zA-Z]{3}");
+  private static final Pattern[] DIGITS = {
+      Pattern.compile("[0-9]"), Pattern.compile("[0-9]{2}"), Pattern.compile("[0-9]{3}")
+  };
+  private static final Pattern ELECTRONIC_RESOURCE = wordPattern("electronic resource");
+  private static final Pattern ELECTRONIC_REPRODUCTION = wordPattern("electronic reproduction");
+  private static final Pattern ONLINE_RESOURCE = wordPattern("online resource");
+
+  /**
+   * Code points with the Unicode Diacritic property as inclusive ranges; the set that
+   * {@code \p{Diacritic}} matches in the JavaScript version.
+   */
+  private static final int[] DIACRITICS = {
+      0x005E, 0x005E, 0x0060, 0x0060, 0x00A8, 0x00A8, 0x00AF, 0x00AF,
+      0x00B4, 0x00B4, 0x00B7, 0x00B8, 0x02B0, 0x034E, 0x0350, 0x0357,
+      0x035D, 0x0362, 0x0374, 0x0375, 0x037A, 0x037A, 0x0384, 0x0385,
+      0x0483, 0x0487, 0x0559, 0x0559, 0x0591, 0x05A1, 0x05A3, 0x05BD,
+      0x05BF, 0x05BF, 0x05C1, 0x05C2, 0x05C4, 0x05C4, 0x064B, 0x0652,
+      0x0657, 0x0658, 0x06DF, 0x06E0, 0x06E5, 0x06E6, 0x06EA, 0x06EC,
+      0x0730, 0x074A, 0x07A6, 0x07B0, 0x07EB, 0x07F5, 0x0818, 0x0819,
+      0x0898, 0x089F, 0x08C9, 0x08D2, 0x08E3, 0x08FE, 0x093C, 0x093C,
+      0x094D, 0x094D, 0x0951, 0x0954, 0x0971, 0x0971, 0x09BC, 0x09BC,
+      0x09CD, 0x09CD, 0x0A3C, 0x0A3C, 0x0A4D, 0x0A4D, 0x0ABC, 0x0ABC,
+      0x0ACD, 0x0ACD, 0x0AFD, 0x0AFF, 0x0B3C, 0x0B3C, 0x0B4D, 0x0B4D,
+      0x0B55, 0x0B55, 0x0BCD, 0x0BCD, 0x0C3C, 0x0C3C, 0x0C4D, 0x0C4D,
+      0x0CBC, 0x0CBC, 0x0CCD, 0x0CCD, 0x0D3B, 0x0D3C, 0x0D4D, 0x0D4D,
+      0x0DCA, 0x0DCA, 0x0E47, 0x0E4C, 0x0E4E, 0x0E4E, 0x0EBA, 0x0EBA,
+      0x0EC8, 0x0ECC, 0x0F18, 0x0F19, 0x0F35, 0x0F35, 0x0F37, 0x0F37,
+      0x0F39, 0x0F39, 0x0F3E, 0x0F3F, 0x0F82, 0x0F84, 0x0F86, 0x0F87,
+      0x0FC6, 0x0FC6, 0x1037, 0x1037, 0x1039, 0x103A, 0x1063, 0x1064,
+      0x1069, 0x106D, 0x1087, 0x108D, 0x108F, 0x108F, 0x109A, 0x109B,
+      0x135D, 0x135F, 0x1714, 0x1715, 0x17C9, 0x17D3, 0x17DD, 0x17DD,
+      0x1939, 0x193B, 0x1A75, 0x1A7C, 0x1A7F, 0x1A7F, 0x1AB0, 0x1ABE,
+      0x1AC1, 0x1ACB, 0x1B34, 0x1B34, 0x1B44, 0x1B44, 0x1B6B, 0x1B73,
+      0x1BAA, 0x1BAB, 0x1C36, 0x1C37, 0x1C78, 0x1C7D, 0x1CD0, 0x1CE8,
+      0x1CED, 0x1CED, 0x1CF4, 0x1CF4, 0x1CF7, 0x1CF9, 0x1D2C, 0x1D6A,
+      0x1DC4, 0x1DCF, 0x1DF5, 0x1DFF, 0x1FBD, 0x1FBD, 0x1FBF, 0x1FC1,
+      0x1FCD, 0x1FCF, 0x1FDD, 0x1FDF, 0x1FED, 0x1FEF, 0x1FFD, 0x1FFE,
+      0x2CEF, 0x2CF1, 0x2E2F, 0x2E2F, 0x302A, 0x302F, 0x3099, 0x309C,
+      0x30FC, 0x30FC, 0xA66F, 0xA66F, 0xA67C, 0xA67D, 0xA67F, 0xA67F,
+      0xA69C, 0xA69D, 0xA6F0, 0xA6F1, 0xA700, 0xA721, 0xA788, 0xA78A,
+      0xA7F8, 0xA7F9, 0xA8C4, 0xA8C4, 0xA8E0, 0xA8F1, 0xA92B, 0xA92E,
+      0xA953, 0xA953, 0xA9B3, 0xA9B3, 0xA9C0, 0xA9C0, 0xA9E5, 0xA9E5,
+      0xAA7B, 0xAA7D, 0xAABF, 0xAAC2, 0xAAF6, 0xAAF6, 0xAB5B, 0xAB5F,
+      0xAB69, 0xAB6B, 0xABEC, 0xABED, 0xFB1E, 0xFB1E, 0xFE20, 0xFE2F,
+      0xFF3E, 0xFF3E, 0xFF40, 0xFF40, 0xFF70, 0xFF70, 0xFF9E, 0xFF9F,
+      0xFFE3, 0xFFE3, 0x102E0, 0x102E0, 0x10780, 0x10785, 0x10787, 0x107B0,
+      0x107B2, 0x107BA, 0x10AE5, 0x10AE6, 0x10D22, 0x10D27, 0x10EFD, 0x10EFF,
+      0x10F46, 0x10F50, 0x10F82, 0x10F85, 0x11046, 0x11046, 0x11070, 0x11070,
+      0x110B9, 0x110BA, 0x11133, 0x11134, 0x11173, 0x11173, 0x111C0, 0x111C0,
+      0x111CA, 0x111CC, 0x11235, 0x11236, 0x112E9, 0x112EA, 0x1133C, 0x1133C,
+      0x1134D, 0x1134D, 0x11366, 0x1136C, 0x11370, 0x11374, 0x11442, 0x11442,
+      0x11446, 0x11446, 0x114C2, 0x114C3, 0x115BF, 0x115C0, 0x1163F, 0x1163F,
+      0x116B6, 0x116B7, 0x1172B, 0x1172B, 0x11839, 0x1183A, 0x1193D, 0x1193E,
+      0x11943, 0x11943, 0x119E0, 0x119E0, 0x11A34, 0x11A34, 0x11A47, 0x11A47,
+      0x11A99, 0x11A99, 0x11C3F, 0x11C3F, 0x11D42, 0x11D42, 0x11D44, 0x11D45,
+      0x11D97, 0x11D97, 0x13447, 0x13455, 0x16AF0, 0x16AF4, 0x16B30, 0x16B36,
+      0x16F8F, 0x16F9F, 0x16FF0, 0x16FF1, 0x1AFF0, 0x1AFF3, 0x1AFF5, 0x1AFFB,
+      0x1AFFD, 0x1AFFE, 0x1CF00, 0x1CF2D, 0x1CF30, 0x1CF46, 0x1D167, 0x1D169,
+      0x1D16D, 0x1D172, 0x1D17B, 0x1D182, 0x1D185, 0x1D18B, 0x1D1AA, 0x1D1AD,
+      0x1E030, 0x1E06D, 0x1E130, 0x1E136, 0x1E2AE, 0x1E2AE, 0x1E2EC, 0x1E2EF,
+      0x1E8D0, 0x1E8D6, 0x1E944, 0x1E946, 0x1E948, 0x1E94A
+  };
+
+  private Goldrush() { }
+
+  /** Case-insensitive words; like JavaScript {@code /\\bwords\\b/i} with ASCII word bounds. */
+  private static Pattern wordPattern(String words) {
+    return Pattern.compile("(?<![A-Za-z0-9_])" + words + "(?![A-Za-z0-9_])",
+        Pattern.CASE_INSENSITIVE);
+  }
+
+  private record Marc(JsonArray fields, String leader) { }
+
+  /**
+   * Compute 2021 goldrush match key.
+   * @param payload object with MARC-in-JSON in "marc"; not modified
+   * @return match key
+   * @throws IllegalArgumentException if the MARC record is invalid
+   */
+  public static String matchkey2021(JsonObject payload) {
+    Marc marc = loadMarcJson(payload);
+    String key = doTitle(getFields(marc, "245", "a", "245", "b", "245", "p"), false)
+        + doGmd(getField(marc, "245", "h"))
+        + doPublicationYear(getFields(marc, "008", null, "264", "c", "260", "c"), false)
+        + doPagination(getField(marc, "300", "a"))
+        + doEditionStatement2021(getField(marc, "250", "a"))
+        + doPublisherName(getFields(marc, "264", "b", "260", "b"))
+        + doTypeOfRecord(marc.leader())
+        + doTitlePart(getMultiSubfields(marc, "245", "p"))
+        + doTitleNumber(getField(marc, "245", "n"))
+        + doAuthor2021(getFields(marc, "100", "a", "110", "a", "111", "a"))
+        + doInclusiveDates(getField(marc, "245", "f"))
+        + doGdcn(getField(marc, "086", "a"))
+        + doElectronicIndicator(marc, false);
+    return key.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Compute 2024 goldrush match key.
+   * @param payload object with MARC-in-JSON in "marc"; not modified
+   * @return match key
+   * @throws IllegalArgumentException if the MARC record is invalid
+   */
+  public static String matchkey2024(JsonObject payload) {
+    Marc marc = loadMarcJson(payload);
+    List<Object> year = new ArrayList<>(3);
+    year.add(getField(marc, "008", null));
+    year.addAll(getRelevantSubFields(marc, "264", "c", "260", "c"));
+    String key = doTitle(getRelevantSubFields(marc, "245", "a", "245", "b", "245", "p"), true)
+        + doPublicationYear(year, true)
+        + doPagination(getRelevantSubField(marc, "300", "a"))
+        + doEditionStatement2024(getRelevantSubField(marc, "250", "a"))
+        + doPublisherName(getRelevantSubFields(marc, "264", "b", "260", "b"))
+        + doTypeOfRecord(marc.leader())
+        + doTitlePart(getMultiSubfields(marc, "245", "p"))
+        + doTitleNumber(getRelevantSubField(marc, "245", "n"))
+        + doAuthor2024(getFields(marc, "100", "a", "110", "a", "111", "a", "130", "a"))
+        + doInclusiveDates(getRelevantSubField(marc, "245", "f"))
+        + doGdcn(getRelevantSubField(marc, "086", "a"))
+        + doElectronicIndicator(marc, true);
+    return key.toLowerCase(Locale.ROOT);
+  }
+
+  private static Marc loadMarcJson(JsonObject payload) {
+    if (!(payload.getValue("marc") instanceof JsonObject marc)) {
+      throw new IllegalArgumentException("MARC record is missing.");
+    }
+    if (!marc.containsKey("fields")) {
+      throw new IllegalArgumentException("MARC fields array is missing.");
+    }
+    if (!(marc.getValue("fields") instanceof JsonArray fields)) {
+      throw new IllegalArgumentException("MARC fields is not an array.");
+    }
+    Object leader = marc.getValue("leader");
+    if (!truthy(leader)) {
+      leader = DEFAULT_LEADER;
+    }
+    return new Marc(fields, leader instanceof String s ? s : null);
+  }
+
+  private static Object member(Object object, String key) {
+    return object instanceof JsonObject json ? json.getValue(key) : null;
+  }
+
+  private static boolean truthy(Object value) {
+    if (value == null) {
+      return false;
+    }
+    if (value instanceof String s) {
+      return !s.isEmpty();
+    }
+    if (value instanceof Boolean b) {
+      return b;
+    }
+    if (value instanceof Number n) {
+      double d = n.doubleValue();
+      return d != 0 && !Double.isNaN(d);
+    }
+    return true;
+  }
+
+  private static boolean hasField(Marc marc, String tag) {
+    for (Object f : marc.fields()) {
+      if (truthy(member(f, tag))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * First truthy subfield of the first field with tag; the field itself for control
+   * fields.
+   */
+  private static Object getField(Marc marc, String tag, String sf) {
+    for (Object f : marc.fields()) {
+      Object field = member(f, tag);
+      if (!truthy(field)) {
+        continue;
+      }
+      Object subfields = member(field, "subfields");
+      if (!truthy(subfields)) {
+        return field;
+      }
+      if (subfields instanceof JsonArray array) {
+        for (Object s : array) {
+          Object data = member(s, sf);
+          if (truthy(data)) {
+            return data;
+          }
+        }
+      }
+      return null;
+    }
+    return null;
+  }
+
+  /** getField for tag/subfield pairs. */
+  private static List<Object> getFields(Marc marc, String... tagsAndSubfields) {
+    List<Object> data = new ArrayList<>(tagsAndSubfields.length / 2);
+    for (int i = 0; i < tagsAndSubfields.length; i += 2) {
+      data.add(getField(marc, tagsAndSubfields[i], tagsAndSubfields[i + 1]));
+    }
+    return data;
+  }
+
+  /** First truthy subfield in any field with tag. */
+  private static Object getRelevantSubField(Marc marc, String tag, String sf) {
+    for (Object f : marc.fields()) {
+      Object field = member(f, tag);
+      if (truthy(field) && member(field, "subfields") instanceof JsonArray array) {
+        for (Object s : array) {
+          Object data = member(s, sf);
+          if (truthy(data)) {
+            return data;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /** getRelevantSubField for tag/subfield pairs. */
+  private static List<Object> getRelevantSubFields(Marc marc, String... tagsAndSubfields) {
+    List<Object> data = new ArrayList<>(tagsAndSubfields.length / 2);
+    for (int i = 0; i < tagsAndSubfields.length; i += 2) {
+      data.add(getRelevantSubField(marc, tagsAndSubfields[i], tagsAndSubfields[i + 1]));
+    }
+    return data;
+  }
+
+  /** All truthy subfields in all fields with tag. */
+  private static List<Object> getMultiSubfields(Marc marc, String tag, String sf) {
+    List<Object> data = new ArrayList<>();
+    for (Object f : marc.fields()) {
+      Object field = member(f, tag);
+      if (truthy(field) && member(field, "subfields") instanceof JsonArray array) {
+        for (Object s : array) {
+          Object value = member(s, sf);
+          if (truthy(value)) {
+            data.add(value);
+          }
+        }
+      }
+    }
+    return data;
+  }
+
+  /** Values that JavaScript string methods are called on must be strings. */
+  private static String string(Object value) {
+    if (value instanceof String s) {
+      return s;
+    }
+    throw new IllegalArgumentException("MARC value is not a string: " + value);
+  }
+
+  /** JavaScript ToString for values that end up in template literals. */
+  private static String toJsString(Object value) {
+    if (value instanceof Double || value instanceof Float) {
+      double d = ((Number) value).doubleValue();
+      if (d == Math.rint(d) && Math.abs(d) < 1e21) {
+        return Long.toString((long) d);
+      }
+      return Double.toString(d);
+    }
+    if (value instanceof JsonObject) {
+      return "[object Object]";
+    }
+    if (value instanceof JsonArray array) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < array.size(); i++) {
+        if (i > 0) {
+          sb.append(',');
+        }
+        Object v = array.getValue(i);
+        if (v != null) {
+          sb.append(toJsString(v));
+        }
+      }
+      return sb.toString();
+    }
+    return String.valueOf(value);
+  }
+
+  /** JavaScript String.prototype.substring. */
+  private static String substring(String s, int start, int end) {
+    int len = s.length();
+    int a = Math.min(Math.max(start, 0), len);
+    int b = Math.min(Math.max(end, 0), len);
+    return a <= b ? s.substring(a, b) : s.substring(b, a);
+  }
+
+  private static boolean isJsWhitespace(char c) {
+    return switch (c) {
+      case '\t', '\n', '\u000b', '\f', '\r', ' ', '\u00a0', '\u1680', '\u2028', '\u2029',
+          '\u202f', '\u205f', '\u3000', '\ufeff' -> true;
+      default -> c >= '\u2000' && c <= '\u200a';
+    };
+  }
+
+  /** JavaScript String.prototype.trim. */
+  private static String trim(String s) {
+    int start = 0;
+    int end = s.length();
+    while (start < end && isJsWhitespace(s.charAt(start))) {
+      start++;
+    }
+    while (end > start && isJsWhitespace(s.charAt(end - 1))) {
+      end--;
+    }
+    return s.substring(start, end);
+  }
+
+  static boolean isDiacritic(int codePoint) {
+    int i = Arrays.binarySearch(DIACRITICS, codePoint);
+    // found: start or end of a range; not found: inside range if after a start
+    return i >= 0 || (-i - 1) % 2 == 1;
+  }
+
+  private static String normalizeAndUnaccent(Object value) {
+    String s = Normalizer.normalize(string(value), Normalizer.Form.NFD);
+    StringBuilder sb = new StringBuilder(s.length());
+    s.codePoints().filter(cp -> !isDiacritic(cp)).forEach(sb::appendCodePoint);
+    return sb.toString();
+  }
+
+  private static String stripPunctuation(String keyPart, String replaceChar) {
+    String s = keyPart.replace("%22", "_").replace("%", "_");
+    s = LEADING_A.matcher(s).replaceFirst("");
+    s = LEADING_AN.matcher(s).replaceFirst("");
+    s = LEADING_THE.matcher(s).replaceFirst("");
+    StringBuilder sb = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\'' || c == '{' || c == '}') {
+        continue;
+      }
+      if (c == '&') {
+        sb.append("and");
+      } else if (PUNCTUATION.indexOf(c) >= 0) {
+        sb.append(replaceChar);
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Runs of spaces become a single underscore; then cut or pad with underscores. */
+  private static String padContent(String s, int len) {
+    StringBuilder sb = new StringBuilder(len);
+    for (int i = 0; i < s.length() && sb.length() < len; i++) {
+      char c = s.charAt(i);
+      if (c == ' ') {
+        while (i + 1 < s.length() && s.charAt(i + 1) == ' ') {
+          i++;
+        }
+        c = '_';
+      }
+      sb.append(c);
+    }
+    while (sb.length() < len) {
+      sb.append('_');
+    }
+    return sb.toString();
+  }
+
+  private static String doTitle(List<Object> data, boolean v2024) {
+    StringBuilder sb = new StringBuilder();
+    for (Object value : data) {
+      if (value != null) {
+        sb.append(trim(stripPunctuation(string(value), " ")));
+      }
+    }
+    String title = v2024 ? sb.toString().replace(" ", "") : sb.toString();
+    return padContent(normalizeAndUnaccent(title), 70);
+  }
+
+  private static String doGmd(Object data) {
+    String field = "";
+    if (data != null) {
+      field = NON_ALPHANUMERIC.matcher(normalizeAndUnaccent(data)).replaceAll("");
+    }
+    return padContent(field, 5);
+  }
+
+  private static boolean isYear(String digits, boolean v2024) {
+    Pattern pattern = v2024 ? YEAR : FOUR_DIGITS;
+    return pattern.matcher(digits).find() && !"9999".equals(digits);
+  }
+
+  private static String digits(String s) {
+    return NON_DIGIT.matcher(s).replaceAll("");
+  }
+
+  private static String doPublicationYear(List<Object> data, boolean v2024) {
+    String field = "";
+    for (int n = 0; n < data.size() && field.isEmpty(); n++) {
+      Object value = data.get(n);
+      if (value == null) {
+        continue;
+      }
+      String s = toJsString(value);
+      if (n == 0) {
+        List<String> dates = new ArrayList<>(2);
+        if (!v2024) {
+          dates.add(substring(s, 11, 15));
+          dates.add(substring(s, 7, 11));
+        } else if ("r".equals(substring(s, 6, 7))) {
+          dates.add(substring(s, 7, 11));
+        } else {
+          dates.add(substring(s, 11, 15));
+        }
+        for (String date : dates) {
+          String d = digits(date);
+          if (isYear(d, v2024)) {
+            field = d;
+            break;
+          }
+        }
+      } else {
+        String d = digits(s);
+        if (isYear(d, v2024)) {
+          field = d;
+        }
+      }
+    }
+    if (field.isEmpty()) {
+      field = "0000";
+    }
+    return padContent(field, 4);
+  }
+
+  private static String doPagination(Object data) {
+    String field = "";
+    if (data != null) {
+      Matcher m = FOUR_DIGITS.matcher(string(data));
+      if (m.find()) {
+        field = m.group();
+      }
+    }
+    return padContent(field, 4);
+  }
+
+  private static String editionWord(String word, String other) {
+    return switch (word) {
+      case "fir" -> "1";
+      case "sec" -> "2";
+      case "thi" -> "3";
+      case "fou" -> "4";
+      case "fif" -> "5";
+      case "six" -> "6";
+      case "sev" -> "7";
+      case "eig" -> "8";
+      case "nin" -> "9";
+      case "ten" -> "10";
+      default -> other;
+    };
+  }
+
+  private static String doEditionStatement2021(Object data) {
+    String field = "";
+    if (data != null) {
+      String s = normalizeAndUnaccent(data);
+      for (int n = DIGITS.length - 1; n >= 0 && field.isEmpty(); n--) {
+        Matcher m = DIGITS[n].matcher(s);
+        if (m.find()) {
+          field = m.group();
+        }
+      }
+      if (field.isEmpty()) {
+        field = editionWord(substring(s, 0, 3).toLowerCase(Locale.ROOT), "");
+      }
+    }
+    return padContent(field, 3);
+  }
+
+  private static String doEditionStatement2024(Object data) {
+    String field = "";
+    if (data != null) {
+      String s = trim(normalizeAndUnaccent(data));
+      Matcher m = LEADING_DIGITS.matcher(s);
+      if (m.find()) {
+        field = m.group();
+      } else {
+        m = LEADING_LETTERS.matcher(s);
+        if (m.find()) {
+          field = editionWord(m.group().toLowerCase(Locale.ROOT), "1");
+        }
+      }
+    }
+    if (field.isEmpty()) {
+      field = "1";
+    }
+    return padContent(field, 3);
+  }
+
+  private static String doPublisherName(List<Object> data) {
+    String field = "";
+    for (Object value : data) {
+      if (value != null) {
+        field = normalizeAndUnaccent(value).toLowerCase(Locale.ROOT);
+        break;
+      }
+    }
+    return padContent(stripPunctuation(field, " ").replace(" ", ""), 5);
+  }
+
+  private static String doTypeOfRecord(String leader) {
+    if (leader != null && leader.length() > 10) {
+      return substring(leader, 6, 7);
+    }
+    return "";
+  }
+
+  private static String doTitlePart(List<Object> data) {
+    StringBuilder sb = new StringBuilder();
+    for (int n = 1; n < data.size(); n++) {
+      String s = trim(normalizeAndUnaccent(data.get(n)));
+      sb.append(substring(stripPunctuation(s, "_"), 0, 10));
+    }
+    return padContent(sb.toString(), 30);
+  }
+
+  private static String doTitleNumber(Object data) {
+    String field = "";
+    if (data != null) {
+      field = stripPunctuation(string(data), "_");
+    }
+    return padContent(field, 10);
+  }
+
+  private static String doAuthor2021(List<Object> data) {
+    StringBuilder sb = new StringBuilder();
+    for (Object value : data) {
+      if (value != null) {
+        sb.append(normalizeAndUnaccent(stripPunctuation(string(value), "_")));
+      }
+    }
+    return padContent(sb.toString(), 20);
+  }
+
+  private static String doAuthor2024(List<Object> data) {
+    StringBuilder sb = new StringBuilder();
+    for (Object value : data) {
+      if (value != null) {
+        sb.append(normalizeAndUnaccent(stripPunctuation(string(value), "")));
+      }
+    }
+    return padContent(NON_ALPHANUMERIC.matcher(sb).replaceAll(""), 5);
+  }
+
+  private static String doInclusiveDates(Object data) {
+    String field = "";
+    if (data != null) {
+      field = stripPunctuation(string(data).replace(" ", ""), "_");
+    }
+    return padContent(field, 15);
+  }
+
+  private static String doGdcn(Object data) {
+    String field = "";
+    if (data != null) {
+      field = normalizeAndUnaccent(stripPunctuation(string(data), "_"));
+      field = substring(field, 0, 32000);
+    }
+    return field;
+  }
+
+  private static boolean find(Object data, Pattern pattern) {
+    if (data == null) {
+      return false;
+    }
+    String s = normalizeAndUnaccent(data);
+    return !s.isEmpty() && pattern.matcher(s).find();
+  }
+
+  private static boolean startsWithC(Object data) {
+    return truthy(data) && string(data).startsWith("c");
+  }
+
+  private static String doElectronicIndicator(Marc marc, boolean v2024) {
+    List<Object> data = v2024
+        ? getRelevantSubFields(marc, "245", "h", "590", "a", "533", "a", "300", "a")
+        : getFields(marc, "245", "h", "590", "a", "533", "a", "300", "a");
+    if (find(data.get(0), ELECTRONIC_RESOURCE)
+        || find(data.get(1), ELECTRONIC_REPRODUCTION)
+        || find(data.get(2), ELECTRONIC_REPRODUCTION)
+        || find(data.get(3), ONLINE_RESOURCE)
+        || startsWithC(getField(marc, "007", null))
+        || startsWithC(getField(marc, "337", "a"))
+        || (hasField(marc, "086") && hasField(marc, "856"))) {
+      return "e";
+    }
+    return "p";
+  }
+}
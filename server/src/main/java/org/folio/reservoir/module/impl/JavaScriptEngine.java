@@ -0,0 +1,101 @@
+package org.folio.reservoir.module.impl;
+
+import io.vertx.core.Future;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
+
+/**
+ * Process-wide JavaScript engine with caches for sources.
+ *
+ * <p>Contexts created on the shared engine reuse parsed and compiled code for equal
+ * sources, so sources are cached by content hash to make identical code, e.g. the
+ * same matcher used by many tenants, share one source. Code fetched from a URL is cached
+ * by URL until purged.
+ */
+public final class JavaScriptEngine {
+  private static final int MAX_SOURCES = 256;
+
+  private static Engine engine;
+  private static final Map<String, Source> sources = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Source> eldest) {
+      return size() > MAX_SOURCES;
+    }
+  };
+  private static final Map<String, Future<String>> urls = new ConcurrentHashMap<>();
+
+  private JavaScriptEngine() { }
+
+  /**
+   * Get the shared engine.
+   * @return engine; created on first use
+   */
+  public static synchronized Engine getEngine() {
+    if (engine == null) {
+      engine = Engine.create("js");
+    }
+    return engine;
+  }
+
+  static String hash(String name, String code) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      md.update(name.getBytes(StandardCharsets.UTF_8));
+      md.update((byte) 0);
+      md.update(code.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(md.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Get source for code.
+   * @param name source name; a name ending with .mjs designates an ES module
+   * @param code JavaScript code
+   * @return source; same instance for same name and code while cached
+   */
+  public static Source getSource(String name, String code) {
+    String key = hash(name, code);
+    synchronized (sources) {
+      return sources.computeIfAbsent(key,
+          k -> Source.newBuilder("js", code, name).buildLiteral());
+    }
+  }
+
+  /**
+   * Get code for URL.
+   *
+   * <p>Fetches that are in progress are shared. Failed fetches are not cached.
+   * @param url URL of code
+   * @param fetcher fetches code if not in cache
+   * @return async result with code
+   */
+  public static Future<String> getCode(String url, Supplier<Future<String>> fetcher) {
+    Future<String> future = urls.get(url);
+    if (future != null) {
+      return future;
+    }
+    Future<String> fetched = fetcher.get();
+    urls.put(url, fetched);
+    fetched.onFailure(e -> urls.remove(url, fetched));
+    return fetched;
+  }
+
+  /**
+   * Forget code fetched from URL, so that it is fetched again on next use.
+   * @param url URL of code
+   */
+  public static void purgeCode(String url) {
+    urls.remove(url);
+  }
+
+}
@@ -0,0 +1,153 @@
+package org.folio.reservoir.module.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.Proxy;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+/**
+ * Exposes Vert.x JSON to JavaScript without encoding it as a string.
+ *
+ * <p>Objects and arrays are wrapped in read-only proxies, that are converted when
+ * members are accessed. As the JSON is shared with the caller, scripts can not modify
+ * it; they return new values instead.
+ */
+public final class JsonProxy {
+
+  private JsonProxy() { }
+
+  /**
+   * Wrap JSON value for JavaScript.
+   * @param value JSON value: object, array, string, number, boolean or null
+   * @return proxy for object and array; value itself otherwise
+   */
+  public static Object wrap(Object value) {
+    if (value instanceof JsonObject jsonObject) {
+      return new ObjectProxy(jsonObject);
+    }
+    if (value instanceof JsonArray jsonArray) {
+      return new ArrayProxy(jsonArray);
+    }
+    return value;
+  }
+
+  /**
+   * Convert JavaScript value to JSON.
+   * @param value JavaScript value
+   * @return JsonObject, JsonArray, String, Number, Boolean or null
+   * @throws IllegalArgumentException if value can not be represented as JSON
+   */
+  public static Object toJson(Value value) {
+    if (value == null || value.isNull()) {
+      return null;
+    }
+    if (value.isProxyObject()) {
+      Proxy proxy = value.asProxyObject();
+      if (proxy instanceof ObjectProxy objectProxy) {
+        return objectProxy.json;
+      }
+      if (proxy instanceof ArrayProxy arrayProxy) {
+        return arrayProxy.json;
+      }
+    }
+    if (value.isString()) {
+      return value.asString();
+    }
+    if (value.isBoolean()) {
+      return value.asBoolean();
+    }
+    if (value.isNumber()) {
+      if (value.fitsInInt()) {
+        return value.asInt();
+      }
+      if (value.fitsInLong()) {
+        return value.asLong();
+      }
+      return value.asDouble();
+    }
+    if (value.hasArrayElements()) {
+      JsonArray array = new JsonArray();
+      for (long i = 0; i < value.getArraySize(); i++) {
+        array.add(toJson(value.getArrayElement(i)));
+      }
+      return array;
+    }
+    if (value.hasMembers() && !value.canExecute()) {
+      JsonObject object = new JsonObject();
+      for (String key : value.getMemberKeys()) {
+        Value member = value.getMember(key);
+        if (!member.canExecute()) {
+          object.put(key, toJson(member));
+        }
+      }
+      return object;
+    }
+    throw new IllegalArgumentException("Cannot convert " + value + " to JSON");
+  }
+
+  static final class ObjectProxy implements ProxyObject {
+    private final JsonObject json;
+
+    ObjectProxy(JsonObject json) {
+      this.json = json;
+    }
+
+    @Override
+    public Object getMember(String key) {
+      return wrap(json.getValue(key));
+    }
+
+    @Override
+    public Object getMemberKeys() {
+      return ProxyArray.fromArray(json.fieldNames().toArray());
+    }
+
+    @Override
+    public boolean hasMember(String key) {
+      return json.containsKey(key);
+    }
+
+    @Override
+    public void putMember(String key, Value value) {
+      throw new UnsupportedOperationException("JSON input is read-only");
+    }
+
+    @Override
+    public boolean removeMember(String key) {
+      throw new UnsupportedOperationException("JSON input is read-only");
+    }
+  }
+
+  static final class ArrayProxy implements ProxyArray {
+    private final JsonArray json;
+
+    ArrayProxy(JsonArray json) {
+      this.json = json;
+    }
+
+    @Override
+    public Object get(long index) {
+      if (index < 0 || index >= json.size()) {
+        throw new ArrayIndexOutOfBoundsException((int) index);
+      }
+      return wrap(json.getValue((int) index));
+    }
+
+    @Override
+    public void set(long index, Value value) {
+      throw new UnsupportedOperationException("JSON input is read-only");
+    }
+
+    @Override
+    public boolean remove(long index) {
+      throw new UnsupportedOperationException("JSON input is read-only");
+    }
+
+    @Override
+    public long getSize() {
+      return json.size();
+    }
+  }
+}
@@ -40,6 +40,7 @@ public class ModuleCacheImpl implements ModuleCache {
     switch (type) {
       case "jsonpath": return new ModuleJsonPath();
       case "javascript": return new ModuleJavaScript();
+      case "java": return new ModuleJava();
       case "": return new ModuleJavaScript();
       default: throw new IllegalArgumentException("Unknown module type '" + type + "'");
     }
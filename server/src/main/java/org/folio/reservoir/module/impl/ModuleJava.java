@@ -0,0 +1,70 @@
+package org.folio.reservoir.module.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.folio.reservoir.module.Module;
+import org.folio.reservoir.server.entity.CodeModuleEntity;
+
+/**
+ * Module with built-in functions implemented in Java.
+ *
+ * <p>Functions read the JSON input directly, so no script engine is involved.
+ */
+public class ModuleJava implements Module {
+
+  private static final Map<String, Function<JsonObject, Collection<String>>> FUNCTIONS =
+      Map.of(
+          "goldrush2021", input -> List.of(Goldrush.matchkey2021(input)),
+          "goldrush2024", input -> List.of(Goldrush.matchkey2024(input)));
+
+  private String id;
+  private String defaultFunctionName;
+
+  @Override
+  public Future<Void> initialize(Vertx vertx, CodeModuleEntity entity) {
+    id = entity.getId();
+    if (id == null) {
+      return Future.failedFuture("module config must include 'id'");
+    }
+    defaultFunctionName = entity.getFunction();
+    if (defaultFunctionName != null && !FUNCTIONS.containsKey(defaultFunctionName)) {
+      return Future.failedFuture("Module " + id + " does not include function "
+          + defaultFunctionName);
+    }
+    return Future.succeededFuture();
+  }
+
+  @Override
+  public Future<JsonObject> execute(String function, JsonObject input) {
+    throw new UnsupportedOperationException("only executeAsCollection supported for type=java");
+  }
+
+  @Override
+  public Collection<String> executeAsCollection(String function, JsonObject input) {
+    String name = function != null ? function : defaultFunctionName;
+    if (name == null) {
+      throw new IllegalArgumentException(
+          "Java modules require 'function' defined in config or by caller");
+    }
+    Function<JsonObject, Collection<String>> f = FUNCTIONS.get(name);
+    if (f == null) {
+      throw new IllegalArgumentException("Module " + id + " does not include function " + name);
+    }
+    return f.apply(input);
+  }
+
+  @Override
+  public Future<Void> terminate() {
+    return Future.succeededFuture();
+  }
+
+  public String toString() {
+    return id != null ? id : super.toString();
+  }
+
+}
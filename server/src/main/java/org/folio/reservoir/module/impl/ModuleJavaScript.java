@@ -1,5 +1,7 @@
 package org.folio.reservoir.module.impl;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.DecodeException;
@@ -7,9 +9,16 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.client.predicate.ErrorConverter;
 import io.vertx.ext.web.client.predicate.ResponsePredicate;
+import io.vertx.micrometer.backends.BackendRegistries;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.folio.okapi.common.WebClientFactory;
 import org.folio.reservoir.module.Module;
 import org.folio.reservoir.server.entity.CodeModuleEntity;
@@ -17,14 +26,62 @@ import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 
+/**
+ * JavaScript module.
+ *
+ * <p>Executions are spread over a pool of contexts, as a context can only be used by
+ * one thread at a time. The contexts are created on the process-wide engine, so code is
+ * parsed once, also for modules of other tenants with the same code.
+ *
+ * <p>With the default {@link #CONVENTION_STRING} convention, functions are passed input
+ * as a JSON string. With {@link #CONVENTION_OBJECT}, functions are passed input as a
+ * read-only object, which saves encoding and parsing large records. Functions may return
+ * a JSON string or a value, regardless of convention.
+ */
 @SuppressWarnings({"squid:S5738","squid:S1123"})
 public class ModuleJavaScript implements Module {
+  public static final String CONVENTION_STRING = "string";
+  public static final String CONVENTION_OBJECT = "object";
+  private static final String CHECKOUT_METRIC = "reservoir.module.context.checkout";
+  private static int contextPoolSize = Runtime.getRuntime().availableProcessors();
+
   private String id;
   @Deprecated(forRemoval = true, since = "1.0")
   private String defaultFunctionName;
-  private Value module;
-  private Value function;
-  private Context context;
+  private boolean isModule;
+  private boolean objectConvention;
+  private Source source;
+  private final BlockingQueue<JsContext> idle = new LinkedBlockingQueue<>();
+  private final Set<JsContext> contexts = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger created = new AtomicInteger();
+  private int poolSize;
+  private Timer checkoutTimer;
+  private volatile boolean terminated;
+
+  private static final class JsContext {
+    private final Context context;
+    private final Value value; // module exports or script function
+
+    JsContext(Context context, Value value) {
+      this.context = context;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Set maximum number of contexts for each module.
+   * @param size number of contexts; must be at least 1
+   */
+  public static void setContextPoolSize(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("context pool size must be at least 1");
+    }
+    contextPoolSize = size;
+  }
+
+  public static int getContextPoolSize() {
+    return contextPoolSize;
+  }
 
   @Override
   public Future<Void> initialize(Vertx vertx, CodeModuleEntity entity) {
@@ -33,27 +90,42 @@ public class ModuleJavaScript implements Module {
       return Future.failedFuture(
         new IllegalArgumentException("Module config must include 'id'"));
     }
+    String convention = entity.getConvention();
+    if (convention != null && !CONVENTION_STRING.equals(convention)
+        && !CONVENTION_OBJECT.equals(convention)) {
+      return Future.failedFuture(
+        new IllegalArgumentException("Unknown convention '" + convention + "'"));
+    }
+    objectConvention = CONVENTION_OBJECT.equals(convention);
+    poolSize = contextPoolSize;
+    MeterRegistry registry = BackendRegistries.getDefaultNow();
+    if (registry != null) {
+      checkoutTimer = Timer.builder(CHECKOUT_METRIC)
+          .description("Wait for a JavaScript context of a module")
+          .tag("module", id)
+          .register(registry);
+    }
     String url = entity.getUrl();
     String script = entity.getScript();
     if (url != null && !url.isEmpty()) {
       //url always points to an ES module
       defaultFunctionName = entity.getFunction();
-      final boolean isModule = url.endsWith("mjs");
+      isModule = url.endsWith("mjs");
       if (!isModule) {
         return Future.failedFuture(new IllegalArgumentException(
           "url must end with .mjs to designate ES module"));
       }
-      Context.Builder cb = Context.newBuilder("js")
-          .allowExperimentalOptions(true)
-          .option("js.esm-eval-returns-exports", "true");
-      context = cb.build();      
-      return evalUrl(vertx, url)
-        .map(value -> module = value)
-        .mapEmpty();
+      Future<String> code = entity.getSource() != null
+          ? Future.succeededFuture(entity.getSource()) : fetchCode(vertx, id, url);
+      return code.map(value -> {
+        source = JavaScriptEngine.getSource(moduleName(url), value);
+        idle.add(createContext());
+        return null;
+      });
     // if script is specified, we treat it as a regular JS script that evaluates to a function
     } else if (script != null && !script.isEmpty()) {
-      context = Context.create("js");
-      function = context.eval("js", script);
+      source = JavaScriptEngine.getSource("script.js", script);
+      idle.add(createContext());
       return Future.succeededFuture();
     } else {
       return Future.failedFuture(
@@ -61,24 +133,114 @@ public class ModuleJavaScript implements Module {
     }
   }
 
-  private Future<Value> evalUrl(Vertx vertx, String url) {
-    WebClient webClient = WebClientFactory.getWebClient(vertx);
-    String moduleName = url.substring(url.lastIndexOf("/") + 1);
-    ErrorConverter converter = ErrorConverter.createFullBody(result -> 
-      new IOException(
-        String.format("Config error: cannot retrieve module '%1s' at %1s (%2d)",
-         id, url, result.response().statusCode()))
-    );
-    return webClient.getAbs(url)
-        .expect(ResponsePredicate.create(ResponsePredicate.SC_SUCCESS, converter))
-        .send()
-        .map(response -> context.eval(Source
-          .newBuilder("js", response.bodyAsString(), moduleName)
-          .buildLiteral()));
+  private JsContext createContext() {
+    Context.Builder cb = Context.newBuilder("js").engine(JavaScriptEngine.getEngine());
+    if (isModule) {
+      cb.allowExperimentalOptions(true)
+          .option("js.esm-eval-returns-exports", "true");
+    }
+    Context context = cb.build();
+    try {
+      JsContext jsContext = new JsContext(context, context.eval(source));
+      created.incrementAndGet();
+      contexts.add(jsContext);
+      return jsContext;
+    } catch (RuntimeException e) {
+      context.close();
+      throw e;
+    }
   }
 
-  private Value getFunction(String functionName) {
-    if (module != null) {
+  /**
+   * Take a context from the pool, waiting for one to become idle if all are in use.
+   *
+   * <p>Waiting is not allowed on an event loop thread; callers are supposed to execute
+   * through {@link org.folio.reservoir.module.ModuleWorker}.
+   * @throws IllegalStateException if no context is available on an event loop thread
+   */
+  private JsContext checkout() {
+    long start = System.nanoTime();
+    JsContext jsContext = idle.poll();
+    if (jsContext == null) {
+      synchronized (this) {
+        if (created.get() < poolSize && !terminated) {
+          jsContext = createContext();
+        }
+      }
+    }
+    if (jsContext == null && io.vertx.core.Context.isOnEventLoopThread()) {
+      throw new IllegalStateException("Module " + id
+          + " has no idle context and cannot wait on event loop thread");
+    }
+    try {
+      while (jsContext == null) {
+        if (terminated) {
+          throw new IllegalStateException("Module " + id + " terminated");
+        }
+        jsContext = idle.poll(1, TimeUnit.SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    if (checkoutTimer != null) {
+      checkoutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    return jsContext;
+  }
+
+  private void checkin(JsContext jsContext) {
+    if (terminated) {
+      jsContext.context.close(true);
+    } else {
+      idle.add(jsContext);
+    }
+  }
+
+  private static String moduleName(String url) {
+    return url.substring(url.lastIndexOf("/") + 1);
+  }
+
+  private static Future<String> fetchCode(Vertx vertx, String id, String url) {
+    return JavaScriptEngine.getCode(url, () -> {
+      WebClient webClient = WebClientFactory.getWebClient(vertx);
+      ErrorConverter converter = ErrorConverter.createFullBody(result ->
+          new IOException(
+            String.format("Config error: cannot retrieve module '%1s' at %1s (%2d)",
+              id, url, result.response().statusCode()))
+      );
+      return webClient.getAbs(url)
+          .expect(ResponsePredicate.create(ResponsePredicate.SC_SUCCESS, converter))
+          .send()
+          .map(response -> response.bodyAsString());
+    });
+  }
+
+  /**
+   * Resolve source of JavaScript module given by URL.
+   *
+   * <p>The source is fetched, unless already in the entity, so that it can be stored
+   * along with the module config.
+   * @param vertx Vert.x handle
+   * @param entity module config
+   * @return async result with entity including source; same entity if not a JavaScript
+   *     module given by URL or if it already has source
+   */
+  public static Future<CodeModuleEntity> resolveSource(Vertx vertx, CodeModuleEntity entity) {
+    String type = entity.getType();
+    String url = entity.getUrl();
+    if (entity.getSource() != null || url == null || url.isEmpty()
+        || (type != null && !type.isEmpty() && !"javascript".equals(type))) {
+      return Future.succeededFuture(entity);
+    }
+    return fetchCode(vertx, entity.getId(), url)
+        .map(code -> new CodeModuleEntity.CodeModuleBuilder(entity.asJson())
+            .source(code)
+            .build());
+  }
+
+  private Value getFunction(JsContext jsContext, String functionName) {
+    if (isModule) {
       if (functionName == null) {
         if (defaultFunctionName == null) {
           throw new IllegalArgumentException(
@@ -86,48 +248,65 @@ public class ModuleJavaScript implements Module {
         }
         functionName = defaultFunctionName;
       }
-      Value v = module.getMember(functionName);
+      Value v = jsContext.value.getMember(functionName);
       if (v == null || !v.canExecute()) {
         throw new IllegalArgumentException(
           "Module " + id + " does not include function " + functionName);
       }
       return v;
-    } else if (function != null) {
-      return function;
     } else {
-      throw new IllegalStateException("uninitialized");
+      return jsContext.value;
     }
   }
-  
+
   @Override
   public Future<JsonObject> execute(String functionName, JsonObject input) {
-    Value output = getFunction(functionName).execute(input.encode());
-    if (output.isString()) {
-      //only support string encoded JSON objects for now
-      try {
-        return Future.succeededFuture(new JsonObject(output.asString()));
-      } catch (DecodeException de) {
-        return Future.failedFuture(de);
+    JsContext jsContext = checkout();
+    try {
+      Value output = getFunction(jsContext, functionName).execute(argument(input));
+      if (output.isString()) {
+        try {
+          return Future.succeededFuture(new JsonObject(output.asString()));
+        } catch (DecodeException de) {
+          return Future.failedFuture(de);
+        }
+      }
+      if (output.hasMembers() && !output.hasArrayElements() && !output.canExecute()) {
+        try {
+          return Future.succeededFuture((JsonObject) JsonProxy.toJson(output));
+        } catch (IllegalArgumentException e) {
+          return Future.failedFuture(e);
+        }
       }
-    } else {
       return Future.failedFuture(
-        "Function " + functionName + " of module " + id + " must return JSON string");
+        "Function " + functionName + " of module " + id + " must return JSON string or object");
+    } finally {
+      checkin(jsContext);
     }
   }
 
   @Override
   public Collection<String> executeAsCollection(String functionName, JsonObject input) {
-    Value output = getFunction(functionName).execute(input.encode());
-    Collection<String> keys = new HashSet<>();
-    if (output.hasArrayElements()) {
-      for (int i = 0; i < output.getArraySize(); i++) {
-        Value memberValue = output.getArrayElement(i);
-        addValue(keys, memberValue);
+    JsContext jsContext = checkout();
+    try {
+      Value output = getFunction(jsContext, functionName).execute(argument(input));
+      Collection<String> keys = new HashSet<>();
+      if (output.hasArrayElements()) {
+        for (int i = 0; i < output.getArraySize(); i++) {
+          Value memberValue = output.getArrayElement(i);
+          addValue(keys, memberValue);
+        }
+      } else {
+        addValue(keys, output);
       }
-    } else {
-      addValue(keys, output);
+      return keys;
+    } finally {
+      checkin(jsContext);
     }
-    return keys;
+  }
+
+  private Object argument(JsonObject input) {
+    return objectConvention ? JsonProxy.wrap(input) : input.encode();
   }
 
   private void addValue(Collection<String> keys, Value value) {
@@ -140,12 +319,10 @@ public class ModuleJavaScript implements Module {
 
   @Override
   public Future<Void> terminate() {
-    if (context != null) {
-      context.close(true);
-      context = null;
-      module = null;
-      function = null;
-    }
+    terminated = true;
+    contexts.forEach(jsContext -> jsContext.context.close(true));
+    contexts.clear();
+    idle.clear();
     return Future.succeededFuture();
   }
 
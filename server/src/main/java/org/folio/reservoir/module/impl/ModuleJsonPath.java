@@ -2,10 +2,11 @@ package org.folio.reservoir.module.impl;
 
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.PathNotFoundException;
-import com.jayway.jsonpath.ReadContext;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -22,7 +23,7 @@ public class ModuleJsonPath implements Module {
     if (script == null) {
       return Future.failedFuture("module config must include 'script'");
     }
-    jsonPath = JsonPath.compile(script);
+    jsonPath = VertxJsonProvider.compile(script);
     return Future.succeededFuture();
   }
 
@@ -30,7 +31,7 @@ public class ModuleJsonPath implements Module {
   }
 
   public ModuleJsonPath(String script) {
-    jsonPath = JsonPath.compile(script);
+    jsonPath = VertxJsonProvider.compile(script);
   }
 
   @Override
@@ -43,24 +44,49 @@ public class ModuleJsonPath implements Module {
     if (jsonPath == null) {
       throw new IllegalStateException("uninitialized");
     }
-    ReadContext ctx = JsonPath.parse(input.encode());
     Collection<String> keys = new HashSet<>();
+    getKeys(jsonPath, input, keys);
+    return keys;
+  }
+
+  /**
+   * Add strings found by path to keys.
+   *
+   * <p>Nothing is added if path is not found or if any of the values are not strings.
+   * @param jsonPath compiled path
+   * @param input JSON to read; not modified
+   * @param keys where strings are added
+   */
+  public static void getKeys(JsonPath jsonPath, JsonObject input, Collection<String> keys) {
+    if (jsonPath == null) {
+      throw new IllegalArgumentException("path can not be null");
+    }
+    Object o;
     try {
-      Object o = ctx.read(jsonPath);
-      if (o instanceof String string) {
-        keys.add(string);
-      } else if (o instanceof List<?> list) {
-        for (Object m : list) {
-          if (!(m instanceof String)) {
-            return keys;
-          }
-        }
-        keys.addAll((List<String>) o);
-      }
+      o = VertxJsonProvider.read(jsonPath, input);
     } catch (PathNotFoundException e) {
-      //ignore
+      return;
     }
-    return keys;
+    if (o instanceof String string) {
+      keys.add(string);
+      return;
+    }
+    Iterable<?> values;
+    if (o instanceof List<?> list) {
+      values = list;
+    } else if (o instanceof JsonArray array) {
+      values = array;
+    } else {
+      return;
+    }
+    List<String> strings = new ArrayList<>();
+    for (Object m : values) {
+      if (!(m instanceof String string)) {
+        return;
+      }
+      strings.add(string);
+    }
+    keys.addAll(strings);
   }
 
   @Override
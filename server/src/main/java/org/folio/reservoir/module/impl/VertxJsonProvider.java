@@ -0,0 +1,193 @@
+package org.folio.reservoir.module.impl;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.InvalidJsonException;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.spi.json.AbstractJsonProvider;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JSON provider for JsonPath that reads Vert.x JSON in place.
+ *
+ * <p>Documents are read without encoding and parsing them. Values created by JsonPath,
+ * such as the list of results, are plain lists and maps.
+ */
+public class VertxJsonProvider extends AbstractJsonProvider {
+
+  private static final int MAX_PATHS = 1000;
+
+  private static final Configuration configuration = Configuration.builder()
+      .jsonProvider(new VertxJsonProvider())
+      .build();
+
+  private static final Map<String, JsonPath> paths = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, JsonPath> eldest) {
+      return size() > MAX_PATHS;
+    }
+  };
+
+  /**
+   * Get JsonPath configuration with this provider.
+   * @return configuration
+   */
+  public static Configuration getConfiguration() {
+    return configuration;
+  }
+
+  /**
+   * Compile path, using a cache of compiled paths.
+   * @param path JsonPath expression
+   * @return compiled path
+   * @throws com.jayway.jsonpath.InvalidPathException for a bad expression
+   */
+  public static JsonPath compile(String path) {
+    synchronized (paths) {
+      return paths.computeIfAbsent(path, JsonPath::compile);
+    }
+  }
+
+  /**
+   * Read path from JSON object.
+   * @param jsonPath compiled path
+   * @param json JSON object; not modified
+   * @return result of path; plain list for non-definite paths
+   * @throws com.jayway.jsonpath.PathNotFoundException if a definite path is missing
+   */
+  public static Object read(JsonPath jsonPath, JsonObject json) {
+    return jsonPath.read(json, configuration);
+  }
+
+  @Override
+  public Object parse(String json) {
+    try {
+      return Json.decodeValue(json);
+    } catch (DecodeException e) {
+      throw new InvalidJsonException(e);
+    }
+  }
+
+  @Override
+  public Object parse(InputStream jsonStream, String charset) {
+    try {
+      return parse(new String(jsonStream.readAllBytes(), charset));
+    } catch (IOException e) {
+      throw new InvalidJsonException(e);
+    }
+  }
+
+  @Override
+  public String toJson(Object obj) {
+    return Json.encode(obj);
+  }
+
+  @Override
+  public Object createArray() {
+    return new ArrayList<>();
+  }
+
+  @Override
+  public Object createMap() {
+    return new LinkedHashMap<String, Object>();
+  }
+
+  @Override
+  public boolean isArray(Object obj) {
+    return obj instanceof JsonArray || super.isArray(obj);
+  }
+
+  @Override
+  public boolean isMap(Object obj) {
+    return obj instanceof JsonObject || super.isMap(obj);
+  }
+
+  @Override
+  public Object getArrayIndex(Object obj, int idx) {
+    if (obj instanceof JsonArray array) {
+      return array.getValue(idx);
+    }
+    return super.getArrayIndex(obj, idx);
+  }
+
+  @Override
+  public void setArrayIndex(Object array, int index, Object newValue) {
+    if (array instanceof JsonArray jsonArray) {
+      if (index == jsonArray.size()) {
+        jsonArray.add(newValue);
+      } else {
+        jsonArray.set(index, newValue);
+      }
+      return;
+    }
+    super.setArrayIndex(array, index, newValue);
+  }
+
+  @Override
+  public Object getMapValue(Object obj, String key) {
+    if (obj instanceof JsonObject json) {
+      if (!json.containsKey(key)) {
+        return UNDEFINED;
+      }
+      return json.getValue(key);
+    }
+    return super.getMapValue(obj, key);
+  }
+
+  @Override
+  public void setProperty(Object obj, Object key, Object value) {
+    if (obj instanceof JsonObject json) {
+      json.put(key.toString(), value);
+    } else if (obj instanceof JsonArray array) {
+      setArrayIndex(array, Integer.parseInt(key.toString()), value);
+    } else {
+      super.setProperty(obj, key, value);
+    }
+  }
+
+  @Override
+  public void removeProperty(Object obj, Object key) {
+    if (obj instanceof JsonObject json) {
+      json.remove(key.toString());
+    } else if (obj instanceof JsonArray array) {
+      array.remove(Integer.parseInt(key.toString()));
+    } else {
+      super.removeProperty(obj, key);
+    }
+  }
+
+  @Override
+  public Collection<String> getPropertyKeys(Object obj) {
+    if (obj instanceof JsonObject json) {
+      return json.fieldNames();
+    }
+    return super.getPropertyKeys(obj);
+  }
+
+  @Override
+  public int length(Object obj) {
+    if (obj instanceof JsonArray array) {
+      return array.size();
+    }
+    if (obj instanceof JsonObject json) {
+      return json.size();
+    }
+    return super.length(obj);
+  }
+
+  @Override
+  public Iterable<?> toIterable(Object obj) {
+    if (obj instanceof JsonArray array) {
+      return array;
+    }
+    return super.toIterable(obj);
+  }
+}
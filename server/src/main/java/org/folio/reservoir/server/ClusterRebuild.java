@@ -0,0 +1,673 @@
+package org.folio.reservoir.server;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.RowStream;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.okapi.common.GenericCompositeFuture;
+import org.folio.reservoir.module.ModuleWorker;
+import org.folio.reservoir.util.UnionFind;
+import org.folio.reservoir.util.UuidList;
+
+/**
+ * Full re-clustering of a match key.
+ *
+ * <p>Clusters are computed offline in three stages:
+ * <ol>
+ *   <li>Global records are read in pages, ordered by identifier, without a transaction.
+ *   Match values of a page are computed in slices on the module worker pool while the
+ *   next page is read, and written to a staging table.</li>
+ *   <li>Each record is an element of a union-find structure. The staging table is read
+ *   ordered by match value, and records with the same value as the previous row are
+ *   joined, so that match values are never held in memory. The connected components
+ *   are the clusters.</li>
+ *   <li>Clusters are written to shadow tables with multi-row inserts and swapped in
+ *   with set based statements that write only the rows that differ, in batches of
+ *   clusters. Clusters that did not change keep identifier and datestamp.</li>
+ * </ol>
+ *
+ * <p>Ingest may go on during the rebuild. Each batch of the swap locks global records
+ * against changes, so ingest waits for one batch at a time; no module code runs while
+ * the lock is held. Records inserted after their page was read, and records whose
+ * payload digest changed since, are then clustered one by one as for ingest. Instances
+ * are not thread safe; all stages run on the context of the caller.
+ */
+class ClusterRebuild {
+  private static final Logger log = LogManager.getLogger(ClusterRebuild.class);
+
+  private static final int PROGRESS_LOG_RECORDS = 100000;
+  // digest of records stored before digests were introduced
+  private static final UUID NO_DIGEST = new UUID(0, 0);
+  static int pageSize = 2000;
+  static int insertBatchSize = 5000;
+  private static int heapLimit = 1 << 22;
+  // rebuilds of this process, for progress only; see run for exclusion
+  private static final Map<String, ClusterRebuild> running = new ConcurrentHashMap<>();
+
+  private final Storage storage;
+  private final Vertx vertx;
+  private final MatchKeyFunction function;
+  private final UnionFind sets = new UnionFind(heapLimit);
+  private final UuidList recordIds = new UuidList(heapLimit);
+  private final UuidList digests = new UuidList(heapLimit);
+  private final Instant started = Instant.now();
+  private volatile String stage = "extract";
+  private volatile int recordsRead;
+  private volatile int recordsWritten;
+  private int valuesTotal;
+  private String previousValue;
+  private int previousElement;
+
+  ClusterRebuild(Storage storage, Vertx vertx, MatchKeyFunction function) {
+    this.storage = storage;
+    this.vertx = vertx;
+    this.function = function;
+  }
+
+  /**
+   * Set number of records kept on heap during a rebuild; remaining are kept off-heap.
+   * @param limit number of records; must be non-negative
+   */
+  static void setHeapLimit(int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("cluster rebuild heap limit must not be negative");
+    }
+    heapLimit = limit;
+  }
+
+  static int getHeapLimit() {
+    return heapLimit;
+  }
+
+  static String key(Storage storage, String matchKeyConfigId) {
+    return storage.pool.getSchema() + "/" + matchKeyConfigId;
+  }
+
+  /**
+   * Progress of rebuild in this process.
+   * @param storage storage of tenant
+   * @param matchKeyConfigId match key identifier
+   * @return progress; null if no rebuild is going on
+   */
+  static JsonObject getProgress(Storage storage, String matchKeyConfigId) {
+    ClusterRebuild rebuild = running.get(key(storage, matchKeyConfigId));
+    return rebuild == null ? null : rebuild.getProgress();
+  }
+
+  JsonObject getProgress() {
+    return new JsonObject()
+        .put("id", function.matchKeyConfigId)
+        .put("stage", stage)
+        .put("recordsRead", recordsRead)
+        .put("recordsWritten", recordsWritten)
+        .put("started", started.toString());
+  }
+
+  /**
+   * Compute and store clusters of the match key.
+   *
+   * <p>The clusters are written to shadow tables and swapped in when complete, so that
+   * clients see the existing clusters until then. Fails if the match key is being
+   * rebuilt by this or another instance.
+   * @return statistics with totalRecords, clustersTotal, clustersAdded, clustersRemoved
+   */
+  Future<JsonObject> run() {
+    String matchKeyConfigId = function.matchKeyConfigId;
+    String key = key(storage, matchKeyConfigId);
+    // staging and shadow tables are shared by all instances, so a rebuild of the match key
+    // holds a session lock in the database; it is released if the connection is lost
+    Tuple lockTuple = Tuple.of(key);
+    return storage.pool.getConnection().compose(lockConn ->
+        lockConn.preparedQuery("SELECT pg_try_advisory_lock(hashtext($1))")
+            .execute(lockTuple)
+            .compose(res -> {
+              if (!Boolean.TRUE.equals(res.iterator().next().getBoolean(0))) {
+                return Future.failedFuture("MatchKey " + matchKeyConfigId
+                    + " is being initialized");
+              }
+              running.put(key, this);
+              return rebuild()
+                  .onComplete(x -> running.remove(key, this))
+                  .eventually(() -> lockConn
+                      .preparedQuery("SELECT pg_advisory_unlock(hashtext($1))")
+                      .execute(lockTuple));
+            })
+            .onComplete(x -> lockConn.close()));
+  }
+
+  Future<JsonObject> rebuild() {
+    String matchKeyConfigId = function.matchKeyConfigId;
+    long start = System.currentTimeMillis();
+    Promise<Void> extracted = Promise.promise();
+    storage.pool.withConnection(this::clearShadow)
+        .onFailure(extracted::fail)
+        .onSuccess(x -> readPage(null).onComplete(res -> extractPages(res, extracted)));
+    return extracted.future()
+        .compose(x -> {
+          stage = "cluster";
+          return joinValues();
+        })
+        .compose(x -> {
+          int clusters = sets.label();
+          log.info("Match key {}: {} records, {} values, {} clusters in {} ms"
+                  + " ({} records off-heap)", matchKeyConfigId, recordIds.size(),
+              valuesTotal, clusters, System.currentTimeMillis() - start,
+              sets.offHeapSize());
+          return write(clusters).map(stats -> stats
+              .put("totalRecords", recordIds.size())
+              .put("clustersTotal", clusters));
+        })
+        .eventually(() -> storage.pool.withConnection(this::clearShadow))
+        .onSuccess(stats -> log.info("Match key {}: rebuilt in {} ms {}", matchKeyConfigId,
+            System.currentTimeMillis() - start, stats.encode()));
+  }
+
+  Future<RowSet<Row>> readPage(UUID after) {
+    String q = "SELECT id, payload, digest FROM " + storage.globalRecordTable;
+    if (after == null) {
+      return storage.pool.preparedQuery(q + " ORDER BY id LIMIT $1")
+          .execute(Tuple.of(pageSize));
+    }
+    return storage.pool.preparedQuery(q + " WHERE id > $1 ORDER BY id LIMIT $2")
+        .execute(Tuple.of(after, pageSize));
+  }
+
+  void extractPages(AsyncResult<RowSet<Row>> page, Promise<Void> promise) {
+    if (page.failed()) {
+      promise.fail(page.cause());
+      return;
+    }
+    RowSet<Row> rows = page.result();
+    List<UUID> ids = new ArrayList<>(rows.size());
+    List<JsonObject> payloads = new ArrayList<>(rows.size());
+    rows.forEach(row -> {
+      ids.add(row.getUUID("id"));
+      payloads.add(row.getJsonObject("payload"));
+      UUID digest = row.getUUID("digest");
+      digests.add(digest == null ? NO_DIGEST : digest);
+    });
+    if (ids.isEmpty()) {
+      promise.complete();
+      return;
+    }
+    // read next page while match values of this page are computed
+    Future<RowSet<Row>> next = ids.size() < pageSize
+        ? null : readPage(ids.get(ids.size() - 1));
+    computeValues(vertx, function, payloads)
+        .compose(values -> addRecords(ids, values))
+        .onFailure(promise::tryFail)
+        .onSuccess(x -> {
+          if (recordIds.size() / PROGRESS_LOG_RECORDS != recordsRead / PROGRESS_LOG_RECORDS) {
+            log.info("Match key {}: {} records read", function.matchKeyConfigId,
+                recordIds.size());
+          }
+          recordsRead = recordIds.size();
+          if (next == null) {
+            promise.complete();
+          } else {
+            next.onComplete(res -> extractPages(res, promise));
+          }
+        });
+  }
+
+  /**
+   * Compute match values of records on the module worker pool.
+   *
+   * <p>Records are split in slices that execute in parallel if the function allows it;
+   * otherwise they are computed by one worker.
+   * @param vertx Vert.x handle
+   * @param function match key function
+   * @param payloads payload of each record; null for none
+   * @return match values for each record
+   */
+  static Future<List<Collection<String>>> computeValues(Vertx vertx, MatchKeyFunction function,
+      List<JsonObject> payloads) {
+    int slices = function.isConcurrent()
+        ? Math.min(ModuleWorker.getPoolSize(), payloads.size()) : 1;
+    int sliceSize = (payloads.size() + slices - 1) / slices;
+    List<Future<List<Collection<String>>>> futures = new ArrayList<>(slices);
+    for (int i = 0; i < payloads.size(); i += sliceSize) {
+      List<JsonObject> slice = payloads.subList(i, Math.min(i + sliceSize, payloads.size()));
+      futures.add(ModuleWorker.execute(vertx, function.getName(),
+          p -> p.complete(applyFunction(function, slice))));
+    }
+    return GenericCompositeFuture.all(futures).map(x -> {
+      List<Collection<String>> values = new ArrayList<>(payloads.size());
+      futures.forEach(f -> values.addAll(f.result()));
+      return values;
+    });
+  }
+
+  static List<Collection<String>> applyFunction(MatchKeyFunction function,
+      List<JsonObject> payloads) {
+    List<Collection<String>> values = new ArrayList<>(payloads.size());
+    for (JsonObject payload : payloads) {
+      values.add(payload == null ? Collections.emptyList() : function.apply(payload));
+    }
+    return values;
+  }
+
+  Future<Void> addRecords(List<UUID> ids, List<Collection<String>> values) {
+    List<Integer> elements = new ArrayList<>();
+    List<UUID> recordIdList = new ArrayList<>();
+    List<String> valueList = new ArrayList<>();
+    for (int i = 0; i < ids.size(); i++) {
+      int element = sets.add();
+      recordIds.add(ids.get(i));
+      for (String value : values.get(i)) {
+        elements.add(element);
+        recordIdList.add(ids.get(i));
+        valueList.add(Storage.truncateMatchValue(value));
+      }
+    }
+    return insertBatches(valueList.size(), offset -> {
+      int end = Math.min(offset + insertBatchSize, valueList.size());
+      return storage.pool.preparedQuery("INSERT INTO " + storage.clusterValueStagingTable
+              + " (match_key_config_id, element, record_id, match_value)"
+              + " SELECT $1, t.element, t.record_id, t.match_value"
+              + " FROM unnest($2::integer[], $3::uuid[], $4::varchar[])"
+              + " AS t(element, record_id, match_value)")
+          .execute(Tuple.tuple()
+              .addString(function.matchKeyConfigId)
+              .addArrayOfInteger(elements.subList(offset, end).toArray(new Integer[0]))
+              .addArrayOfUUID(recordIdList.subList(offset, end).toArray(new UUID[0]))
+              .addArrayOfString(valueList.subList(offset, end).toArray(new String[0])));
+    });
+  }
+
+  /**
+   * Join records with the same match value.
+   *
+   * <p>Values are streamed in byte order, so that equal values are adjacent; only the
+   * previous value and its element are kept.
+   */
+  Future<Void> joinValues() {
+    return storage.pool.withTransaction(conn ->
+        conn.prepare("SELECT element, match_value FROM " + storage.clusterValueStagingTable
+                + " WHERE match_key_config_id = $1 ORDER BY match_value COLLATE \"C\"")
+            .compose(pq -> {
+              Promise<Void> promise = Promise.promise();
+              RowStream<Row> stream = pq.createStream(insertBatchSize,
+                  Tuple.of(function.matchKeyConfigId));
+              stream.handler(row -> {
+                String value = row.getString("match_value");
+                int element = row.getInteger("element");
+                if (value.equals(previousValue)) {
+                  sets.union(previousElement, element);
+                } else {
+                  valuesTotal++;
+                  previousValue = value;
+                  previousElement = element;
+                }
+              });
+              stream.endHandler(x -> promise.tryComplete());
+              stream.exceptionHandler(promise::tryFail);
+              return promise.future();
+            }));
+  }
+
+  Future<JsonObject> write(int clusters) {
+    UuidList clusterIds = new UuidList(heapLimit);
+    for (int i = 0; i < clusters; i++) {
+      clusterIds.add(UUID.randomUUID());
+    }
+    String matchKeyConfigId = function.matchKeyConfigId;
+    stage = "write";
+    return insertBatches(recordIds.size(), offset -> {
+      int size = Math.min(insertBatchSize, recordIds.size() - offset);
+      UUID[] ids = new UUID[size];
+      UUID[] cids = new UUID[size];
+      UUID[] digestArray = new UUID[size];
+      for (int i = 0; i < size; i++) {
+        ids[i] = recordIds.get(offset + i);
+        cids[i] = clusterIds.get(sets.component(offset + i));
+        digestArray[i] = digests.get(offset + i);
+      }
+      return storage.pool.preparedQuery("INSERT INTO " + storage.clusterRecordShadowTable
+              + " (record_id, match_key_config_id, cluster_id, digest)"
+              + " SELECT t.record_id, $2, t.cluster_id, t.digest"
+              + " FROM unnest($1::uuid[], $3::uuid[], $4::uuid[])"
+              + " AS t(record_id, cluster_id, digest)")
+          .execute(Tuple.tuple().addArrayOfUUID(ids).addString(matchKeyConfigId)
+              .addArrayOfUUID(cids).addArrayOfUUID(digestArray))
+          .onSuccess(res -> recordsWritten = offset + size);
+    })
+        // records with the same value are in the same cluster
+        .compose(x -> storage.pool.preparedQuery("INSERT INTO "
+                + storage.clusterValueShadowTable
+                + " (cluster_id, match_key_config_id, match_value)"
+                + " SELECT DISTINCT r.cluster_id, $1::varchar, s.match_value"
+                + " FROM " + storage.clusterValueStagingTable + " AS s"
+                + " JOIN " + storage.clusterRecordShadowTable + " AS r"
+                + " ON r.record_id = s.record_id AND r.match_key_config_id = $1"
+                + " WHERE s.match_key_config_id = $1")
+            .execute(Tuple.of(matchKeyConfigId)))
+        .compose(x -> {
+          stage = "swap";
+          return swap();
+        });
+  }
+
+  Future<Void> clearShadow(SqlConnection client) {
+    Tuple tuple = Tuple.of(function.matchKeyConfigId);
+    String where = " WHERE match_key_config_id = $1";
+    return client.preparedQuery("DELETE FROM " + storage.clusterRecordShadowTable + where)
+        .execute(tuple)
+        .compose(x -> client.preparedQuery("DELETE FROM " + storage.clusterValueShadowTable
+                + where)
+            .execute(tuple))
+        .compose(x -> client.preparedQuery("DELETE FROM " + storage.clusterReuseTable + where)
+            .execute(tuple))
+        .compose(x -> client.preparedQuery("DELETE FROM " + storage.clusterValueStagingTable
+                + where)
+            .execute(tuple))
+        .mapEmpty();
+  }
+
+  /**
+   * Replace clusters of the match key with those of the shadow tables.
+   *
+   * <p>A new cluster with exactly the same records as an existing cluster takes the
+   * identifier of the existing cluster, and its datestamp is left alone. Other existing
+   * clusters lose their records, and new clusters are created, with a new datestamp.
+   *
+   * <p>Only rows that differ from the shadow tables are written, in batches of clusters
+   * with a transaction each, so that ingest waits for one batch at most. Stale match
+   * values are then removed, also in batches. Records that changed since they were read
+   * are left alone by the batches and, together with records that were not read,
+   * clustered by {@link #clusterChanged} when the batches are done.
+   */
+  Future<JsonObject> swap() {
+    JsonObject stats = new JsonObject()
+        .put("clustersAdded", 0)
+        .put("clustersRemoved", 0);
+    LocalDateTime datestamp = LocalDateTime.now(ZoneOffset.UTC);
+    return storage.pool.withTransaction(this::reuseClusters)
+        .compose(x -> storage.getLayout())
+        .compose(layout -> swapClusters(null, datestamp, layout.hashedValues()
+            ? "(match_key_config_id, match_hash)" : "(match_key_config_id, match_value)", stats))
+        .compose(x -> removeValues(null))
+        .compose(x -> clusterChanged(null, 0))
+        .map(changed -> stats.put("recordsReclustered", changed));
+  }
+
+  Future<Void> reuseClusters(SqlConnection conn) {
+    String matchKeyConfigId = function.matchKeyConfigId;
+    Tuple tuple = Tuple.of(matchKeyConfigId);
+    return conn.preparedQuery("SELECT id FROM " + storage.matchKeyConfigTable
+            + " WHERE id = $1")
+        .execute(tuple)
+        .compose(res -> {
+          if (res.rowCount() == 0) {
+            return Future.failedFuture("MatchKey " + matchKeyConfigId + " not found");
+          }
+          return conn.preparedQuery("INSERT INTO " + storage.clusterReuseTable
+                  + " (match_key_config_id, new_cluster_id, old_cluster_id)"
+                  + " SELECT $1::varchar, u.new_id, u.old_id FROM"
+                  + " (SELECT n.cluster_id AS new_id,"
+                  + " min(o.cluster_id::text)::uuid AS old_id, count(*) AS records"
+                  + " FROM " + storage.clusterRecordShadowTable + " AS n"
+                  + " LEFT JOIN " + storage.clusterRecordTable + " AS o"
+                  + " ON o.record_id = n.record_id AND o.match_key_config_id = $1"
+                  + " WHERE n.match_key_config_id = $1"
+                  + " GROUP BY n.cluster_id"
+                  + " HAVING count(o.cluster_id) = count(*)"
+                  + " AND min(o.cluster_id::text) = max(o.cluster_id::text)) AS u"
+                  + " WHERE u.records = (SELECT count(*) FROM " + storage.clusterRecordTable
+                  + " AS o WHERE o.cluster_id = u.old_id)")
+              .execute(tuple);
+        })
+        .compose(x -> conn.preparedQuery("UPDATE " + storage.clusterRecordShadowTable + " AS n"
+                + " SET cluster_id = u.old_cluster_id FROM " + storage.clusterReuseTable + " AS u"
+                + " WHERE u.match_key_config_id = $1 AND n.match_key_config_id = $1"
+                + " AND n.cluster_id = u.new_cluster_id")
+            .execute(tuple))
+        .compose(x -> conn.preparedQuery("UPDATE " + storage.clusterValueShadowTable + " AS n"
+                + " SET cluster_id = u.old_cluster_id FROM " + storage.clusterReuseTable + " AS u"
+                + " WHERE u.match_key_config_id = $1 AND n.match_key_config_id = $1"
+                + " AND n.cluster_id = u.new_cluster_id")
+            .execute(tuple))
+        .mapEmpty();
+  }
+
+  /**
+   * Swap in shadow clusters in batches.
+   * @param after only clusters with identifier greater than this; null for first batch
+   * @param datestamp datestamp of new and removed clusters
+   * @param valueConflict unique key of match values
+   * @param stats where clustersAdded and clustersRemoved are counted
+   */
+  Future<Void> swapClusters(UUID after, LocalDateTime datestamp, String valueConflict,
+      JsonObject stats) {
+
+    String q = "SELECT DISTINCT cluster_id FROM " + storage.clusterRecordShadowTable
+        + " WHERE match_key_config_id = $1";
+    Tuple tuple = Tuple.of(function.matchKeyConfigId);
+    if (after != null) {
+      q = q + " AND cluster_id > $2";
+      tuple.addUUID(after);
+    }
+    return storage.pool.preparedQuery(q + " ORDER BY cluster_id LIMIT " + insertBatchSize)
+        .execute(tuple)
+        .compose(rows -> {
+          List<UUID> clusterIds = new ArrayList<>(rows.size());
+          rows.forEach(row -> clusterIds.add(row.getUUID("cluster_id")));
+          if (clusterIds.isEmpty()) {
+            return Future.succeededFuture();
+          }
+          return storage.pool.withTransaction(conn ->
+                  swapBatch(conn, clusterIds.toArray(new UUID[0]), datestamp, valueConflict,
+                      stats))
+              .compose(x -> clusterIds.size() < insertBatchSize
+                  ? Future.succeededFuture()
+                  : swapClusters(clusterIds.get(clusterIds.size() - 1), datestamp,
+                      valueConflict, stats));
+        });
+  }
+
+  Future<Void> swapBatch(SqlConnection conn, UUID[] clusterIds, LocalDateTime datestamp,
+      String valueConflict, JsonObject stats) {
+
+    String matchKeyConfigId = function.matchKeyConfigId;
+    // shadow records of the batch that did not change since they were read
+    String unchanged = " FROM " + storage.clusterRecordShadowTable + " AS n"
+        + " JOIN " + storage.globalRecordTable + " AS g"
+        + " ON g.id = n.record_id AND coalesce(g.digest, $3) = n.digest";
+    String batch = " WHERE n.match_key_config_id = $1 AND n.cluster_id = ANY($2)";
+    Tuple tuple = Tuple.of(matchKeyConfigId).addArrayOfUUID(clusterIds).addUUID(NO_DIGEST);
+    Tuple tupleDatestamp = Tuple.of(matchKeyConfigId).addArrayOfUUID(clusterIds)
+        .addUUID(NO_DIGEST).addLocalDateTime(datestamp);
+    // wait for ongoing ingest and hold off new ingest; taken before the match key lock,
+    // which ingest takes after changing global records
+    return conn.query("LOCK TABLE " + storage.globalRecordTable + " IN SHARE MODE")
+        .execute()
+        .compose(x -> conn.preparedQuery("SELECT id FROM " + storage.matchKeyConfigTable
+                + " WHERE id = $1 FOR UPDATE")
+            .execute(Tuple.of(matchKeyConfigId)))
+        .compose(res -> {
+          if (res.rowCount() == 0) {
+            return Future.failedFuture("MatchKey " + matchKeyConfigId + " not found");
+          }
+          // existing clusters that lose records
+          return conn.preparedQuery("UPDATE " + storage.clusterMetaTable + " AS m"
+                  + " SET datestamp = $4 FROM (SELECT DISTINCT o.cluster_id" + unchanged
+                  + " JOIN " + storage.clusterRecordTable + " AS o"
+                  + " ON o.record_id = n.record_id AND o.match_key_config_id = $1" + batch
+                  + " AND o.cluster_id <> n.cluster_id) AS t"
+                  + " WHERE m.cluster_id = t.cluster_id AND m.datestamp IS DISTINCT FROM $4")
+              .execute(tupleDatestamp);
+        })
+        .compose(res -> {
+          stats.put("clustersRemoved", stats.getInteger("clustersRemoved") + res.rowCount());
+          // clusters whose records were all deleted since they were read are skipped
+          return conn.preparedQuery("INSERT INTO " + storage.clusterMetaTable
+                  + " (cluster_id, match_key_config_id, datestamp)"
+                  + " SELECT DISTINCT n.cluster_id, $1::varchar, $4::timestamp"
+                  + unchanged + batch
+                  + " ON CONFLICT (cluster_id) DO NOTHING")
+              .execute(tupleDatestamp);
+        })
+        .compose(res -> {
+          stats.put("clustersAdded", stats.getInteger("clustersAdded") + res.rowCount());
+          // records deleted since they were read are skipped
+          return conn.preparedQuery("INSERT INTO " + storage.clusterRecordTable + " AS r"
+                  + " (record_id, match_key_config_id, cluster_id)"
+                  + " SELECT n.record_id, $1::varchar, n.cluster_id" + unchanged + batch
+                  + " ON CONFLICT (record_id, match_key_config_id)"
+                  + " DO UPDATE SET cluster_id = EXCLUDED.cluster_id"
+                  + " WHERE r.cluster_id <> EXCLUDED.cluster_id")
+              .execute(tuple);
+        })
+        // values of clusters that were skipped above are skipped too
+        .compose(x -> conn.preparedQuery("INSERT INTO " + storage.clusterValueTable + " AS v"
+                + " (cluster_id, match_key_config_id, match_value)"
+                + " SELECT s.cluster_id, $1::varchar, s.match_value"
+                + " FROM " + storage.clusterValueShadowTable + " AS s"
+                + " JOIN " + storage.clusterMetaTable + " AS m ON m.cluster_id = s.cluster_id"
+                + " WHERE s.match_key_config_id = $1 AND s.cluster_id = ANY($2)"
+                + " ON CONFLICT " + valueConflict
+                + " DO UPDATE SET cluster_id = EXCLUDED.cluster_id"
+                + " WHERE v.cluster_id <> EXCLUDED.cluster_id")
+            .execute(Tuple.of(matchKeyConfigId).addArrayOfUUID(clusterIds)))
+        .mapEmpty();
+  }
+
+  /**
+   * Remove match values that are not in the shadow tables, in batches of clusters.
+   *
+   * <p>Values of records ingested since they were read are removed too; they are added
+   * again by {@link #clusterChanged}.
+   * @param after only clusters with identifier greater than this; null for first batch
+   */
+  Future<Void> removeValues(UUID after) {
+    String q = "SELECT DISTINCT cluster_id FROM " + storage.clusterValueTable
+        + " WHERE match_key_config_id = $1";
+    Tuple tuple = Tuple.of(function.matchKeyConfigId);
+    if (after != null) {
+      q = q + " AND cluster_id > $2";
+      tuple.addUUID(after);
+    }
+    return storage.pool.preparedQuery(q + " ORDER BY cluster_id LIMIT " + insertBatchSize)
+        .execute(tuple)
+        .compose(rows -> {
+          List<UUID> clusterIds = new ArrayList<>(rows.size());
+          rows.forEach(row -> clusterIds.add(row.getUUID("cluster_id")));
+          if (clusterIds.isEmpty()) {
+            return Future.succeededFuture();
+          }
+          return storage.pool.preparedQuery("DELETE FROM " + storage.clusterValueTable
+                  + " AS v WHERE v.match_key_config_id = $1 AND v.cluster_id = ANY($2)"
+                  + " AND NOT EXISTS (SELECT 1 FROM " + storage.clusterValueShadowTable
+                  + " AS s WHERE s.match_key_config_id = $1"
+                  + " AND s.match_value = v.match_value AND s.cluster_id = v.cluster_id)")
+              .execute(Tuple.of(function.matchKeyConfigId)
+                  .addArrayOfUUID(clusterIds.toArray(new UUID[0])))
+              .compose(x -> clusterIds.size() < insertBatchSize
+                  ? Future.succeededFuture()
+                  : removeValues(clusterIds.get(clusterIds.size() - 1)));
+        });
+  }
+
+  /**
+   * Cluster records that are not in the shadow tables or changed since they were read.
+   *
+   * <p>Match values are computed without a transaction. Each page is then clustered as
+   * for ingest in a transaction that locks the records of the page; records that
+   * changed meanwhile are skipped, as ingest clusters them.
+   * @param after only records with identifier greater than this; null for all
+   * @param count number of records clustered so far
+   * @return total number of records clustered
+   */
+  Future<Integer> clusterChanged(UUID after, int count) {
+    Tuple tuple = Tuple.of(function.matchKeyConfigId, NO_DIGEST);
+    String q = "SELECT id, payload, digest FROM " + storage.globalRecordTable + " AS g"
+        + " WHERE NOT EXISTS (SELECT 1 FROM " + storage.clusterRecordShadowTable + " AS n"
+        + " WHERE n.record_id = g.id AND n.match_key_config_id = $1"
+        + " AND n.digest = coalesce(g.digest, $2))";
+    if (after != null) {
+      q = q + " AND g.id > $3";
+      tuple.addUUID(after);
+    }
+    return storage.pool.preparedQuery(q + " ORDER BY id LIMIT " + pageSize)
+        .execute(tuple)
+        .compose(rows -> {
+          List<UUID> ids = new ArrayList<>(rows.size());
+          List<UUID> digestList = new ArrayList<>(rows.size());
+          List<JsonObject> payloads = new ArrayList<>(rows.size());
+          rows.forEach(row -> {
+            ids.add(row.getUUID("id"));
+            digestList.add(digest(row));
+            payloads.add(row.getJsonObject("payload"));
+          });
+          if (ids.isEmpty()) {
+            return Future.succeededFuture(count);
+          }
+          // concurrent ingest may insert the same new match value, so retry once
+          return computeValues(vertx, function, payloads)
+              .compose(values -> storage.pool.withTransaction(conn ->
+                      clusterRecords(conn, ids, digestList, values))
+                  .recover(e -> storage.pool.withTransaction(conn ->
+                      clusterRecords(conn, ids, digestList, values))))
+              .compose(x -> ids.size() < pageSize
+                  ? Future.succeededFuture(count + ids.size())
+                  : clusterChanged(ids.get(ids.size() - 1), count + ids.size()));
+        });
+  }
+
+  Future<Void> clusterRecords(SqlConnection conn, List<UUID> ids, List<UUID> digestList,
+      List<Collection<String>> values) {
+
+    return conn.preparedQuery("SELECT id, digest FROM " + storage.globalRecordTable
+            + " WHERE id = ANY($1) FOR SHARE")
+        .execute(Tuple.tuple().addArrayOfUUID(ids.toArray(new UUID[0])))
+        .compose(rows -> {
+          Map<UUID, UUID> current = new HashMap<>();
+          rows.forEach(row -> current.put(row.getUUID("id"), digest(row)));
+          // records may share match values, so clusters are resolved one after another
+          Future<Void> future = Future.succeededFuture();
+          for (int i = 0; i < ids.size(); i++) {
+            UUID id = ids.get(i);
+            Collection<String> keys = values.get(i);
+            if (digestList.get(i).equals(current.get(id))) {
+              future = future.compose(x ->
+                  storage.updateMatchKeyValues(conn, id, function.matchKeyConfigId, keys));
+            }
+          }
+          return future;
+        });
+  }
+
+  private static UUID digest(Row row) {
+    UUID digest = row.getUUID("digest");
+    return digest == null ? NO_DIGEST : digest;
+  }
+
+  static Future<Void> insertBatches(int total, IntFunction<Future<?>> batch) {
+    Future<Void> future = Future.succeededFuture();
+    for (int offset = 0; offset < total; offset += insertBatchSize) {
+      int o = offset;
+      future = future.compose(x -> batch.apply(o).mapEmpty());
+    }
+    return future;
+  }
+}
@@ -1,7 +1,6 @@
 package org.folio.reservoir.server;
 
 import static org.folio.reservoir.server.OaiService.encodeOaiIdentifier;
-import static org.folio.reservoir.server.OaiService.getClusterValues;
 import static org.folio.reservoir.server.OaiService.getMetadataJava;
 import static org.folio.reservoir.util.EncodeXmlText.encodeXmlText;
 
@@ -9,17 +8,19 @@ import io.vertx.codegen.annotations.Nullable;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.streams.WriteStream;
 import io.vertx.sqlclient.SqlConnection;
-import io.vertx.sqlclient.Tuple;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.okapi.common.GenericCompositeFuture;
 import org.folio.reservoir.module.ModuleExecutable;
+import org.folio.reservoir.module.ModuleWorker;
 import org.folio.reservoir.server.entity.ClusterBuilder;
 import org.folio.reservoir.util.JsonToMarcXml;
 
@@ -28,7 +29,11 @@ public class ClusterRecordStream implements WriteStream<ClusterRecordItem> {
   private static final Logger log = LogManager.getLogger(ClusterRecordStream.class);
   boolean ended;
 
-  Set<ClusterRecordItem> work = new HashSet<>();
+  List<ClusterRecordItem> pending = new ArrayList<>();
+
+  Promise<Void> pendingPromise = Promise.promise();
+
+  boolean busy;
 
   Storage storage;
 
@@ -46,7 +51,7 @@ public class ClusterRecordStream implements WriteStream<ClusterRecordItem> {
 
   SqlConnection connection;
 
-  int writeQueueMaxSize = 5;
+  int writeQueueMaxSize = 50; // number of clusters fetched per batch
 
   Vertx vertx;
 
@@ -67,92 +72,118 @@ public class ClusterRecordStream implements WriteStream<ClusterRecordItem> {
     return this;
   }
 
-  Future<ClusterBuilder> populateCluster(ClusterRecordItem cr) {
-    String q = "SELECT * FROM " + storage.getGlobalRecordTable()
-        + " LEFT JOIN " + storage.getClusterRecordTable() + " ON record_id = id "
-        + " WHERE cluster_id = $1";
-    return connection.preparedQuery(q)
-        .execute(Tuple.of(cr.clusterId))
-        .compose(rowSet -> {
-          if (rowSet.size() == 0) {
-            return Future.succeededFuture(null); // deleted record
-          }
-          ClusterBuilder cb = new ClusterBuilder(cr.clusterId).records(rowSet);
-          if (!withMetadata) {
-            return Future.succeededFuture(cb);
-          }
-          return getClusterValues(storage, connection, cr.clusterId, cb);
-        });
+  Future<List<JsonObject>> populateClusters(List<ClusterRecordItem> items) {
+    return storage.getClustersByIds(connection, items.stream().map(cr -> cr.clusterId).toList());
   }
 
   Future<Buffer> getClusterRecordMetadata(ClusterRecordItem cr) {
-    return populateCluster(cr)
-        .compose(cb -> {
-          Future<String> future;
-          if (cb == null) {
-            future = Future.succeededFuture(null); // deleted record
-          } else if (transformer == null) {
-            future = Future.succeededFuture(getMetadataJava(cb.build()));
-          } else {
-            JsonObject cluster = cb.build();
-            future = vertx.executeBlocking(prom -> {
-              try {
-                prom.handle(transformer.execute(cluster).map(JsonToMarcXml::convert));
-              } catch (Exception e) {
-                prom.fail(e);
-              }
-            });
-          }
-          return future.map(metadata -> {
-            String begin = withMetadata ? "    <record>\n" : "";
-            String end = withMetadata ? "    </record>\n" : "";
-            return Buffer.buffer(
-                begin
-                    + "      <header" + (metadata == null
-                    ? " status=\"deleted\"" : "") + ">\n"
-                    + "        <identifier>"
-                    + encodeXmlText(encodeOaiIdentifier(cr.clusterId)) + "</identifier>\n"
-                    + "        <datestamp>"
-                    + encodeXmlText(Util.formatOaiDateTime(cr.datestamp))
-                    + "</datestamp>\n"
-                    + "        <setSpec>" + encodeXmlText(cr.oaiSet) + "</setSpec>\n"
-                    + "      </header>\n"
-                    + (withMetadata && metadata != null
-                    ? "    <metadata>\n" + metadata + "\n"
-                    + "    </metadata>\n"
-                    : "")
-                    + end);
-          });
-        });
+    return populateClusters(List.of(cr))
+        .compose(clusters -> getClusterRecordMetadata(cr, clusters.get(0)));
+  }
+
+  Future<Buffer> getClusterRecordMetadata(ClusterRecordItem cr, JsonObject cluster) {
+    Future<String> future;
+    if (cluster.getJsonArray(ClusterBuilder.RECORDS_LABEL).isEmpty()) {
+      future = Future.succeededFuture(null); // deleted record
+    } else if (transformer == null) {
+      future = Future.succeededFuture(getMetadataJava(cluster));
+    } else {
+      future = ModuleWorker.execute(vertx, transformer.getModuleName(), prom ->
+          prom.handle(transformer.execute(cluster).map(JsonToMarcXml::convert)));
+    }
+    return future.map(metadata -> {
+      String begin = withMetadata ? "    <record>\n" : "";
+      String end = withMetadata ? "    </record>\n" : "";
+      return Buffer.buffer(
+          begin
+              + "      <header" + (metadata == null
+              ? " status=\"deleted\"" : "") + ">\n"
+              + "        <identifier>"
+              + encodeXmlText(encodeOaiIdentifier(cr.clusterId)) + "</identifier>\n"
+              + "        <datestamp>"
+              + encodeXmlText(Util.formatOaiDateTime(cr.datestamp))
+              + "</datestamp>\n"
+              + "        <setSpec>" + encodeXmlText(cr.oaiSet) + "</setSpec>\n"
+              + "      </header>\n"
+              + (withMetadata && metadata != null
+              ? "    <metadata>\n" + metadata + "\n"
+              + "    </metadata>\n"
+              : "")
+              + end);
+    });
+  }
+
+  Future<Buffer> recordFailure(ClusterRecordItem cr, Throwable e) {
+    log.warn("Failed to produce record {} cause: {}", cr.clusterId, e.getMessage());
+    log.debug(e);
+    return Future.succeededFuture(Buffer.buffer("<!-- Failed to produce record "
+        + encodeXmlText(cr.clusterId.toString()) + " cause: "
+        + encodeXmlText(e.getMessage()) + " -->\n"));
   }
 
-  Future<Void> perform(ClusterRecordItem cr) {
-    return getClusterRecordMetadata(cr)
-        .compose(buf -> response.write(buf).mapEmpty())
-        .recover(e -> {
-          log.warn("Failed to produce record {} cause: {}", cr.clusterId, e.getMessage());
-          log.debug(e);
-          return response.write(Buffer.buffer("<!-- Failed to produce record "
-              + encodeXmlText(cr.clusterId.toString()) + " cause: "
-              + encodeXmlText(e.getMessage()) + " -->\n")).mapEmpty();
+  /**
+   * Produce records for a batch of clusters.
+   *
+   * <p>Records and match values of the batch are fetched with one query each. Metadata is
+   * produced concurrently, but written in the order of the batch.
+   * @param batch clusters in datestamp, cluster_id order
+   * @return async result
+   */
+  Future<Void> performBatch(List<ClusterRecordItem> batch) {
+    return populateClusters(batch)
+        .map(clusters -> {
+          List<Future<Buffer>> futures = new ArrayList<>(batch.size());
+          for (int i = 0; i < batch.size(); i++) {
+            ClusterRecordItem cr = batch.get(i);
+            futures.add(getClusterRecordMetadata(cr, clusters.get(i))
+                .recover(e -> recordFailure(cr, e)));
+          }
+          return futures;
         })
-        .mapEmpty();
+        .recover(e -> Future.succeededFuture(
+            batch.stream().map(cr -> recordFailure(cr, e)).toList()))
+        .compose(futures -> GenericCompositeFuture.all(futures)
+            .compose(x -> {
+              Future<Void> f = Future.succeededFuture();
+              for (Future<Buffer> buf : futures) {
+                f = response.write(buf.result());
+              }
+              return f;
+            }));
   }
 
-  @Override
-  public Future<Void> write(ClusterRecordItem cr) {
-    work.add(cr);
-    return perform(cr).onComplete(x -> {
-      work.remove(cr);
-      if (work.size() == writeQueueMaxSize - 1 && !ended) {
-        drainHandler.handle(null);
+  void flush() {
+    List<ClusterRecordItem> batch = pending;
+    Promise<Void> promise = pendingPromise;
+    pending = new ArrayList<>();
+    pendingPromise = Promise.promise();
+    busy = true;
+    performBatch(batch).onComplete(x -> {
+      busy = false;
+      promise.handle(x);
+      if (pending.size() >= writeQueueMaxSize || (ended && !pending.isEmpty())) {
+        flush();
       }
-      if (work.isEmpty() && ended) {
-        this.endHandler.handle(Future.succeededFuture());
+      if (ended) {
+        if (!busy) {
+          endHandler.handle(Future.succeededFuture());
+        }
+      } else if (drainHandler != null) {
+        drainHandler.handle(null);
       }
     });
   }
 
+  @Override
+  public Future<Void> write(ClusterRecordItem cr) {
+    pending.add(cr);
+    Future<Void> future = pendingPromise.future();
+    if (!busy && pending.size() >= writeQueueMaxSize) {
+      flush();
+    }
+    return future;
+  }
+
   @Override
   public void write(ClusterRecordItem clusterRecord, Handler<AsyncResult<Void>> handler) {
     write(clusterRecord).onComplete(handler);
@@ -165,8 +196,13 @@ public class ClusterRecordStream implements WriteStream<ClusterRecordItem> {
     }
     ended = true;
     this.endHandler = handler;
-    if (work.isEmpty()) {
+    if (busy) {
+      return;
+    }
+    if (pending.isEmpty()) {
       this.endHandler.handle(Future.succeededFuture());
+    } else {
+      flush();
     }
   }
 
@@ -178,7 +214,7 @@ public class ClusterRecordStream implements WriteStream<ClusterRecordItem> {
 
   @Override
   public boolean writeQueueFull() {
-    return work.size() >= writeQueueMaxSize;
+    return busy && pending.size() >= writeQueueMaxSize;
   }
 
   @Override
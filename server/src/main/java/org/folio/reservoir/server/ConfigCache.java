@@ -0,0 +1,165 @@
+package org.folio.reservoir.server;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.folio.reservoir.server.entity.CodeModuleEntity;
+
+/**
+ * Per-tenant cache of configuration rows: match key configs, code modules and OAI config,
+ * as well as the storage layout of records.
+ *
+ * <p>Lookups that are in progress are shared. Failed lookups are not cached. Entries
+ * stay until invalidated, so every change of the underlying tables must invalidate.
+ */
+public final class ConfigCache {
+
+  private static final ConfigCache instance = new ConfigCache();
+
+  private final Map<String, Future<JsonArray>> matchKeyConfigs = new ConcurrentHashMap<>();
+  private final Map<String, Future<CodeModuleEntity>> modules = new ConcurrentHashMap<>();
+  private final Map<String, Future<JsonObject>> oaiConfigs = new ConcurrentHashMap<>();
+  private final Map<String, Future<Storage.Layout>> layouts = new ConcurrentHashMap<>();
+  private final Map<String, Future<Void>> partitions = new ConcurrentHashMap<>();
+
+  private ConfigCache() { }
+
+  public static ConfigCache getInstance() {
+    return instance;
+  }
+
+  private static <T> Future<T> lookup(Map<String, Future<T>> map, String key,
+      Supplier<Future<T>> loader) {
+    Future<T> future = map.get(key);
+    if (future != null) {
+      return onCallerContext(future);
+    }
+    Future<T> loaded = loader.get();
+    map.put(key, loaded);
+    loaded.onFailure(e -> map.remove(key, loaded));
+    return loaded;
+  }
+
+  /**
+   * Deliver a shared lookup on the context of the caller.
+   *
+   * <p>Listeners of a future run on the context that created it; without this,
+   * code continuing from a lookup started by another request could run on another
+   * event loop than its own streams.
+   */
+  private static <T> Future<T> onCallerContext(Future<T> future) {
+    if (future.succeeded()) {
+      return Future.succeededFuture(future.result());
+    }
+    Context context = Vertx.currentContext();
+    if (future.isComplete() || context == null) {
+      return future;
+    }
+    Promise<T> promise = Promise.promise();
+    future.onComplete(res -> context.runOnContext(v -> promise.handle(res)));
+    return promise.future();
+  }
+
+  private static String moduleKey(String tenant, String id) {
+    return tenant + ":" + id;
+  }
+
+  /**
+   * Get match key configurations for tenant.
+   * @param tenant tenant
+   * @param loader provides configurations if not in cache
+   * @return async result with array of configurations
+   */
+  public Future<JsonArray> getMatchKeyConfigs(String tenant, Supplier<Future<JsonArray>> loader) {
+    return lookup(matchKeyConfigs, tenant, loader);
+  }
+
+  /**
+   * Get code module entity for tenant.
+   * @param tenant tenant
+   * @param id code module identifier
+   * @param loader provides entity if not in cache; entity null if not found
+   * @return async result with entity; null if not found
+   */
+  public Future<CodeModuleEntity> getCodeModuleEntity(String tenant, String id,
+      Supplier<Future<CodeModuleEntity>> loader) {
+    return lookup(modules, moduleKey(tenant, id), loader);
+  }
+
+  /**
+   * Get OAI config for tenant.
+   * @param tenant tenant
+   * @param loader provides config if not in cache; config null if not found
+   * @return async result with config; null if not found
+   */
+  public Future<JsonObject> getOaiConfig(String tenant, Supplier<Future<JsonObject>> loader) {
+    return lookup(oaiConfigs, tenant, loader);
+  }
+
+  /**
+   * Get storage layout of tenant.
+   * @param tenant tenant
+   * @param loader provides layout if not in cache
+   * @return async result with layout
+   */
+  public Future<Storage.Layout> getLayout(String tenant,
+      Supplier<Future<Storage.Layout>> loader) {
+    return lookup(layouts, tenant, loader);
+  }
+
+  /**
+   * Make sure a records partition exists.
+   * @param tenant tenant
+   * @param table partition table
+   * @param loader creates partition if not in cache
+   * @return async result
+   */
+  public Future<Void> getPartition(String tenant, String table, Supplier<Future<Void>> loader) {
+    return lookup(partitions, moduleKey(tenant, table), loader);
+  }
+
+  public void invalidatePartitions(String tenant) {
+    String prefix = moduleKey(tenant, "");
+    partitions.keySet().removeIf(key -> key.startsWith(prefix));
+  }
+
+  public void invalidateMatchKeyConfigs(String tenant) {
+    matchKeyConfigs.remove(tenant);
+  }
+
+  public void invalidateCodeModuleEntity(String tenant, String id) {
+    modules.remove(moduleKey(tenant, id));
+  }
+
+  public void invalidateOaiConfig(String tenant) {
+    oaiConfigs.remove(tenant);
+  }
+
+  /**
+   * Invalidate all entries for tenant.
+   * @param tenant tenant
+   */
+  public void invalidate(String tenant) {
+    invalidateMatchKeyConfigs(tenant);
+    invalidateOaiConfig(tenant);
+    String prefix = moduleKey(tenant, "");
+    modules.keySet().removeIf(key -> key.startsWith(prefix));
+    layouts.remove(tenant);
+    invalidatePartitions(tenant);
+  }
+
+  public void invalidateAll() {
+    matchKeyConfigs.clear();
+    modules.clear();
+    oaiConfigs.clear();
+    layouts.clear();
+    partitions.clear();
+  }
+
+}
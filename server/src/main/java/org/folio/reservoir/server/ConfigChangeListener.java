@@ -0,0 +1,173 @@
+package org.folio.reservoir.server;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.pgclient.PgConnection;
+import io.vertx.pgclient.PgNotification;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
+import java.util.UUID;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.reservoir.module.ModuleCache;
+import org.folio.tlib.postgres.TenantPgPool;
+
+/**
+ * Propagates configuration changes between module instances with PostgreSQL NOTIFY/LISTEN.
+ *
+ * <p>A change is applied to the local caches right away and published on a channel.
+ * Each instance listens on that channel and purges the affected cache entries. If the
+ * listening connection is lost, all caches are purged, as changes may have been missed,
+ * and listening is resumed.
+ */
+public class ConfigChangeListener {
+  private static final Logger log = LogManager.getLogger(ConfigChangeListener.class);
+
+  static final String CHANNEL = "mod_reservoir_config";
+  static final String MATCH_KEY = "matchKey";
+  static final String MODULE = "module";
+  static final String OAI_CONFIG = "oaiConfig";
+  static final String PARTITION = "partition";
+  static final String TENANT = "tenant";
+
+  // identifies events published by this instance as they are already applied
+  private static final String ORIGIN = UUID.randomUUID().toString();
+  private static final long RETRY_DELAY_MS = 5000;
+
+  private final Vertx vertx;
+  private final TenantPgPool pool;
+  private SqlConnection connection;
+  private boolean closed;
+
+  /**
+   * Create listener.
+   * @param vertx Vert.x handle
+   * @param pool pool for the database; any tenant, as channels are not schema specific
+   */
+  public ConfigChangeListener(Vertx vertx, TenantPgPool pool) {
+    this.vertx = vertx;
+    this.pool = pool;
+  }
+
+  /**
+   * Start listening.
+   *
+   * <p>Failures are logged and listening is retried later.
+   * @return async result; succeeds when listening or when a retry is scheduled
+   */
+  public Future<Void> start() {
+    return pool.getConnection()
+        .compose(conn -> {
+          if (!(conn instanceof PgConnection pgConnection)) {
+            conn.close();
+            return Future.failedFuture("Not a PostgreSQL connection");
+          }
+          connection = conn;
+          pgConnection.notificationHandler(this::handleNotification);
+          conn.closeHandler(x -> {
+            connection = null;
+            if (!closed) {
+              log.warn("Lost connection listening on {}", CHANNEL);
+              retry();
+            }
+          });
+          return conn.query("LISTEN " + CHANNEL).execute();
+        })
+        .onSuccess(x -> {
+          log.info("Listening on {}", CHANNEL);
+          // changes may have been missed while not listening
+          ConfigCache.getInstance().invalidateAll();
+          ModuleCache.getInstance().purgeAll();
+        })
+        .recover(e -> {
+          log.warn("Listening on {} failed: {}", CHANNEL, e.getMessage());
+          if (connection != null) {
+            connection.close();
+          } else {
+            retry();
+          }
+          return Future.succeededFuture();
+        })
+        .mapEmpty();
+  }
+
+  private void retry() {
+    if (!closed) {
+      vertx.setTimer(RETRY_DELAY_MS, x -> start());
+    }
+  }
+
+  /**
+   * Stop listening.
+   * @return async result
+   */
+  public Future<Void> close() {
+    closed = true;
+    if (connection == null) {
+      return Future.succeededFuture();
+    }
+    return connection.close();
+  }
+
+  void handleNotification(PgNotification notification) {
+    if (!CHANNEL.equals(notification.getChannel())) {
+      return;
+    }
+    try {
+      JsonObject event = new JsonObject(notification.getPayload());
+      if (!ORIGIN.equals(event.getString("origin"))) {
+        apply(event);
+      }
+    } catch (Exception e) {
+      log.warn("Bad notification {}: {}", notification.getPayload(), e.getMessage());
+    }
+  }
+
+  static void apply(JsonObject event) {
+    String tenant = event.getString("tenant");
+    String id = event.getString("id");
+    log.debug("Configuration change {}", event::encode);
+    switch (event.getString("type")) {
+      case MATCH_KEY -> ConfigCache.getInstance().invalidateMatchKeyConfigs(tenant);
+      case MODULE -> {
+        ConfigCache.getInstance().invalidateCodeModuleEntity(tenant, id);
+        ModuleCache.getInstance().purge(tenant, id);
+      }
+      case OAI_CONFIG -> ConfigCache.getInstance().invalidateOaiConfig(tenant);
+      case PARTITION -> ConfigCache.getInstance().invalidatePartitions(tenant);
+      case TENANT -> ConfigCache.getInstance().invalidate(tenant);
+      default -> throw new IllegalArgumentException("Unknown type " + event.getString("type"));
+    }
+  }
+
+  /**
+   * Apply configuration change locally and notify other instances.
+   *
+   * <p>Module instances of this instance are not purged; callers take care of that.
+   * @param pool pool to notify with
+   * @param tenant tenant of change
+   * @param type change type
+   * @param id identifier of changed entity (only for module changes)
+   * @return async result; failure to notify is logged only
+   */
+  static Future<Void> publish(TenantPgPool pool, String tenant, String type, String id) {
+    JsonObject event = new JsonObject()
+        .put("origin", ORIGIN)
+        .put("tenant", tenant)
+        .put("type", type)
+        .put("id", id);
+    if (MODULE.equals(type)) {
+      ConfigCache.getInstance().invalidateCodeModuleEntity(tenant, id);
+    } else {
+      apply(event);
+    }
+    return pool.preparedQuery("SELECT pg_notify($1, $2)")
+        .execute(Tuple.of(CHANNEL, event.encode()))
+        .<Void>mapEmpty()
+        .recover(e -> {
+          log.warn("Notify on {} failed: {}", CHANNEL, e.getMessage());
+          return Future.succeededFuture();
+        });
+  }
+}
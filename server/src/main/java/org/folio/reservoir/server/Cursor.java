@@ -0,0 +1,59 @@
+package org.folio.reservoir.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque position for cursor (keyset) pagination.
+ *
+ * <p>The cursor holds the key of the last entry of a page. The next page
+ * continues with entries with a greater key.
+ */
+public class Cursor {
+  /** Cursor value that requests the first page of a cursor listing. */
+  public static final String FIRST = "*";
+
+  private static final String PREFIX = "k:";
+
+  private final String key;
+
+  /**
+   * Create cursor for key.
+   * @param key last key of page (never null)
+   */
+  public Cursor(String key) {
+    this.key = key;
+  }
+
+  /**
+   * Create cursor from coded string.
+   * @param coded coded string
+   * @return cursor
+   * @throws IllegalArgumentException if coded string is not a cursor
+   */
+  public static Cursor decode(String coded) {
+    String s;
+    try {
+      s = new String(Base64.getUrlDecoder().decode(coded), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Bad cursor");
+    }
+    if (!s.startsWith(PREFIX)) {
+      throw new IllegalArgumentException("Bad cursor");
+    }
+    return new Cursor(s.substring(PREFIX.length()));
+  }
+
+  /**
+   * Return encoded cursor value.
+   * @return encoded cursor string
+   */
+  public String encode() {
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString((PREFIX + key).getBytes(StandardCharsets.UTF_8));
+  }
+
+  public String getKey() {
+    return key;
+  }
+}
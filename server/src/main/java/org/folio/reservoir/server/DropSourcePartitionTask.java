@@ -0,0 +1,34 @@
+package org.folio.reservoir.server;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Job deleting all records of a source or source version by dropping its partition.
+ *
+ * <p>The drop is a single step and is committed atomically, so a resumed job
+ * starts over and finds nothing left to drop.
+ */
+class DropSourcePartitionTask implements JobTask {
+
+  private final Storage storage;
+  private final String sqlWhere;
+  private final Storage.SourcePartition partition;
+
+  DropSourcePartitionTask(Storage storage, String sqlWhere, Storage.SourcePartition partition) {
+    this.storage = storage;
+    this.sqlWhere = sqlWhere;
+    this.partition = partition;
+  }
+
+  @Override
+  public Future<Long> total() {
+    return storage.countGlobalRecords(sqlWhere);
+  }
+
+  @Override
+  public Future<Step> step(JsonObject checkpoint) {
+    return storage.dropSourcePartition(partition)
+        .map(count -> new Step(null, count, null));
+  }
+}
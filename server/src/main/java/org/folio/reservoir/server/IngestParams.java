@@ -6,6 +6,8 @@ import org.folio.reservoir.module.impl.ModuleJsonPath;
 import org.folio.reservoir.util.SourceId;
 
 public class IngestParams {
+  static final int BATCH_SIZE_MAX = 10000;
+  static final int BULK_BATCH_SIZE = 1000;
   final SourceId sourceId;
   final Integer sourceVersion;
   final String fileName;
@@ -14,6 +16,8 @@ public class IngestParams {
   final boolean ingest;
   final boolean raw;
   final boolean xmlFixing;
+  final int batchSize;
+  final boolean bulk;
 
   /**
    * Create ingest params from request.
@@ -33,6 +37,12 @@ public class IngestParams {
     xmlFixing = request.getParam("xmlFixing", "false").equals("true");
     raw = request.getParam("raw", "false").equals("true");
     fileName = request.getParam("fileName", "<noname>");
+    bulk = validateMode(request);
+    batchSize = Integer.parseInt(request.getParam("batchSize",
+        bulk ? Integer.toString(BULK_BATCH_SIZE) : "1"));
+    if (batchSize < 1 || batchSize > BATCH_SIZE_MAX) {
+      throw new IllegalArgumentException("batchSize must be in range 1.." + BATCH_SIZE_MAX);
+    }
   }
 
   /**
@@ -49,6 +59,20 @@ public class IngestParams {
 
   }
 
+  /**
+   * Validate mode in the request.
+   * @param request request
+   * @return true if bulk mode; false if incremental (default)
+   */
+  public static boolean validateMode(HttpServerRequest request) {
+    String mode = request.getParam("mode", "incremental");
+    return switch (mode) {
+      case "incremental" -> false;
+      case "bulk" -> true;
+      default -> throw new IllegalArgumentException("mode must be one of: incremental, bulk");
+    };
+  }
+
   public String getSummary(String fileName) {
     return sourceId + ":" + sourceVersion + ":" + (fileName != null ? fileName : this.fileName);
   }
@@ -66,6 +90,10 @@ public class IngestParams {
       details.append(" raw: ").append(raw);
     } else {
       details.append(" ingest: ").append(ingest).append(" xmlFixing: ").append(xmlFixing);
+      details.append(" batchSize: ").append(batchSize);
+      if (bulk) {
+        details.append(" bulk: ").append(bulk);
+      }
     }
     return details.toString();
   }
@@ -0,0 +1,11 @@
+package org.folio.reservoir.server;
+
+/**
+ * Outcome of ingesting a global record.
+ */
+public enum IngestResult {
+  INSERTED,
+  UPDATED,
+  UNCHANGED,
+  DELETED
+}
@@ -10,6 +10,7 @@ public class IngestStats {
   private final AtomicInteger ignored = new AtomicInteger();
   private final AtomicInteger inserted = new AtomicInteger();
   private final AtomicInteger updated = new AtomicInteger();
+  private final AtomicInteger unchanged = new AtomicInteger();
   private final AtomicInteger deleted = new AtomicInteger();
 
   public String getFileName() {
@@ -43,6 +44,10 @@ public class IngestStats {
     return updated.incrementAndGet();
   }
 
+  public int incrementUnchanged() {
+    return unchanged.incrementAndGet();
+  }
+
   public int incrementDeleted() {
     return deleted.incrementAndGet();
   }
@@ -63,6 +68,10 @@ public class IngestStats {
     return updated.get();
   }
 
+  public int unchanged() {
+    return unchanged.get();
+  }
+
   public int deleted() {
     return deleted.get();
   }
@@ -77,13 +86,15 @@ public class IngestStats {
     stats.put("ignored", ignored());
     stats.put("inserted", inserted());
     stats.put("updated", updated());
+    stats.put("unchanged", unchanged());
     stats.put("deleted", deleted());
     return stats;
   }
 
   public String toString() {
     return "processed: " + processed() + " ignored: " + ignored()
-      + " inserted: " + inserted() + " updated: " + updated() + " deleted: " + deleted();
+      + " inserted: " + inserted() + " updated: " + updated()
+      + " unchanged: " + unchanged() + " deleted: " + deleted();
   }
 
 }
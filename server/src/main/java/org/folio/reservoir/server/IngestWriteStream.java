@@ -3,15 +3,21 @@ package org.folio.reservoir.server;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.streams.WriteStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.reservoir.module.ModuleWorker;
 import org.folio.reservoir.module.impl.ModuleJsonPath;
 
 public class IngestWriteStream implements WriteStream<JsonObject> {
@@ -26,11 +32,15 @@ public class IngestWriteStream implements WriteStream<JsonObject> {
   boolean ended;
   Handler<Void> drainHandler;
   JsonArray matchKeyConfigs;
+  List<JsonObject> batch = new ArrayList<>();
+  List<Promise<Void>> batchPromises = new ArrayList<>();
   AtomicInteger ops = new AtomicInteger();
   int queueSize = 5;
   boolean ingest;
   private static final Logger log = LogManager.getLogger(IngestWriteStream.class);
   private static final String LOCAL_ID = "localId";
+  private static final String LOCAL_ID_PATH = "localIdPath";
+  private static final String INGEST = "ingest";
 
   IngestWriteStream(Vertx vertx, Storage storage, IngestParams params,
       String fileName, String contentType) {
@@ -52,35 +62,20 @@ public class IngestWriteStream implements WriteStream<JsonObject> {
   @Override
   public Future<Void> write(JsonObject globalRecord) {
     ops.incrementAndGet();
-    return lookupId(globalRecord)
-        .compose(rec -> {
-          log(rec);
-          Future<Void> future = Future.succeededFuture();
-          String localId = rec.getString(LOCAL_ID);
-          if (ingest && localId != null) {
-            if (matchKeyConfigs == null) {
-              future = storage.getAvailableMatchConfigs().map(x -> {
-                matchKeyConfigs = x;
-                return null;
-              });
+    Future<Void> future;
+    if (ingest && (params.batchSize > 1 || params.bulk)) {
+      future = addToBatch(globalRecord);
+    } else {
+      future = lookupId(globalRecord)
+          .compose(rec -> {
+            log(rec);
+            if (!ingest || rec.getString(LOCAL_ID) == null) {
+              return Future.succeededFuture();
             }
-            future = future
-                .compose(x -> storage
-                  .ingestGlobalRecord(
-                    vertx, params.sourceId, params.sourceVersion, rec, matchKeyConfigs)
-                  .onSuccess(r -> {
-                    if (r == null) {
-                      stats.incrementDeleted();
-                    } else if (r.booleanValue()) {
-                      stats.incrementInserted();
-                    } else {
-                      stats.incrementUpdated();
-                    }
-                  }))
-                .mapEmpty();
-          }
-          return future;
-        })
+            return ingestRecord(rec);
+          });
+    }
+    return future
         .onFailure(e -> {
           if (exceptionHandler != null) {
             exceptionHandler.handle(e);
@@ -108,6 +103,7 @@ public class IngestWriteStream implements WriteStream<JsonObject> {
   @Override
   public void end(Handler<AsyncResult<Void>> handler) {
     ended = true;
+    flush();
     if (ops.get() == 0) {
       log.info("{} {}", params.getSummary(fileName), stats);
       handler.handle(Future.succeededFuture());
@@ -137,13 +133,121 @@ public class IngestWriteStream implements WriteStream<JsonObject> {
     return stats;
   }
 
+  private Future<JsonArray> getMatchKeyConfigs() {
+    if (matchKeyConfigs != null) {
+      return Future.succeededFuture(matchKeyConfigs);
+    }
+    return storage.getAvailableMatchConfigs().onSuccess(x -> matchKeyConfigs = x);
+  }
+
+  private void updateStats(IngestResult result) {
+    switch (result) {
+      case INSERTED -> stats.incrementInserted();
+      case UPDATED -> stats.incrementUpdated();
+      case UNCHANGED -> stats.incrementUnchanged();
+      default -> stats.incrementDeleted();
+    }
+  }
+
+  private Future<Void> ingestRecord(JsonObject rec) {
+    return getMatchKeyConfigs()
+        .compose(x -> storage.ingestGlobalRecord(
+            vertx, params.sourceId, params.sourceVersion, rec, x))
+        .onSuccess(this::updateStats)
+        .mapEmpty();
+  }
+
+  private Future<Void> addToBatch(JsonObject rec) {
+    Promise<Void> promise = Promise.promise();
+    batch.add(rec);
+    batchPromises.add(promise);
+    // flush when full, when at end and when the writer would otherwise block
+    if (batch.size() >= params.batchSize || ended || writeQueueFull()) {
+      flush();
+    }
+    return promise.future();
+  }
+
+  /**
+   * Ingest the batch.
+   *
+   * <p>All CPU bound work for the records of the batch, that is local identifier lookup
+   * and match keys of modules and methods, is performed in one worker task. Then the
+   * records are ingested with one transaction.
+   */
+  private void flush() {
+    if (batch.isEmpty()) {
+      return;
+    }
+    List<JsonObject> records = batch;
+    List<Promise<Void>> promises = batchPromises;
+    batch = new ArrayList<>();
+    batchPromises = new ArrayList<>();
+    // in bulk mode clustering is deferred to Storage.clusterGlobalRecords
+    Future<JsonArray> configs = params.bulk
+        ? Future.succeededFuture(new JsonArray()) : getMatchKeyConfigs();
+    configs
+        .compose(x -> storage.getMatchKeyFunctions(vertx, x))
+        .compose(functions -> ModuleWorker.<List<Map<String, Collection<String>>>>execute(
+                vertx, INGEST, p -> p.complete(prepareBatch(records, functions)))
+            .compose(matchKeyValues -> ingestBatch(records, matchKeyValues)))
+        .onSuccess(results -> results.forEach(this::updateStats))
+        .onComplete(x -> promises.forEach(p -> p.handle(x.mapEmpty())));
+  }
+
+  /**
+   * Look up local identifiers and compute match keys; executes on worker.
+   */
+  private List<Map<String, Collection<String>>> prepareBatch(List<JsonObject> records,
+      List<MatchKeyFunction> functions) {
+
+    List<Map<String, Collection<String>>> matchKeyValues = new ArrayList<>(records.size());
+    for (JsonObject rec : records) {
+      Map<String, Collection<String>> values = new HashMap<>();
+      if (params.jsonPath != null) {
+        setLocalId(rec, params.jsonPath.executeAsCollection(null, rec.getJsonObject("payload")));
+      }
+      if (rec.getString(LOCAL_ID) != null) {
+        Storage.getMatchKeyValues(rec, functions, values);
+      }
+      matchKeyValues.add(values);
+    }
+    return matchKeyValues;
+  }
+
+  private Future<List<IngestResult>> ingestBatch(List<JsonObject> records,
+      List<Map<String, Collection<String>>> matchKeyValues) {
+
+    List<JsonObject> ingestRecords = new ArrayList<>(records.size());
+    List<Map<String, Collection<String>>> ingestValues = new ArrayList<>(records.size());
+    for (int i = 0; i < records.size(); i++) {
+      JsonObject rec = records.get(i);
+      log(rec);
+      if (rec.getString(LOCAL_ID) != null) {
+        ingestRecords.add(rec);
+        ingestValues.add(matchKeyValues.get(i));
+      }
+    }
+    if (ingestRecords.isEmpty()) {
+      return Future.succeededFuture(List.of());
+    }
+    return storage.ingestGlobalRecords(params.sourceId, params.sourceVersion,
+        ingestRecords, ingestValues);
+  }
+
+  private static void setLocalId(JsonObject rec, Collection<String> strings) {
+    Iterator<String> iterator = strings.iterator();
+    if (iterator.hasNext()) {
+      rec.put(LOCAL_ID, iterator.next().trim());
+    } else {
+      rec.remove(LOCAL_ID);
+    }
+  }
+
   private static Future<Collection<String>> lookupPath(Vertx vertx,
       ModuleJsonPath jsonPath, JsonObject payload) {
-    return vertx.executeBlocking(p -> {
-      Collection<String> strings = jsonPath.executeAsCollection(null, payload);
-      p.complete(strings);
-    },
-    false);
+    return ModuleWorker.execute(vertx, LOCAL_ID_PATH, p ->
+        p.complete(jsonPath.executeAsCollection(null, payload)));
   }
 
   private Future<JsonObject> lookupId(JsonObject rec) {
@@ -153,12 +257,7 @@ public class IngestWriteStream implements WriteStream<JsonObject> {
         .compose(r ->
           lookupPath(vertx, params.jsonPath, r.getJsonObject("payload"))
             .map(strings -> {
-              Iterator<String> iterator = strings.iterator();
-              if (iterator.hasNext()) {
-                r.put(LOCAL_ID, iterator.next().trim());
-              } else {
-                r.remove(LOCAL_ID);
-              }
+              setLocalId(r, strings);
               return r;
             }
       ));
@@ -0,0 +1,52 @@
+package org.folio.reservoir.server;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Job rebuilding the clusters of a match key.
+ *
+ * <p>The rebuild is a single step; clusters are swapped in atomically at the end,
+ * so a resumed job starts over.
+ */
+class InitializeMatchKeyTask implements JobTask {
+
+  private final Storage storage;
+  private final Vertx vertx;
+  private final String matchKeyId;
+  private ClusterRebuild rebuild;
+
+  InitializeMatchKeyTask(Storage storage, Vertx vertx, String matchKeyId) {
+    this.storage = storage;
+    this.vertx = vertx;
+    this.matchKeyId = matchKeyId;
+  }
+
+  @Override
+  public Future<Long> total() {
+    return storage.countGlobalRecords(null);
+  }
+
+  @Override
+  public Future<Step> step(JsonObject checkpoint) {
+    return storage.selectMatchKeyConfig(matchKeyId)
+        .compose(conf -> {
+          if (conf == null) {
+            return Future.failedFuture("MatchKey " + matchKeyId + " not found");
+          }
+          return storage.getMatchKeyFunction(vertx, conf);
+        })
+        .compose(function -> {
+          rebuild = new ClusterRebuild(storage, vertx, function);
+          return rebuild.run();
+        })
+        .map(res -> new Step(null, res.getLong("totalRecords"), res));
+  }
+
+  @Override
+  public long stepProgress() {
+    ClusterRebuild r = rebuild;
+    return r == null ? 0 : r.getProgress().getLong("recordsRead");
+  }
+}
@@ -0,0 +1,475 @@
+package org.folio.reservoir.server;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.validation.RequestParameters;
+import io.vertx.ext.web.validation.ValidationHandler;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.Tuple;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.okapi.common.HttpResponse;
+import org.folio.tlib.postgres.PgCqlDefinition;
+
+/**
+ * Background jobs for long-running storage operations.
+ *
+ * <p>A job is executed in steps by the instance that owns it. After each step the
+ * checkpoint is saved, and while a step runs the owner updates the job periodically.
+ * A running job that has not been updated within the lease is claimed and resumed
+ * from its last checkpoint by any instance, e.g. after a restart.
+ */
+public class JobService {
+
+  static final String TYPE_DELETE_GLOBAL_RECORDS = "deleteGlobalRecords";
+  static final String TYPE_TOUCH_CLUSTERS = "touchClusters";
+  static final String TYPE_INITIALIZE_MATCH_KEY = "initializeMatchKey";
+  static final String STATUS_RUNNING = "running";
+  static final String STATUS_COMPLETED = "completed";
+  static final String STATUS_FAILED = "failed";
+
+  private static int chunkSize = 1000;
+  private static int throttle = 0; // milliseconds between chunks
+  static long heartbeatInterval = 5000; // milliseconds
+  static long lease = 60000; // milliseconds
+
+  private static final String B_WHERE_ID1_LITERAL = " WHERE id = $1";
+  private static final String B_OWNED_LITERAL = " WHERE id = $1 AND owner = $2 AND status = '"
+      + STATUS_RUNNING + "'";
+  private static final String PARAMS_LITERAL = "params";
+  private static final long PROGRESS_LOG_ROWS = 100000;
+
+  private static final Logger log = LogManager.getLogger(JobService.class);
+
+  // tenants with jobs seen by this instance; checked for stale jobs periodically
+  private static final Set<String> tenants = ConcurrentHashMap.newKeySet();
+
+  final Vertx vertx;
+
+  private static class Run {
+    final Storage storage;
+    final UUID id;
+    final UUID owner;
+    final JobTask task;
+    long processed;
+    long timer = -1;
+
+    Run(Storage storage, UUID id, UUID owner, JobTask task, long processed) {
+      this.storage = storage;
+      this.id = id;
+      this.owner = owner;
+      this.task = task;
+      this.processed = processed;
+    }
+  }
+
+  /**
+   * Create job service.
+   * @param vertx Vert.x handle
+   */
+  public JobService(Vertx vertx) {
+    this.vertx = vertx;
+    vertx.setPeriodic(lease, x -> tenants.forEach(tenant ->
+        resume(new Storage(vertx, tenant))
+            .onFailure(e -> log.warn("resume jobs tenant={}: {}", tenant, e.getMessage()))));
+  }
+
+  /**
+   * Set number of rows processed per chunk and transaction.
+   * @param size number of rows; must be positive
+   */
+  static void setChunkSize(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("job chunk size must be positive");
+    }
+    chunkSize = size;
+  }
+
+  static int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Set pause between chunks, leaving the database to other work such as ingest.
+   * @param milliseconds pause; must be non-negative
+   */
+  static void setThrottle(int milliseconds) {
+    if (milliseconds < 0) {
+      throw new IllegalArgumentException("job throttle must not be negative");
+    }
+    throttle = milliseconds;
+  }
+
+  static int getThrottle() {
+    return throttle;
+  }
+
+  private void pause(Runnable next) {
+    if (throttle > 0) {
+      vertx.setTimer(throttle, x -> next.run());
+    } else {
+      next.run();
+    }
+  }
+
+  /**
+   * Execute task without storing it as a job.
+   *
+   * <p>The task is executed in the same chunks as a job, so a task that is interrupted
+   * can be executed again to complete the remaining work.
+   * @param task task to execute
+   * @return async result with number of rows processed
+   */
+  Future<Long> execute(JobTask task) {
+    Promise<Long> promise = Promise.promise();
+    execute(task, null, 0, promise);
+    return promise.future();
+  }
+
+  private void execute(JobTask task, JsonObject checkpoint, long processed,
+      Promise<Long> promise) {
+    task.step(checkpoint)
+        .onFailure(promise::fail)
+        .onSuccess(step -> {
+          long total = processed + step.processed();
+          if (step.checkpoint() == null) {
+            promise.complete(total);
+            return;
+          }
+          if (total / PROGRESS_LOG_ROWS != processed / PROGRESS_LOG_ROWS) {
+            log.info("{} rows processed", total);
+          }
+          pause(() -> execute(task, step.checkpoint(), total, promise));
+        });
+  }
+
+  static void forgetTenant(String tenant) {
+    tenants.remove(tenant);
+  }
+
+  static String getQuery(JsonObject params, String type) {
+    String query = params.getString("query");
+    if (query == null) {
+      throw new IllegalArgumentException("Must specify query for " + type);
+    }
+    return query;
+  }
+
+  static String parse(PgCqlDefinition definition, JsonObject params, String type) {
+    return definition.parse(getQuery(params, type)).getWhereClause();
+  }
+
+  Future<JobTask> createTask(Storage storage, String type, JsonObject params) {
+    try {
+      switch (type) {
+        case TYPE_DELETE_GLOBAL_RECORDS: {
+          String where = parse(ReservoirService.createDefinitionGlobalRecords(), params, type);
+          Storage.SourcePartition partition = Storage.matchSourcePartition(where);
+          return storage.isPartitioned().map(partitioned -> {
+            if (partitioned && partition != null) {
+              return new DropSourcePartitionTask(storage, where, partition);
+            }
+            return new KeysetJobTask(
+                () -> storage.countGlobalRecords(where),
+                (after, limit) -> storage.deleteGlobalRecordsChunk(where, after, limit));
+          });
+        }
+        case TYPE_TOUCH_CLUSTERS: {
+          String where = parse(ReservoirService.createDefinitionTouchClusters(), params, type);
+          String error = Storage.checkTouchClusters(where);
+          if (error != null) {
+            return Future.failedFuture(error);
+          }
+          return Future.succeededFuture(new KeysetJobTask(
+              () -> storage.countTouchClusters(where),
+              (after, limit) -> storage.touchClustersChunk(where, after, limit)));
+        }
+        case TYPE_INITIALIZE_MATCH_KEY: {
+          String id = params.getString("matchKeyId");
+          if (id == null) {
+            return Future.failedFuture("Must specify matchKeyId for " + type);
+          }
+          return storage.selectMatchKeyConfig(id).compose(conf -> {
+            if (conf == null) {
+              return Future.failedFuture("MatchKey " + id + " not found");
+            }
+            return Future.succeededFuture(new InitializeMatchKeyTask(storage, vertx, id));
+          });
+        }
+        default:
+          return Future.failedFuture("Unsupported job type: " + type);
+      }
+    } catch (Exception e) {
+      return Future.failedFuture(e);
+    }
+  }
+
+  static String formatTimestamp(LocalDateTime timestamp) {
+    return timestamp.atZone(ZoneOffset.UTC).format(DateTimeFormatter.ISO_DATE_TIME);
+  }
+
+  static JsonObject getJob(Row row) {
+    String status = row.getString("status");
+    long processed = row.getLong("processed") + row.getLong("step_processed");
+    Long total = row.getLong("total");
+    JsonObject job = new JsonObject()
+        .put("id", row.getUUID("id").toString())
+        .put("type", row.getString("type"))
+        .put(PARAMS_LITERAL, row.getJsonObject(PARAMS_LITERAL))
+        .put("status", status)
+        .put("processed", processed);
+    if (total != null) {
+      job.put("total", total);
+    }
+    LocalDateTime created = row.getLocalDateTime("created");
+    LocalDateTime updated = row.getLocalDateTime("updated");
+    LocalDateTime finished = row.getLocalDateTime("finished");
+    long millis = Duration.between(created, finished != null ? finished : updated).toMillis();
+    if (millis > 0) {
+      double rate = processed * 1000.0 / millis;
+      job.put("rate", rate);
+      if (STATUS_RUNNING.equals(status) && total != null && rate > 0) {
+        job.put("eta", (long) Math.ceil(Math.max(0, total - processed) / rate));
+      }
+    }
+    String error = row.getString("error");
+    if (error != null) {
+      job.put("error", error);
+    }
+    JsonObject result = row.getJsonObject("result");
+    if (result != null) {
+      job.put("result", result);
+    }
+    job.put("created", formatTimestamp(created));
+    job.put("updated", formatTimestamp(updated));
+    if (finished != null) {
+      job.put("finished", formatTimestamp(finished));
+    }
+    return job;
+  }
+
+  static Future<JsonObject> getJob(Storage storage, UUID id) {
+    return storage.getPool().preparedQuery("SELECT * FROM " + storage.getJobTable()
+            + B_WHERE_ID1_LITERAL)
+        .execute(Tuple.of(id))
+        .map(rowSet -> {
+          RowIterator<Row> iterator = rowSet.iterator();
+          if (!iterator.hasNext()) {
+            return null;
+          }
+          return getJob(iterator.next());
+        });
+  }
+
+  /**
+   * Submit job.
+   *
+   * @param ctx routing context
+   * @return async result
+   */
+  public Future<Void> post(RoutingContext ctx) {
+    Storage storage = new Storage(ctx);
+    JsonObject request = ctx.body().asJsonObject();
+    String type = request.getString("type");
+    JsonObject params = request.getJsonObject(PARAMS_LITERAL);
+    return createTask(storage, type, params).compose(task -> {
+      UUID id = UUID.randomUUID();
+      UUID owner = UUID.randomUUID();
+      LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+      return storage.getPool().preparedQuery("INSERT INTO " + storage.getJobTable()
+              + " (id, type, params, status, processed, step_processed, owner, created, updated)"
+              + " VALUES ($1, $2, $3, $4, 0, 0, $5, $6, $6)")
+          .execute(Tuple.of(id, type, params, STATUS_RUNNING, owner, now))
+          .compose(x -> getJob(storage, id))
+          .map(job -> {
+            log.info("job {} type={} params={} submitted", id, type, params.encode());
+            HttpResponse.responseJson(ctx, 201).end(job.encode());
+            run(storage, id, owner, task, null, 0, null);
+            return null;
+          });
+    });
+  }
+
+  /**
+   * Get job.
+   *
+   * @param ctx routing context
+   * @return async result
+   */
+  public Future<Void> get(RoutingContext ctx) {
+    Storage storage = new Storage(ctx);
+    RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
+    String id = Util.getParameterString(params.pathParameter("id"));
+    return resume(storage)
+        .compose(x -> getJob(storage, UUID.fromString(id)))
+        .map(job -> {
+          if (job == null) {
+            HttpResponse.responseError(ctx, 404, id);
+            return null;
+          }
+          HttpResponse.responseJson(ctx, 200).end(job.encode());
+          return null;
+        });
+  }
+
+  /**
+   * Get all jobs.
+   *
+   * @param ctx routing context
+   * @return async result
+   */
+  public Future<Void> getCollection(RoutingContext ctx) {
+    Storage storage = new Storage(ctx);
+    return resume(storage)
+        .compose(x -> storage.getPool().query("SELECT * FROM " + storage.getJobTable()
+            + " ORDER BY created").execute())
+        .map(rowSet -> {
+          JsonArray ar = new JsonArray();
+          rowSet.forEach(row -> ar.add(getJob(row)));
+          JsonObject response = new JsonObject();
+          response.put("items", ar);
+          response.put("resultInfo", new JsonObject().put("totalRecords", ar.size()));
+          HttpResponse.responseJson(ctx, 200).end(response.encode());
+          return null;
+        });
+  }
+
+  /**
+   * Delete job. A running job stops at its next checkpoint.
+   *
+   * @param ctx routing context
+   * @return async result
+   */
+  public Future<Void> delete(RoutingContext ctx) {
+    Storage storage = new Storage(ctx);
+    RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
+    String id = Util.getParameterString(params.pathParameter("id"));
+    return storage.getPool().preparedQuery("DELETE FROM " + storage.getJobTable()
+            + B_WHERE_ID1_LITERAL)
+        .execute(Tuple.of(UUID.fromString(id)))
+        .map(rowSet -> {
+          if (rowSet.rowCount() == 0) {
+            HttpResponse.responseError(ctx, 404, id);
+          } else {
+            ctx.response().setStatusCode(204).end();
+          }
+          return null;
+        });
+  }
+
+  /**
+   * Claim and resume running jobs whose owner has not updated them within the lease.
+   * @param storage storage of tenant
+   * @return async result
+   */
+  Future<Void> resume(Storage storage) {
+    tenants.add(storage.getTenant());
+    UUID owner = UUID.randomUUID();
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+    return storage.getPool().preparedQuery("UPDATE " + storage.getJobTable()
+            + " SET owner = $1, updated = $2, step_processed = 0"
+            + " WHERE status = $3 AND updated < $4"
+            + " RETURNING id, type, params, checkpoint, processed, total")
+        .execute(Tuple.of(owner, now, STATUS_RUNNING, now.minus(Duration.ofMillis(lease))))
+        .map(rowSet -> {
+          rowSet.forEach(row -> {
+            UUID id = row.getUUID("id");
+            long processed = row.getLong("processed");
+            log.info("job {} resumed at {} processed", id, processed);
+            createTask(storage, row.getString("type"), row.getJsonObject(PARAMS_LITERAL))
+                .onSuccess(task -> run(storage, id, owner, task,
+                    row.getJsonObject("checkpoint"), processed, row.getLong("total")))
+                .onFailure(e -> fail(new Run(storage, id, owner, null, processed), e));
+          });
+          return null;
+        });
+  }
+
+  void run(Storage storage, UUID id, UUID owner, JobTask task, JsonObject checkpoint,
+      long processed, Long total) {
+    tenants.add(storage.getTenant());
+    Run run = new Run(storage, id, owner, task, processed);
+    run.timer = vertx.setPeriodic(heartbeatInterval, x -> heartbeat(run));
+    Future<Void> future = Future.succeededFuture();
+    if (total == null) {
+      future = task.total().compose(n -> storage.getPool().preparedQuery("UPDATE "
+              + storage.getJobTable() + " SET total = $3" + B_OWNED_LITERAL)
+          .execute(Tuple.of(id, owner, n)))
+          .mapEmpty();
+    }
+    future
+        .onSuccess(x -> loop(run, checkpoint))
+        .onFailure(e -> fail(run, e));
+  }
+
+  private void loop(Run run, JsonObject checkpoint) {
+    run.task.step(checkpoint)
+        .compose(step -> saveStep(run, step).map(owned -> {
+          if (Boolean.FALSE.equals(owned)) {
+            log.info("job {} owner={} deleted or not owner", run.id, run.owner);
+            return null;
+          }
+          if (step.checkpoint() == null) {
+            log.info("job {} completed with {} processed", run.id, run.processed);
+          }
+          return step.checkpoint();
+        }))
+        .onSuccess(next -> {
+          if (next == null) {
+            vertx.cancelTimer(run.timer);
+          } else {
+            pause(() -> loop(run, next));
+          }
+        })
+        .onFailure(e -> fail(run, e));
+  }
+
+  private Future<Boolean> saveStep(Run run, JobTask.Step step) {
+    run.processed += step.processed();
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+    boolean completed = step.checkpoint() == null;
+    return run.storage.getPool().preparedQuery("UPDATE " + run.storage.getJobTable()
+            + " SET processed = $3, step_processed = 0, checkpoint = $4,"
+            + " result = COALESCE($5, result), status = $6, updated = $7, finished = $8"
+            + B_OWNED_LITERAL)
+        .execute(Tuple.of(run.id, run.owner, run.processed, step.checkpoint(), step.result(),
+            completed ? STATUS_COMPLETED : STATUS_RUNNING, now, completed ? now : null))
+        .map(rowSet -> rowSet.rowCount() > 0);
+  }
+
+  private void heartbeat(Run run) {
+    run.storage.getPool().preparedQuery("UPDATE " + run.storage.getJobTable()
+            + " SET updated = $3, step_processed = $4" + B_OWNED_LITERAL)
+        .execute(Tuple.of(run.id, run.owner, LocalDateTime.now(ZoneOffset.UTC),
+            run.task.stepProgress()))
+        .onSuccess(rowSet -> {
+          if (rowSet.rowCount() == 0) {
+            vertx.cancelTimer(run.timer);
+          }
+        })
+        .onFailure(e -> log.warn("job {} heartbeat: {}", run.id, e.getMessage()));
+  }
+
+  private void fail(Run run, Throwable e) {
+    vertx.cancelTimer(run.timer);
+    log.warn("job {} failed: {}", run.id, e.getMessage(), e);
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+    run.storage.getPool().preparedQuery("UPDATE " + run.storage.getJobTable()
+            + " SET processed = $3, step_processed = 0, status = $4, error = $5,"
+            + " updated = $6, finished = $6" + B_OWNED_LITERAL)
+        .execute(Tuple.of(run.id, run.owner, run.processed, STATUS_FAILED, e.getMessage(), now))
+        .onFailure(e1 -> log.error("job {} fatal {}", run.id, e1.getMessage(), e1));
+  }
+}
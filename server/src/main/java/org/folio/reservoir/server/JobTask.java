@@ -0,0 +1,39 @@
+package org.folio.reservoir.server;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Long-running operation executed by {@link JobService} in checkpointed steps.
+ */
+interface JobTask {
+
+  /**
+   * Outcome of a step.
+   * @param checkpoint state for the next step; null if the job is complete
+   * @param processed number of rows processed by the step
+   * @param result job result; null if none
+   */
+  record Step(JsonObject checkpoint, long processed, JsonObject result) { }
+
+  /**
+   * Count rows to process.
+   * @return async result with number of rows
+   */
+  Future<Long> total();
+
+  /**
+   * Execute a step. The work of a step is committed when it completes.
+   * @param checkpoint checkpoint of previous step; null for first step
+   * @return async result with outcome
+   */
+  Future<Step> step(JsonObject checkpoint);
+
+  /**
+   * Rows processed so far by the step in progress.
+   * @return number of rows; reported while a long step is running
+   */
+  default long stepProgress() {
+    return 0;
+  }
+}
@@ -0,0 +1,53 @@
+package org.folio.reservoir.server;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Job processing rows in chunks ordered by identifier.
+ *
+ * <p>The checkpoint is the last identifier processed, so a resumed job continues
+ * with the next chunk.
+ */
+class KeysetJobTask implements JobTask {
+
+  private static final String AFTER_LITERAL = "after";
+
+  interface Chunk {
+    /**
+     * Process a chunk.
+     * @param after only rows with identifier greater than this; null for first chunk
+     * @param limit maximum number of rows
+     * @return identifiers processed in ascending order; empty when no rows are left
+     */
+    Future<List<UUID>> apply(UUID after, int limit);
+  }
+
+  private final Supplier<Future<Long>> count;
+  private final Chunk chunk;
+
+  KeysetJobTask(Supplier<Future<Long>> count, Chunk chunk) {
+    this.count = count;
+    this.chunk = chunk;
+  }
+
+  @Override
+  public Future<Long> total() {
+    return count.get();
+  }
+
+  @Override
+  public Future<Step> step(JsonObject checkpoint) {
+    UUID after = checkpoint == null ? null : UUID.fromString(checkpoint.getString(AFTER_LITERAL));
+    return chunk.apply(after, JobService.getChunkSize()).map(ids -> {
+      if (ids.isEmpty()) {
+        return new Step(null, 0, null);
+      }
+      return new Step(new JsonObject().put(AFTER_LITERAL, ids.get(ids.size() - 1).toString()),
+          ids.size(), null);
+    });
+  }
+}
@@ -1,12 +1,16 @@
 package org.folio.reservoir.server;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.pgclient.PgConnectOptions;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.okapi.common.Config;
 import org.folio.okapi.common.ModuleVersionReporter;
+import org.folio.reservoir.module.ModuleWorker;
+import org.folio.reservoir.module.impl.ModuleJavaScript;
 import org.folio.tlib.RouterCreator;
 import org.folio.tlib.api.HealthApi;
 import org.folio.tlib.api.Tenant2Api;
@@ -14,6 +18,14 @@ import org.folio.tlib.postgres.TenantPgPool;
 
 public class MainVerticle extends AbstractVerticle {
   final Logger log = LogManager.getLogger(MainVerticle.class);
+  private static final String STATEMENT_CACHE_SIZE = "db.preparedStatementCacheSize";
+  private static final String JS_CONTEXT_POOL_SIZE = "js.contextPoolSize";
+  private static final String MODULE_WORKER_POOL_SIZE = "module.workerPoolSize";
+  private static final String CLUSTER_REBUILD_HEAP_LIMIT = "cluster.rebuildHeapLimit";
+  private static final String JOB_CHUNK_SIZE = "job.chunkSize";
+  private static final String JOB_THROTTLE = "job.throttle";
+  private static final String STREAM_FETCH_SIZE = "stream.fetchSize.";
+  private ConfigChangeListener configChangeListener;
 
   @Override
   public void start(Promise<Void> promise) {
@@ -25,6 +37,46 @@ public class MainVerticle extends AbstractVerticle {
         Config.getSysConf("http.port", "port", "8081", config()));
     log.info("Listening on port {}", port);
 
+    final int statementCacheSize = Config.getSysConfInteger(STATEMENT_CACHE_SIZE, 0, config());
+    if (statementCacheSize > 0) {
+      log.info("Caching up to {} prepared statements per connection", statementCacheSize);
+      TenantPgPool.setDefaultConnectOptions(new PgConnectOptions()
+          .setCachePreparedStatements(true)
+          .setPreparedStatementCacheMaxSize(statementCacheSize));
+    }
+
+    final int jsContextPoolSize = Config.getSysConfInteger(JS_CONTEXT_POOL_SIZE,
+        ModuleJavaScript.getContextPoolSize(), config());
+    log.info("Using up to {} JavaScript contexts per module", jsContextPoolSize);
+    ModuleJavaScript.setContextPoolSize(jsContextPoolSize);
+
+    final int moduleWorkerPoolSize = Config.getSysConfInteger(MODULE_WORKER_POOL_SIZE,
+        ModuleWorker.getPoolSize(), config());
+    log.info("Using {} worker threads for modules", moduleWorkerPoolSize);
+    ModuleWorker.setPoolSize(moduleWorkerPoolSize);
+
+    final int rebuildHeapLimit = Config.getSysConfInteger(CLUSTER_REBUILD_HEAP_LIMIT,
+        ClusterRebuild.getHeapLimit(), config());
+    log.info("Keeping up to {} records on heap when rebuilding clusters", rebuildHeapLimit);
+    ClusterRebuild.setHeapLimit(rebuildHeapLimit);
+
+    final int jobChunkSize = Config.getSysConfInteger(JOB_CHUNK_SIZE,
+        JobService.getChunkSize(), config());
+    final int jobThrottle = Config.getSysConfInteger(JOB_THROTTLE,
+        JobService.getThrottle(), config());
+    log.info("Processing {} rows per chunk with {} ms pause in jobs and deletes",
+        jobChunkSize, jobThrottle);
+    JobService.setChunkSize(jobChunkSize);
+    JobService.setThrottle(jobThrottle);
+
+    for (String endpoint : Storage.FETCH_ENDPOINTS) {
+      final int fetchSize = Config.getSysConfInteger(STREAM_FETCH_SIZE + endpoint, 0, config());
+      if (fetchSize > 0) {
+        log.info("Fetching {} rows at a time for {}", fetchSize, endpoint);
+        Storage.setFetchSize(endpoint, fetchSize);
+      }
+    }
+
     ReservoirService reservoirService = new ReservoirService(vertx);
 
     RouterCreator[] routerCreators = {
@@ -50,12 +102,20 @@ public class MainVerticle extends AbstractVerticle {
             e.complete();
           })
         )
+        .compose(x -> {
+          // LISTEN is not schema specific, so the tenant of the pool does not matter
+          configChangeListener = new ConfigChangeListener(vertx,
+              TenantPgPool.pool(vertx, "reservoir"));
+          return configChangeListener.start();
+        })
         .onComplete(x -> promise.handle(x.mapEmpty()));
   }
 
   @Override
   public void stop(Promise<Void> promise) {
-    TenantPgPool.closeAll()
+    Future<Void> future = configChangeListener == null
+        ? Future.succeededFuture() : configChangeListener.close();
+    future.eventually(() -> TenantPgPool.closeAll())
         .onComplete(promise);
   }
 }
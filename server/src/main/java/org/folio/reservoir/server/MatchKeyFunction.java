@@ -0,0 +1,62 @@
+package org.folio.reservoir.server;
+
+import io.vertx.core.json.JsonObject;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import org.folio.reservoir.matchkey.MatchKeyMethod;
+import org.folio.reservoir.module.ModuleExecutable;
+
+/**
+ * Match key computation for a match key configuration, resolved once for many records.
+ */
+class MatchKeyFunction {
+  final String matchKeyConfigId;
+  final ModuleExecutable module;
+  final MatchKeyMethod method;
+
+  MatchKeyFunction(String matchKeyConfigId, ModuleExecutable module) {
+    this.matchKeyConfigId = matchKeyConfigId;
+    this.module = module;
+    this.method = null;
+  }
+
+  MatchKeyFunction(String matchKeyConfigId, MatchKeyMethod method) {
+    this.matchKeyConfigId = matchKeyConfigId;
+    this.module = null;
+    this.method = method;
+  }
+
+  /**
+   * Whether the function may be applied on several threads at once.
+   *
+   * <p>Modules may; a match key method uses one JavaScript context, so calls of it are
+   * serialized.
+   */
+  boolean isConcurrent() {
+    return module != null;
+  }
+
+  /**
+   * Name of module, or of method class, for metrics of the module worker pool.
+   */
+  String getName() {
+    return module != null ? module.getModuleName() : method.getClass().getSimpleName();
+  }
+
+  /**
+   * Compute match values; may block, so it should execute on the module worker pool.
+   * @param payload record payload
+   * @return match values
+   */
+  Collection<String> apply(JsonObject payload) {
+    if (module != null) {
+      return module.executeAsCollection(payload);
+    }
+    Set<String> keys = new HashSet<>();
+    synchronized (method) {
+      method.getKeys(payload, keys);
+    }
+    return keys;
+  }
+}
@@ -164,6 +164,9 @@ public class OaiPmhClientService {
     if (oaiPmhStatus.getTotalUpdated() == null) {
       oaiPmhStatus.setTotalUpdated(0L);
     }
+    if (oaiPmhStatus.getTotalUnchanged() == null) {
+      oaiPmhStatus.setTotalUnchanged(0L);
+    }
     JsonObject config = row.getJsonObject(CONFIG_LITERAL);
     config.put("id", id);
     oaiPmhStatus.setConfig(config);
@@ -511,7 +514,7 @@ public class OaiPmhClientService {
     }
   }
 
-  Future<Boolean> ingestRecord(
+  Future<IngestResult> ingestRecord(
       Storage storage, OaiRecord<JsonObject> oaiRecord,
       SourceId sourceId, int sourceVersion, JsonArray matchKeyConfigs) {
     try {
@@ -632,12 +635,11 @@ public class OaiPmhClientService {
               .map(upd -> {
                 job.setTotalRecords(job.getTotalRecords() + 1);
                 job.setLastTotalRecords(job.getLastTotalRecords() + 1);
-                if (upd == null) {
-                  job.setTotalDeleted(job.getTotalDeleted() + 1);
-                } else if (Boolean.TRUE.equals(upd)) {
-                  job.setTotalInserted(job.getTotalInserted() + 1);
-                } else {
-                  job.setTotalUpdated(job.getTotalUpdated() + 1);
+                switch (upd) {
+                  case INSERTED -> job.setTotalInserted(job.getTotalInserted() + 1);
+                  case UPDATED -> job.setTotalUpdated(job.getTotalUpdated() + 1);
+                  case UNCHANGED -> job.setTotalUnchanged(job.getTotalUnchanged() + 1);
+                  default -> job.setTotalDeleted(job.getTotalDeleted() + 1);
                 }
                 return null;
               })
@@ -23,13 +23,11 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.okapi.common.HttpResponse;
-import org.folio.reservoir.module.ModuleCache;
 import org.folio.reservoir.module.ModuleExecutable;
 import org.folio.reservoir.module.ModuleInvocation;
 import org.folio.reservoir.server.entity.ClusterBuilder;
 import org.folio.reservoir.util.JsonToMarcXml;
 import org.folio.reservoir.util.MarcInJsonUtil;
-import org.folio.tlib.util.TenantUtil;
 
 public final class OaiService {
   private static final Logger log = LogManager.getLogger(OaiService.class);
@@ -263,7 +261,7 @@ public final class OaiService {
   }
 
   static Future<ModuleExecutable> getTransformer(Storage storage, RoutingContext ctx) {
-    return storage.selectOaiConfig()
+    return storage.getOaiConfig()
         .compose(oaiCfg -> {
           if (oaiCfg == null) {
             return Future.succeededFuture(null);
@@ -273,26 +271,18 @@ public final class OaiService {
             return Future.succeededFuture(null);
           }
           ModuleInvocation invocation = new ModuleInvocation(transformerProp);
-          return storage.selectCodeModuleEntity(invocation.getModuleName())
+          return storage.getCodeModuleEntity(invocation.getModuleName())
               .compose(entity -> {
                 if (entity == null) {
                   return Future.failedFuture("Transformer module '" 
                     + invocation.getModuleName() + "' not found");
                 }
-                return ModuleCache.getInstance().lookup(ctx.vertx(), TenantUtil.tenant(ctx), entity)
+                return storage.lookupModule(ctx.vertx(), entity)
                           .map(mod -> new ModuleExecutable(mod, invocation));
               });
         });
   }
 
-  static Future<ClusterBuilder> getClusterValues(Storage storage, SqlConnection conn,
-      UUID clusterId, ClusterBuilder cb) {
-    return conn.preparedQuery("SELECT match_value FROM " + storage.getClusterValuesTable()
-            + " WHERE cluster_id = $1")
-        .execute(Tuple.of(clusterId))
-        .map(cb::matchValues);
-  }
-
   static void writeResumptionToken(RoutingContext ctx, ResumptionToken token) {
     HttpServerResponse response = ctx.response();
     response.write("    <resumptionToken>");
@@ -22,6 +22,8 @@ import org.folio.okapi.common.HttpResponse;
 import org.folio.reservoir.matchkey.MatchKeyMethodFactory;
 import org.folio.reservoir.module.ModuleCache;
 import org.folio.reservoir.module.ModuleInvocation;
+import org.folio.reservoir.module.impl.JavaScriptEngine;
+import org.folio.reservoir.module.impl.ModuleJavaScript;
 import org.folio.reservoir.server.entity.CodeModuleEntity;
 import org.folio.reservoir.util.readstream.LargeJsonReadStream;
 import org.folio.tlib.RouterCreator;
@@ -38,19 +40,27 @@ public class ReservoirService implements RouterCreator, TenantInitHooks {
 
   private static final Logger log = LogManager.getLogger(ReservoirService.class);
   final Vertx vertx;
+  final JobService jobService;
   private static final String ENTITY_ID_NOT_FOUND_PATTERN = "%s %s not found";
   private static final String MODULE_LABEL = "Module";
+  // tenant parameters deciding the storage layout when tables are first created
+  // partitionBySource: global record id is not unique-constrained and cluster records
+  // have no foreign key to records (a unique index must include the partition key)
+  static final String PARTITION_BY_SOURCE = "partitionBySource";
+  static final String HASH_MATCH_VALUES = "hashMatchValues";
 
   public ReservoirService(Vertx vertx) {
     this.vertx = vertx;
+    this.jobService = new JobService(vertx);
   }
 
   Future<Void> putGlobalRecords(RoutingContext ctx) {
     try {
       Storage storage = new Storage(ctx);
       HttpServerRequest request = ctx.request();
+      boolean bulk = IngestParams.validateMode(request);
       request.pause();
-      return storage.updateGlobalRecords(ctx.vertx(), new LargeJsonReadStream(request))
+      return storage.updateGlobalRecords(ctx.vertx(), new LargeJsonReadStream(request), bulk)
           .onSuccess(res -> {
             JsonArray ar = new JsonArray();
             // global ids and match keys here ...
@@ -73,7 +83,17 @@ public class ReservoirService implements RouterCreator, TenantInitHooks {
             return Future.succeededFuture();
           }
           ModuleCache.getInstance().purge(TenantUtil.tenant(ctx), id);
-          return ModuleCache.getInstance().lookup(vertx, TenantUtil.tenant(ctx), res)
+          // fetch code again; entity without stored source
+          CodeModuleEntity e = new CodeModuleEntity.CodeModuleBuilder(res.asJson()).build();
+          if (e.getUrl() != null) {
+            JavaScriptEngine.purgeCode(e.getUrl());
+          }
+          return ModuleJavaScript.resolveSource(vertx, e)
+                  .compose(resolved -> ModuleCache.getInstance()
+                      .lookup(vertx, TenantUtil.tenant(ctx), resolved)
+                      .compose(x -> resolved.getSource() == null ? Future.succeededFuture()
+                          : storage.updateCodeModuleSource(id, resolved.getSource())))
+                  .compose(x -> storage.configChanged(ConfigChangeListener.MODULE, id))
                   .onSuccess(x -> ctx.response().setStatusCode(204).end());
         })
         .mapEmpty();
@@ -117,17 +137,21 @@ public class ReservoirService implements RouterCreator, TenantInitHooks {
   }
 
   Future<Void> deleteGlobalRecords(RoutingContext ctx) {
-    PgCqlDefinition definition = createDefinitionGlobalRecords();
     RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
     String query = Util.getQueryParameter(params);
     if (query == null) {
       failHandler(400, ctx, "Must specify query for delete records");
       return Future.succeededFuture();
     }
-    PgCqlQuery pgCqlQuery = definition.parse(query);
     Storage storage = new Storage(ctx);
-    return storage.deleteGlobalRecords(pgCqlQuery.getWhereClause())
-        .onSuccess(x -> ctx.response().setStatusCode(204).end());
+    return jobService.createTask(storage, JobService.TYPE_DELETE_GLOBAL_RECORDS,
+            new JsonObject().put("query", query))
+        .compose(jobService::execute)
+        .onSuccess(count -> {
+          log.info("{} records deleted", count);
+          ctx.response().setStatusCode(204).end();
+        })
+        .mapEmpty();
   }
 
   Future<Void> getGlobalRecords(RoutingContext ctx) {
@@ -187,7 +211,7 @@ public class ReservoirService implements RouterCreator, TenantInitHooks {
     });
   }
 
-  Future<Void> touchClusters(RoutingContext ctx) {
+  static PgCqlDefinition createDefinitionTouchClusters() {
     PgCqlDefinition definition = createDefinitionBase();
     definition.addField(CqlFields.MATCHKEY_ID.getCqlName(),
       new PgCqlFieldText().withExact().withColumn(CqlFields.MATCHKEY_ID.getQualifiedSqlName()));
@@ -197,7 +221,11 @@ public class ReservoirService implements RouterCreator, TenantInitHooks {
         new PgCqlFieldText().withExact().withColumn(CqlFields.SOURCE_ID.getQualifiedSqlName()));
     definition.addField(CqlFields.SOURCE_VERSION.getCqlName(),
         new PgCqlFieldNumber().withColumn(CqlFields.SOURCE_VERSION.getQualifiedSqlName()));
+    return definition;
+  }
 
+  Future<Void> touchClusters(RoutingContext ctx) {
+    PgCqlDefinition definition = createDefinitionTouchClusters();
     RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
     PgCqlQuery pgCqlQuery = definition.parse(Util.getQueryParameter(params));
     Storage storage = new Storage(ctx);
@@ -342,6 +370,26 @@ public class ReservoirService implements RouterCreator, TenantInitHooks {
         .mapEmpty();
   }
 
+  Future<Void> getInitializeMatchKey(RoutingContext ctx) {
+    RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
+    String id = Util.getParameterString(params.pathParameter("id"));
+    Storage storage = new Storage(ctx);
+    return storage.selectMatchKeyConfig(id)
+        .onSuccess(conf -> {
+          if (conf == null) {
+            matchKeyNotFound(ctx, id);
+            return;
+          }
+          JsonObject progress = ClusterRebuild.getProgress(storage, id);
+          if (progress == null) {
+            HttpResponse.responseError(ctx, 404, "MatchKey " + id + " is not being initialized");
+            return;
+          }
+          HttpResponse.responseJson(ctx, 200).end(progress.encode());
+        })
+        .mapEmpty();
+  }
+
   Future<Void> statsMatchKey(RoutingContext ctx) {
     RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
     String id = Util.getParameterString(params.pathParameter("id"));
@@ -365,8 +413,11 @@ public class ReservoirService implements RouterCreator, TenantInitHooks {
     CodeModuleEntity e = new CodeModuleEntity.CodeModuleBuilder(ctx.body().asJsonObject()).build();
 
     ModuleCache.getInstance().purge(TenantUtil.tenant(ctx), e.getId());
-    return ModuleCache.getInstance().lookup(ctx.vertx(), TenantUtil.tenant(ctx), e)
-        .compose(module -> storage.insertCodeModuleEntity(e).onSuccess(res ->
+    return ModuleJavaScript.resolveSource(ctx.vertx(), e)
+        .compose(resolved -> ModuleCache.getInstance()
+            .lookup(ctx.vertx(), TenantUtil.tenant(ctx), resolved)
+            .map(resolved))
+        .compose(resolved -> storage.insertCodeModuleEntity(resolved).onSuccess(res ->
             HttpResponse.responseJson(ctx, 201)
                 .putHeader("Location", ctx.request().absoluteURI() + "/" + e.getId())
                 .end(e.asJson().encode())
@@ -392,8 +443,11 @@ public class ReservoirService implements RouterCreator, TenantInitHooks {
   Future<Void> putCodeModule(RoutingContext ctx) {
     Storage storage = new Storage(ctx);
     CodeModuleEntity e = new CodeModuleEntity.CodeModuleBuilder(ctx.body().asJsonObject()).build();
-    return ModuleCache.getInstance().lookup(ctx.vertx(), TenantUtil.tenant(ctx), e)
-        .compose(module -> storage.updateCodeModuleEntity(e)
+    return ModuleJavaScript.resolveSource(ctx.vertx(), e)
+        .compose(resolved -> ModuleCache.getInstance()
+            .lookup(ctx.vertx(), TenantUtil.tenant(ctx), resolved)
+            .map(resolved))
+        .compose(resolved -> storage.updateCodeModuleEntity(resolved)
             .onSuccess(res -> {
               if (Boolean.FALSE.equals(res)) {
                 HttpResponse.responseError(ctx, 404,
@@ -521,6 +575,7 @@ public class ReservoirService implements RouterCreator, TenantInitHooks {
           add(routerBuilder, "deleteConfigMatchKey", this::deleteConfigMatchKey);
           add(routerBuilder, "getConfigMatchKeys", this::getConfigMatchKeys);
           add(routerBuilder, "initializeMatchKey", this::initializeMatchKey);
+          add(routerBuilder, "getInitializeMatchKey", this::getInitializeMatchKey);
           add(routerBuilder, "statsMatchKey", this::statsMatchKey);
           add(routerBuilder, "getClusters", this::getClusters);
           add(routerBuilder, "touchClusters", this::touchClusters);
@@ -543,6 +598,10 @@ public class ReservoirService implements RouterCreator, TenantInitHooks {
           add(routerBuilder, "startOaiPmhClient", oaiPmhClient::start);
           add(routerBuilder, "stopOaiPmhClient", oaiPmhClient::stop);
           add(routerBuilder, "statusOaiPmhClient", oaiPmhClient::status);
+          add(routerBuilder, "postJob", jobService::post);
+          add(routerBuilder, "getJobs", jobService::getCollection);
+          add(routerBuilder, "getJob", jobService::get);
+          add(routerBuilder, "deleteJob", jobService::delete);
           Router router = Router.router(vertx);
           // this endpoint is streaming, and we handle it without OpenAPI and validation
           router.put("/reservoir/records").handler(ctx ->
@@ -561,9 +620,25 @@ public class ReservoirService implements RouterCreator, TenantInitHooks {
   @Override
   public Future<Void> postInit(Vertx vertx, String tenant, JsonObject tenantAttributes) {
     if (!tenantAttributes.containsKey("module_to")) {
+      JobService.forgetTenant(tenant);
       return Future.succeededFuture(); // doing nothing for disable
     }
+    boolean partitionBySource = false;
+    boolean hashMatchValues = false;
+    JsonArray parameters = tenantAttributes.getJsonArray("parameters");
+    if (parameters != null) {
+      for (int i = 0; i < parameters.size(); i++) {
+        JsonObject parameter = parameters.getJsonObject(i);
+        boolean value = Boolean.parseBoolean(parameter.getString("value"));
+        if (PARTITION_BY_SOURCE.equals(parameter.getString("key"))) {
+          partitionBySource = value;
+        } else if (HASH_MATCH_VALUES.equals(parameter.getString("key"))) {
+          hashMatchValues = value;
+        }
+      }
+    }
     Storage storage = new Storage(vertx, tenant);
-    return storage.init();
+    return storage.init(new Storage.Layout(partitionBySource, hashMatchValues))
+        .compose(x -> jobService.resume(storage));
   }
 }
@@ -0,0 +1,243 @@
+package org.folio.reservoir.server;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.folio.reservoir.util.SourceId;
+import org.folio.reservoir.util.UnionFind;
+
+/**
+ * Clustering of the records of a source, used after a bulk load.
+ *
+ * <p>Records of the source are read in pages, ordered by identifier, and match values
+ * of a page are computed as for {@link ClusterRebuild} while the next page is read.
+ * Each page is then clustered in one transaction with a fixed number of set based
+ * statements: records of the page sharing a match value are joined with each other and
+ * with the existing clusters that have the value, and existing clusters that end up
+ * joined are merged. A page that fails is retried once, as concurrent ingest may
+ * insert the same new match value; if it fails again, clustering fails.
+ *
+ * <p>Instances are not thread safe; all stages run on the context of the caller.
+ */
+class SourceClustering {
+  private final Storage storage;
+  private final Vertx vertx;
+  private final MatchKeyFunction function;
+  private final SourceId sourceId;
+  private final int sourceVersion;
+  private int totalRecords;
+  private int clustersAdded;
+
+  SourceClustering(Storage storage, Vertx vertx, MatchKeyFunction function,
+      SourceId sourceId, int sourceVersion) {
+    this.storage = storage;
+    this.vertx = vertx;
+    this.function = function;
+    this.sourceId = sourceId;
+    this.sourceVersion = sourceVersion;
+  }
+
+  /**
+   * Cluster records of the source.
+   * @return statistics with totalRecords and clustersAdded
+   */
+  Future<JsonObject> run() {
+    Promise<Void> promise = Promise.promise();
+    readPage(null).onComplete(res -> clusterPages(res, promise));
+    return promise.future().map(x -> new JsonObject()
+        .put("totalRecords", totalRecords)
+        .put("clustersAdded", clustersAdded));
+  }
+
+  Future<RowSet<Row>> readPage(UUID after) {
+    String q = "SELECT id, payload FROM " + storage.globalRecordTable
+        + " WHERE source_id = $1 AND source_version = $2";
+    Tuple tuple = Tuple.of(sourceId.toString(), sourceVersion);
+    if (after != null) {
+      q = q + " AND id > $3";
+      tuple.addUUID(after);
+    }
+    return storage.pool.preparedQuery(q + " ORDER BY id LIMIT " + ClusterRebuild.pageSize)
+        .execute(tuple);
+  }
+
+  void clusterPages(AsyncResult<RowSet<Row>> page, Promise<Void> promise) {
+    if (page.failed()) {
+      promise.fail(page.cause());
+      return;
+    }
+    RowSet<Row> rows = page.result();
+    List<UUID> ids = new ArrayList<>(rows.size());
+    List<JsonObject> payloads = new ArrayList<>(rows.size());
+    rows.forEach(row -> {
+      ids.add(row.getUUID("id"));
+      payloads.add(row.getJsonObject("payload"));
+    });
+    if (ids.isEmpty()) {
+      promise.complete();
+      return;
+    }
+    // read next page while this page is clustered; clustering does not change the records
+    Future<RowSet<Row>> next = ids.size() < ClusterRebuild.pageSize
+        ? null : readPage(ids.get(ids.size() - 1));
+    ClusterRebuild.computeValues(vertx, function, payloads)
+        .compose(values -> storage.pool.withTransaction(conn -> clusterPage(conn, ids, values))
+            .recover(e -> storage.pool.withTransaction(conn -> clusterPage(conn, ids, values))))
+        .onFailure(promise::tryFail)
+        .onSuccess(x -> {
+          totalRecords += ids.size();
+          if (next == null) {
+            promise.complete();
+          } else {
+            next.onComplete(res -> clusterPages(res, promise));
+          }
+        });
+  }
+
+  Future<Void> clusterPage(SqlConnection conn, List<UUID> ids,
+      List<Collection<String>> values) {
+
+    UnionFind sets = new UnionFind();
+    Map<String, Integer> valueElements = new LinkedHashMap<>();
+    for (int i = 0; i < ids.size(); i++) {
+      int element = sets.add();
+      for (String value : values.get(i)) {
+        Integer other = valueElements.putIfAbsent(Storage.truncateMatchValue(value), element);
+        if (other != null) {
+          sets.union(other, element);
+        }
+      }
+    }
+    String matchKeyConfigId = function.matchKeyConfigId;
+    return storage.selectClusterValues(conn, matchKeyConfigId, valueElements.keySet())
+        .compose(rowSet -> {
+          Map<UUID, Integer> clusterElements = new LinkedHashMap<>();
+          Set<String> foundValues = new HashSet<>();
+          rowSet.forEach(row -> {
+            String value = row.getString("match_value");
+            int element = clusterElements.computeIfAbsent(row.getUUID("cluster_id"),
+                k -> sets.add());
+            sets.union(element, valueElements.get(value));
+            foundValues.add(value);
+          });
+          // each component becomes the first existing cluster in it or a new cluster
+          UUID[] componentClusters = new UUID[sets.label()];
+          List<UUID> mergeFrom = new ArrayList<>();
+          List<UUID> mergeTo = new ArrayList<>();
+          clusterElements.forEach((clusterId, element) -> {
+            int component = sets.component(element);
+            if (componentClusters[component] == null) {
+              componentClusters[component] = clusterId;
+            } else {
+              mergeFrom.add(clusterId);
+              mergeTo.add(componentClusters[component]);
+            }
+          });
+          List<UUID> newClusters = new ArrayList<>();
+          for (int i = 0; i < componentClusters.length; i++) {
+            if (componentClusters[i] == null) {
+              componentClusters[i] = UUID.randomUUID();
+              newClusters.add(componentClusters[i]);
+            }
+          }
+          UUID[] recordClusters = new UUID[ids.size()];
+          for (int i = 0; i < recordClusters.length; i++) {
+            recordClusters[i] = componentClusters[sets.component(i)];
+          }
+          List<UUID> valueClusters = new ArrayList<>();
+          List<String> newValues = new ArrayList<>();
+          valueElements.forEach((value, element) -> {
+            if (!foundValues.contains(value)) {
+              valueClusters.add(componentClusters[sets.component(element)]);
+              newValues.add(value);
+            }
+          });
+          return mergeClusters(conn, mergeFrom, mergeTo)
+              .compose(x -> clusterElements.isEmpty()
+                  ? Future.succeededFuture()
+                  : storage.updateMetaEntries(conn, clusterElements.keySet()))
+              .compose(x -> insertMetaEntries(conn, newClusters))
+              .compose(x -> insertValues(conn, valueClusters, newValues))
+              .compose(x -> upsertRecords(conn, ids, recordClusters))
+              .onSuccess(x -> clustersAdded += newClusters.size());
+        });
+  }
+
+  Future<Void> mergeClusters(SqlConnection conn, List<UUID> from, List<UUID> to) {
+    if (from.isEmpty()) {
+      return Future.succeededFuture();
+    }
+    String setClause = " AS c SET cluster_id = t.to_id"
+        + " FROM unnest($1::uuid[], $2::uuid[]) AS t(from_id, to_id)"
+        + " WHERE c.cluster_id = t.from_id";
+    Tuple tuple = Tuple.tuple()
+        .addArrayOfUUID(from.toArray(new UUID[0]))
+        .addArrayOfUUID(to.toArray(new UUID[0]));
+    return conn.preparedQuery("UPDATE " + storage.clusterValueTable + setClause)
+        .execute(tuple)
+        .compose(x -> conn.preparedQuery("UPDATE " + storage.clusterRecordTable + setClause)
+            .execute(tuple))
+        .mapEmpty();
+  }
+
+  Future<Void> insertMetaEntries(SqlConnection conn, List<UUID> clusters) {
+    if (clusters.isEmpty()) {
+      return Future.succeededFuture();
+    }
+    return conn.preparedQuery("INSERT INTO " + storage.clusterMetaTable
+            + " (cluster_id, datestamp, match_key_config_id)"
+            + " SELECT unnest($1::uuid[]), $2, $3")
+        .execute(Tuple.tuple()
+            .addArrayOfUUID(clusters.toArray(new UUID[0]))
+            .addLocalDateTime(LocalDateTime.now(ZoneOffset.UTC))
+            .addString(function.matchKeyConfigId))
+        .mapEmpty();
+  }
+
+  Future<Void> insertValues(SqlConnection conn, List<UUID> clusters, List<String> values) {
+    if (values.isEmpty()) {
+      return Future.succeededFuture();
+    }
+    return conn.preparedQuery("INSERT INTO " + storage.clusterValueTable
+            + " (cluster_id, match_key_config_id, match_value)"
+            + " SELECT t.cluster_id, $2, t.match_value"
+            + " FROM unnest($1::uuid[], $3::varchar[]) AS t(cluster_id, match_value)")
+        .execute(Tuple.tuple()
+            .addArrayOfUUID(clusters.toArray(new UUID[0]))
+            .addString(function.matchKeyConfigId)
+            .addArrayOfString(values.toArray(new String[0])))
+        .mapEmpty();
+  }
+
+  // records deleted since they were read are skipped
+  Future<Void> upsertRecords(SqlConnection conn, List<UUID> ids, UUID[] clusters) {
+    return conn.preparedQuery("INSERT INTO " + storage.clusterRecordTable
+            + " (record_id, match_key_config_id, cluster_id)"
+            + " SELECT t.record_id, $2, t.cluster_id"
+            + " FROM unnest($1::uuid[], $3::uuid[]) AS t(record_id, cluster_id)"
+            + " JOIN " + storage.globalRecordTable + " ON id = t.record_id"
+            + " ON CONFLICT (record_id, match_key_config_id)"
+            + " DO UPDATE SET cluster_id = EXCLUDED.cluster_id")
+        .execute(Tuple.tuple()
+            .addArrayOfUUID(ids.toArray(new UUID[0]))
+            .addString(function.matchKeyConfigId)
+            .addArrayOfUUID(clusters))
+        .mapEmpty();
+  }
+}
@@ -3,6 +3,7 @@ package org.folio.reservoir.server;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
@@ -14,6 +15,7 @@ import io.vertx.sqlclient.RowSet;
 import io.vertx.sqlclient.RowStream;
 import io.vertx.sqlclient.SqlConnection;
 import io.vertx.sqlclient.Tuple;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
@@ -21,21 +23,31 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.okapi.common.GenericCompositeFuture;
 import org.folio.reservoir.matchkey.MatchKeyMethod;
+import org.folio.reservoir.module.Module;
 import org.folio.reservoir.module.ModuleCache;
 import org.folio.reservoir.module.ModuleExecutable;
 import org.folio.reservoir.module.ModuleInvocation;
+import org.folio.reservoir.module.ModuleWorker;
+import org.folio.reservoir.module.impl.ModuleJavaScript;
 import org.folio.reservoir.server.entity.ClusterBuilder;
 import org.folio.reservoir.server.entity.CodeModuleEntity;
 import org.folio.reservoir.util.ReadStreamConsumer;
@@ -53,13 +65,28 @@ public class Storage {
   public static final String CLUSTER_META_TABLE = "cluster_meta";
   public static final String CLUSTER_RECORDS_TABLE = "cluster_records";
   public static final String CLUSTER_VALUES_TABLE = "cluster_values";
+  public static final String CLUSTER_RECORDS_SHADOW_TABLE = "cluster_records_shadow";
+  public static final String CLUSTER_VALUES_SHADOW_TABLE = "cluster_values_shadow";
+  public static final String CLUSTER_REUSE_TABLE = "cluster_reuse";
+  public static final String CLUSTER_VALUES_STAGING_TABLE = "cluster_values_staging";
   public static final String MODULE_TABLE = "module";
   public static final String OAI_CONFIG_TABLE = "oai_config";
   public static final String OAI_PMH_CLIENTS_TABLE = "oai_pmh_clients";
+  public static final String JOB_TABLE = "job";
 
   private static final Logger log = LogManager.getLogger(Storage.class);
   private static final String CREATE_IF_NO_EXISTS = "CREATE TABLE IF NOT EXISTS ";
   private static final int MATCHVALUE_MAX_LENGTH = 600; // < 2704 / 4
+  // digest of the normalized JSONB text of the payload parameter ($5)
+  private static final String PAYLOAD_DIGEST = "md5($5::jsonb::text)::uuid";
+  // WHERE clauses as rendered from sourceId=X and sourceId=X AND sourceVersion=N queries
+  private static final Pattern SOURCE_WHERE = Pattern.compile(
+      "\\(?source_id = '([^']*)'(?: AND source_version=(\\d+))?\\)?");
+  private static final Pattern VERSION_SOURCE_WHERE = Pattern.compile(
+      "\\(source_version=(\\d+) AND source_id = '([^']*)'\\)");
+  // WHERE clause term as rendered from matchValue=X queries
+  private static final Pattern MATCH_VALUE_WHERE = Pattern.compile(
+      Pattern.quote(CqlFields.MATCH_VALUE.getQualifiedSqlName()) + " = ('(?:[^']|'')*')");
 
   final TenantPgPool pool;
   final String globalRecordTable;
@@ -67,11 +94,25 @@ public class Storage {
   final String clusterRecordTable;
   final String clusterValueTable;
   final String clusterMetaTable;
+  final String clusterRecordShadowTable;
+  final String clusterValueShadowTable;
+  final String clusterReuseTable;
+  final String clusterValueStagingTable;
   final String moduleTable;
   final String oaiConfigTable;
   final String oaiPmhClientTable;
+  final String jobTable;
   private final String tenant;
   static int sqlStreamFetchSize = 50;
+  static final String FETCH_RECORDS = "records";
+  static final String FETCH_CLUSTERS = "clusters";
+  static final String FETCH_MATCHKEYS = "matchkeys";
+  static final String FETCH_MODULES = "modules";
+  static final List<String> FETCH_ENDPOINTS =
+      List.of(FETCH_RECORDS, FETCH_CLUSTERS, FETCH_MATCHKEYS, FETCH_MODULES);
+  private static final Map<String, Integer> fetchSizes = new ConcurrentHashMap<>();
+  // count=estimate counts exactly when the planner estimates fewer rows than this
+  static int countEstimateThreshold = 10000;
 
   /**
    * Create storage service for tenant.
@@ -86,9 +127,14 @@ public class Storage {
     this.clusterRecordTable = pool.getSchema() + "." + CLUSTER_RECORDS_TABLE;
     this.clusterValueTable = pool.getSchema() + "." + CLUSTER_VALUES_TABLE;
     this.clusterMetaTable = pool.getSchema() + "." + CLUSTER_META_TABLE;
+    this.clusterRecordShadowTable = pool.getSchema() + "." + CLUSTER_RECORDS_SHADOW_TABLE;
+    this.clusterValueShadowTable = pool.getSchema() + "." + CLUSTER_VALUES_SHADOW_TABLE;
+    this.clusterReuseTable = pool.getSchema() + "." + CLUSTER_REUSE_TABLE;
+    this.clusterValueStagingTable = pool.getSchema() + "." + CLUSTER_VALUES_STAGING_TABLE;
     this.moduleTable = pool.getSchema() + "." + MODULE_TABLE;
     this.oaiConfigTable = pool.getSchema() + "." + OAI_CONFIG_TABLE;
     this.oaiPmhClientTable = pool.getSchema() + "." + OAI_PMH_CLIENTS_TABLE;
+    this.jobTable = pool.getSchema() + "." + JOB_TABLE;
   }
 
   public Storage(RoutingContext routingContext) {
@@ -123,37 +169,125 @@ public class Storage {
     return oaiPmhClientTable;
   }
 
+  public String getJobTable() {
+    return jobTable;
+  }
+
   public String getTenant() {
     return tenant;
   }
 
+  /**
+   * Purge cached configuration on all module instances.
+   * @param type change type; see {@link ConfigChangeListener}
+   * @param id identifier of changed entity; null if not applicable
+   * @return async result
+   */
+  Future<Void> configChanged(String type, String id) {
+    return ConfigChangeListener.publish(pool, tenant, type, id);
+  }
+
+  /**
+   * Storage layout of a tenant; decided when the tables are created.
+   * @param partitioned global records partitioned by source and source version
+   * @param hashedValues cluster match values indexed by a hash instead of by text
+   */
+  public record Layout(boolean partitioned, boolean hashedValues) {
+    public static final Layout DEFAULT = new Layout(false, false);
+  }
+
+  /**
+   * Unique key of a listing used for cursor pagination.
+   * @param column key column as used in WHERE and ORDER BY
+   * @param name key column name in result rows
+   * @param uuid whether key is of type UUID
+   */
+  record Keyset(String column, String name, boolean uuid) {
+    Object value(Cursor cursor) {
+      return uuid ? UUID.fromString(cursor.getKey()) : cursor.getKey();
+    }
+  }
+
+  /**
+   * Set number of rows fetched at a time for a streamed listing.
+   * @param endpoint one of FETCH_ENDPOINTS
+   * @param size number of rows; must be positive
+   */
+  static void setFetchSize(String endpoint, int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("fetch size must be positive");
+    }
+    fetchSizes.put(endpoint, size);
+  }
+
+  static int getFetchSize(String endpoint) {
+    return fetchSizes.getOrDefault(endpoint, sqlStreamFetchSize);
+  }
+
   /**
    * Prepares storage with tables, etc.
    * @return async result.
    */
   public Future<Void> init() {
+    return init(Layout.DEFAULT);
+  }
+
+  /**
+   * Prepares storage with tables, etc.
+   *
+   * <p>The layout is applied to tables when they are created; existing tables keep
+   * their layout.
+   * @param layout layout of new tables
+   * @return async result.
+   */
+  public Future<Void> init(Layout layout) {
     return pool.execute(List.of(
             "SET search_path TO " + pool.getSchema(),
             CREATE_IF_NO_EXISTS + globalRecordTable
-                + "(id uuid NOT NULL PRIMARY KEY,"
+                + "(id uuid NOT NULL" + (layout.partitioned() ? "," : " PRIMARY KEY,")
                 + " local_id VARCHAR NOT NULL,"
                 + " source_id VARCHAR NOT NULL,"
                 + " source_version integer DEFAULT 1,"
-                + " payload JSONB NOT NULL"
-                + ")",
+                + " payload JSONB NOT NULL,"
+                + " digest uuid"
+                + ")" + (layout.partitioned() ? " PARTITION BY LIST (source_id)" : ""),
+            CREATE_IF_NO_EXISTS + matchKeyConfigTable
+                + "(id VARCHAR NOT NULL PRIMARY KEY,"
+                + " matcher VARCHAR, "
+                + " method VARCHAR, "
+                + " update VARCHAR, "
+                + " params JSONB)",
+            CREATE_IF_NO_EXISTS + clusterValueTable
+                + "(cluster_id uuid NOT NULL,"
+                + " match_key_config_id VARCHAR NOT NULL,"
+                + " match_value VARCHAR NOT NULL,"
+                // 128 bits, so the unique index on the hash is unique on the value as well
+                + (layout.hashedValues()
+                ? " match_hash uuid GENERATED ALWAYS AS (md5(match_value)::uuid) STORED," : "")
+                + " FOREIGN KEY(match_key_config_id) REFERENCES " + matchKeyConfigTable
+                + " ON DELETE CASCADE)"))
+        .compose(x -> selectLayout())
+        .compose(actual -> pool.execute(initStatements(actual)))
+        .compose(x -> configChanged(ConfigChangeListener.TENANT, null));
+  }
+
+  private List<String> initStatements(Layout layout) {
+    List<String> statements = new ArrayList<>();
+    statements.add("SET search_path TO " + pool.getSchema());
+    if (layout.partitioned()) {
+      // partitioned tables can not have a primary key without the partition key
+      statements.add("CREATE INDEX IF NOT EXISTS idx_global_id ON " + globalRecordTable + " (id)");
+    }
+    statements.addAll(List.of(
             "DROP INDEX IF EXISTS idx_local_id",
             "ALTER TABLE " + globalRecordTable + " ADD COLUMN IF NOT EXISTS"
                 + " source_version integer DEFAULT 1",
+            "ALTER TABLE " + globalRecordTable + " ADD COLUMN IF NOT EXISTS"
+                + " digest uuid",
             "CREATE UNIQUE INDEX IF NOT EXISTS idx_local_source ON " + globalRecordTable
                 + " (local_id, source_id, source_version)",
             "CREATE INDEX IF NOT EXISTS idx_source ON " + globalRecordTable
                 + " (source_id, source_version)",
-            CREATE_IF_NO_EXISTS + matchKeyConfigTable
-                + "(id VARCHAR NOT NULL PRIMARY KEY,"
-                + " matcher VARCHAR, "
-                + " method VARCHAR, "
-                + " update VARCHAR, "
-                + " params JSONB)",
             "ALTER TABLE " + matchKeyConfigTable + " ADD COLUMN IF NOT EXISTS"
                 + " matcher VARCHAR",
             CREATE_IF_NO_EXISTS + clusterMetaTable
@@ -169,58 +303,290 @@ public class Storage {
                 + " match_key_config_id VARCHAR NOT NULL,"
                 + " cluster_id uuid NOT NULL,"
                 + " FOREIGN KEY(match_key_config_id) REFERENCES " + matchKeyConfigTable
-                + " ON DELETE CASCADE,"
-                + " FOREIGN KEY(record_id) REFERENCES " + globalRecordTable + " ON DELETE CASCADE)",
+                + " ON DELETE CASCADE"
+                // rows are deleted explicitly along with records; a partitioned table
+                // can not be referenced without a unique key on the identifier alone
+                + (layout.partitioned() ? ")"
+                : ", FOREIGN KEY(record_id) REFERENCES " + globalRecordTable
+                    + " ON DELETE CASCADE)"),
             "CREATE UNIQUE INDEX IF NOT EXISTS cluster_record_record_matchkey_idx ON "
                 + clusterRecordTable + "(record_id, match_key_config_id)",
             "CREATE INDEX IF NOT EXISTS cluster_record_cluster_idx ON "
                 + clusterRecordTable + "(cluster_id)",
-            CREATE_IF_NO_EXISTS + clusterValueTable
+            layout.hashedValues()
+                ? "CREATE UNIQUE INDEX IF NOT EXISTS cluster_value_hash_idx ON "
+                + clusterValueTable + "(match_key_config_id, match_hash)"
+                : "CREATE UNIQUE INDEX IF NOT EXISTS cluster_value_value_idx ON "
+                + clusterValueTable + "(match_key_config_id, match_value)",
+            "CREATE INDEX IF NOT EXISTS cluster_value_cluster_idx ON "
+                + clusterValueTable + "(cluster_id)",
+            // clusters of a match key being rebuilt; swapped in when complete
+            "CREATE UNLOGGED TABLE IF NOT EXISTS " + clusterRecordShadowTable
+                + "(record_id uuid NOT NULL,"
+                + " match_key_config_id VARCHAR NOT NULL,"
+                + " cluster_id uuid NOT NULL,"
+                + " digest uuid,"
+                + " FOREIGN KEY(match_key_config_id) REFERENCES " + matchKeyConfigTable
+                + " ON DELETE CASCADE)",
+            "ALTER TABLE " + clusterRecordShadowTable + " ADD COLUMN IF NOT EXISTS"
+                + " digest uuid",
+            "CREATE INDEX IF NOT EXISTS cluster_record_shadow_cluster_idx ON "
+                + clusterRecordShadowTable + "(match_key_config_id, cluster_id)",
+            "CREATE INDEX IF NOT EXISTS cluster_record_shadow_record_idx ON "
+                + clusterRecordShadowTable + "(match_key_config_id, record_id)",
+            "CREATE UNLOGGED TABLE IF NOT EXISTS " + clusterValueShadowTable
                 + "(cluster_id uuid NOT NULL,"
                 + " match_key_config_id VARCHAR NOT NULL,"
                 + " match_value VARCHAR NOT NULL,"
                 + " FOREIGN KEY(match_key_config_id) REFERENCES " + matchKeyConfigTable
                 + " ON DELETE CASCADE)",
-            "CREATE UNIQUE INDEX IF NOT EXISTS cluster_value_value_idx ON "
-                + clusterValueTable + "(match_key_config_id, match_value)",
-            "CREATE INDEX IF NOT EXISTS cluster_value_cluster_idx ON "
-                + clusterValueTable + "(cluster_id)",
+            "CREATE INDEX IF NOT EXISTS cluster_value_shadow_cluster_idx ON "
+                + clusterValueShadowTable + "(match_key_config_id, cluster_id)",
+            "CREATE INDEX IF NOT EXISTS cluster_value_shadow_value_idx ON "
+                + clusterValueShadowTable + "(match_key_config_id, match_value)",
+            "CREATE UNLOGGED TABLE IF NOT EXISTS " + clusterReuseTable
+                + "(match_key_config_id VARCHAR NOT NULL,"
+                + " new_cluster_id uuid NOT NULL,"
+                + " old_cluster_id uuid NOT NULL,"
+                + " FOREIGN KEY(match_key_config_id) REFERENCES " + matchKeyConfigTable
+                + " ON DELETE CASCADE)",
+            "CREATE INDEX IF NOT EXISTS cluster_reuse_new_idx ON "
+                + clusterReuseTable + "(match_key_config_id, new_cluster_id)",
+            "CREATE INDEX IF NOT EXISTS cluster_reuse_old_idx ON "
+                + clusterReuseTable + "(old_cluster_id)",
+            // match values of each record of a rebuild; sorted to join records by value
+            "CREATE UNLOGGED TABLE IF NOT EXISTS " + clusterValueStagingTable
+                + "(match_key_config_id VARCHAR NOT NULL,"
+                + " element integer NOT NULL,"
+                + " record_id uuid NOT NULL,"
+                + " match_value VARCHAR NOT NULL,"
+                + " FOREIGN KEY(match_key_config_id) REFERENCES " + matchKeyConfigTable
+                + " ON DELETE CASCADE)",
             CREATE_IF_NO_EXISTS + moduleTable
                 + "(id VARCHAR NOT NULL PRIMARY KEY,"
                 + " type VARCHAR,"
                 + " url VARCHAR, "
                 + " function VARCHAR,"
-                + " script VARCHAR)",
+                + " script VARCHAR,"
+                + " convention VARCHAR,"
+                + " source VARCHAR)",
             "ALTER TABLE " + moduleTable + " ADD COLUMN IF NOT EXISTS"
                 + " type VARCHAR",
             "ALTER TABLE " + moduleTable + " ADD COLUMN IF NOT EXISTS"
                 + " script VARCHAR",
+            "ALTER TABLE " + moduleTable + " ADD COLUMN IF NOT EXISTS"
+                + " convention VARCHAR",
+            "ALTER TABLE " + moduleTable + " ADD COLUMN IF NOT EXISTS"
+                + " source VARCHAR",
             CREATE_IF_NO_EXISTS + oaiConfigTable
                 + "(id VARCHAR NOT NULL PRIMARY KEY,"
                 + " config JSONB NOT NULL)",
             CREATE_IF_NO_EXISTS + oaiPmhClientTable
                 + "(id VARCHAR NOT NULL PRIMARY KEY,"
-                + " config JSONB, job JSONB, stop BOOLEAN, owner UUID)"
-        )
-    ).mapEmpty();
+                + " config JSONB, job JSONB, stop BOOLEAN, owner UUID)",
+            CREATE_IF_NO_EXISTS + jobTable
+                + "(id uuid NOT NULL PRIMARY KEY,"
+                + " type VARCHAR NOT NULL,"
+                + " params JSONB NOT NULL,"
+                + " status VARCHAR NOT NULL,"
+                + " processed BIGINT NOT NULL,"
+                + " step_processed BIGINT NOT NULL,"
+                + " total BIGINT,"
+                + " checkpoint JSONB,"
+                + " result JSONB,"
+                + " error VARCHAR,"
+                + " owner uuid,"
+                + " created TIMESTAMP NOT NULL,"
+                + " updated TIMESTAMP NOT NULL,"
+                + " finished TIMESTAMP)",
+            "CREATE INDEX IF NOT EXISTS job_status_idx ON " + jobTable + "(status, updated)"
+    ));
+    return statements;
   }
 
-  Future<Boolean> upsertGlobalRecord(Vertx vertx, SqlConnection conn, String localIdentifier,
-      SourceId sourceId, int sourceVersion, JsonObject payload, JsonArray matchKeyConfigs) {
+  private Future<Layout> selectLayout() {
+    return pool.preparedQuery("SELECT"
+            + " EXISTS (SELECT 1 FROM pg_class WHERE oid = to_regclass($1) AND relkind = 'p'),"
+            + " EXISTS (SELECT 1 FROM pg_attribute WHERE attrelid = to_regclass($2)"
+            + " AND attname = 'match_hash' AND NOT attisdropped)")
+        .execute(Tuple.of(globalRecordTable, clusterValueTable))
+        .map(rowSet -> {
+          Row row = rowSet.iterator().next();
+          return new Layout(row.getBoolean(0), row.getBoolean(1));
+        });
+  }
+
+  /**
+   * Get storage layout of tenant.
+   * @return async result with layout
+   */
+  Future<Layout> getLayout() {
+    return ConfigCache.getInstance().getLayout(tenant, this::selectLayout);
+  }
+
+  /**
+   * Whether global records are partitioned by source and source version.
+   * @return async result with true if partitioned
+   */
+  Future<Boolean> isPartitioned() {
+    return getLayout().map(Layout::partitioned);
+  }
+
+  static String sourcePartitionTable(String sourceId) {
+    return GLOBAL_RECORDS_TABLE + "_"
+        + HexFormat.of().formatHex(sourceId.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static String versionPartitionTable(String sourceId, int sourceVersion) {
+    return sourcePartitionTable(sourceId) + "_v" + Integer.toUnsignedString(sourceVersion);
+  }
+
+  /**
+   * Make sure the partition for a source version exists if records are partitioned.
+   * @param sourceId source identifier; null for no source (nothing to create)
+   * @param sourceVersion source version
+   * @return async result
+   */
+  Future<Void> ensureSourcePartition(SourceId sourceId, int sourceVersion) {
+    if (sourceId == null) {
+      return Future.succeededFuture();
+    }
+    return isPartitioned().compose(partitioned -> {
+      if (Boolean.FALSE.equals(partitioned)) {
+        return Future.succeededFuture();
+      }
+      // source identifiers are restricted to characters that need no quoting
+      String source = sourceId.toString();
+      String sourceTable = pool.getSchema() + "." + sourcePartitionTable(source);
+      String versionTable = pool.getSchema() + "." + versionPartitionTable(source, sourceVersion);
+      return ConfigCache.getInstance().getPartition(tenant, versionTable, () ->
+          createPartitions(sourceTable, source, versionTable, sourceVersion)
+              // another instance may have created it meanwhile
+              .recover(e -> createPartitions(sourceTable, source, versionTable, sourceVersion)));
+    });
+  }
+
+  private Future<Void> createPartitions(String sourceTable, String source,
+      String versionTable, int sourceVersion) {
+    return pool.execute(List.of(
+        CREATE_IF_NO_EXISTS + sourceTable + " PARTITION OF " + globalRecordTable
+            + " FOR VALUES IN ('" + source + "') PARTITION BY LIST (source_version)",
+        CREATE_IF_NO_EXISTS + versionTable + " PARTITION OF " + sourceTable
+            + " FOR VALUES IN (" + sourceVersion + ")"));
+  }
+
+  /**
+   * Source or source version selected by a delete query.
+   * @param sourceId source identifier
+   * @param sourceVersion source version; null for all versions
+   */
+  record SourcePartition(String sourceId, Integer sourceVersion) {
+  }
+
+  /**
+   * Match a SQL WHERE clause that selects exactly all records of a source or source version.
+   * @param sqlWhere SQL WHERE clause; null for all records
+   * @return source and optional version; null if the clause selects anything else
+   */
+  static SourcePartition matchSourcePartition(String sqlWhere) {
+    if (sqlWhere == null) {
+      return null;
+    }
+    String source;
+    String version;
+    Matcher matcher = SOURCE_WHERE.matcher(sqlWhere);
+    if (matcher.matches()) {
+      source = matcher.group(1);
+      version = matcher.group(2);
+    } else {
+      matcher = VERSION_SOURCE_WHERE.matcher(sqlWhere);
+      if (!matcher.matches()) {
+        return null;
+      }
+      source = matcher.group(2);
+      version = matcher.group(1);
+    }
+    try {
+      if (!new SourceId(source).toString().equals(source)) {
+        return null; // would not match records stored under normalized identifier
+      }
+      return new SourcePartition(source, version == null ? null : Integer.valueOf(version));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Delete all records of a source or source version by dropping its partition.
+   *
+   * <p>Clusters of deleted records are updated and the partition is dropped in one
+   * transaction; ingest into the partition waits for it to complete.
+   * @param partition source and optional version
+   * @return async result with number of records deleted
+   */
+  Future<Long> dropSourcePartition(SourcePartition partition) {
+    String table = pool.getSchema() + "." + (partition.sourceVersion() == null
+        ? sourcePartitionTable(partition.sourceId())
+        : versionPartitionTable(partition.sourceId(), partition.sourceVersion()));
+    String q = "UPDATE " + clusterMetaTable + " AS m"
+        + " SET datestamp = $1"
+        + " FROM " + clusterRecordTable + " AS r, " + table + " AS g"
+        + " WHERE m.cluster_id = r.cluster_id AND r.record_id = g.id";
+    Tuple tuple = Tuple.of(LocalDateTime.now(ZoneOffset.UTC));
+    if (partition.sourceVersion() != null) {
+      // see deleteGlobalRecordsChunk
+      q = q + " AND NOT EXISTS (SELECT 1 FROM " + clusterRecordTable + " AS r2, "
+          + pool.getSchema() + "." + sourcePartitionTable(partition.sourceId()) + " AS g2"
+          + " WHERE r2.cluster_id = m.cluster_id AND r2.record_id = g2.id"
+          + " AND g2.source_version != $2)";
+      tuple.addInteger(partition.sourceVersion());
+    }
+    String update = q;
+    return pool.preparedQuery("SELECT to_regclass($1) IS NOT NULL")
+        .execute(Tuple.of(table))
+        .compose(rowSet -> {
+          if (Boolean.FALSE.equals(rowSet.iterator().next().getBoolean(0))) {
+            return Future.succeededFuture(0L);
+          }
+          return pool.withTransaction(conn ->
+                  conn.query("LOCK TABLE " + table + " IN EXCLUSIVE MODE").execute()
+                      .compose(x -> conn.query("SELECT COUNT(*) FROM " + table).execute())
+                      .map(count -> count.iterator().next().getLong(0))
+                      .compose(count -> conn.preparedQuery(update).execute(tuple)
+                          .compose(x -> conn.query("DELETE FROM " + clusterRecordTable
+                              + " AS r USING " + table + " AS g WHERE r.record_id = g.id")
+                              .execute())
+                          .compose(x -> conn.query("DROP TABLE " + table).execute())
+                          .map(count)))
+              .compose(count -> configChanged(ConfigChangeListener.PARTITION, null).map(count));
+        });
+  }
+
+  Future<IngestResult> upsertGlobalRecord(SqlConnection conn,
+      String localIdentifier, SourceId sourceId, int sourceVersion, JsonObject payload,
+      Map<String, Collection<String>> matchKeyValues) {
 
     UUID startId = UUID.randomUUID();
+    // no row is returned if the payload digest is unchanged
     return conn.preparedQuery(
-            "INSERT INTO " + globalRecordTable
-                + " (id, local_id, source_id, source_version, payload)"
-                + " VALUES ($1, $2, $3, $4, $5)"
+            "INSERT INTO " + globalRecordTable + " AS g"
+                + " (id, local_id, source_id, source_version, payload, digest)"
+                + " VALUES ($1, $2, $3, $4, $5, " + PAYLOAD_DIGEST + ")"
                 + " ON CONFLICT (local_id, source_id, source_version) DO UPDATE "
-                + " SET payload = $5"
+                + " SET payload = $5, digest = EXCLUDED.digest"
+                + " WHERE g.digest IS DISTINCT FROM EXCLUDED.digest"
                 + " RETURNING id"
         )
         .execute(Tuple.of(startId, localIdentifier, sourceId.toString(), sourceVersion, payload))
-        .map(rowSet -> rowSet.iterator().next().getUUID("id"))
-        .compose(id -> updateMatchKeyValues(vertx, conn, id, payload, matchKeyConfigs)
-            .map(x -> id.equals(startId)));
+        .compose(rowSet -> {
+          RowIterator<Row> iterator = rowSet.iterator();
+          if (!iterator.hasNext()) {
+            return Future.succeededFuture(IngestResult.UNCHANGED);
+          }
+          UUID id = iterator.next().getUUID("id");
+          return updateMatchKeyValues(conn, id, matchKeyValues)
+              .map(x -> id.equals(startId) ? IngestResult.INSERTED : IngestResult.UPDATED);
+        });
   }
 
   Future<Void> deleteGlobalRecord(SqlConnection conn, String localIdentifier, SourceId sourceId,
@@ -233,6 +599,10 @@ public class Storage {
     return conn.preparedQuery(q)
         .execute(Tuple.of(localIdentifier, sourceId.toString(), sourceVersion,
             LocalDateTime.now(ZoneOffset.UTC)))
+        .compose(x -> conn.preparedQuery("DELETE FROM " + clusterRecordTable
+                + " WHERE record_id IN (SELECT id FROM " + globalRecordTable
+                + " WHERE local_id = $1 AND source_id = $2 and source_version = $3)")
+            .execute(Tuple.of(localIdentifier, sourceId.toString(), sourceVersion)))
         .compose(x -> conn.preparedQuery("DELETE FROM " + globalRecordTable
                 + " WHERE local_id = $1 AND source_id = $2 and source_version = $3")
         .execute(Tuple.of(localIdentifier, sourceId.toString(), sourceVersion))
@@ -241,49 +611,52 @@ public class Storage {
 
   /**
    * Insert/update/delete global record.
+   *
+   * <p>Match keys are computed before the transaction is started, so that the
+   * connection is not held while matchers execute.
    * @param vertx Vert.x handle
    * @param sourceId source identifier
    * @param sourceVersion source version
    * @param globalRecord global record JSON object
    * @param matchKeyConfigs match key configrations in use
-   * @return async result with TRUE=inserted, FALSE=updated, null=deleted
+   * @return async result with outcome
    */
-  Future<Boolean> ingestGlobalRecord(Vertx vertx, SourceId sourceId, int sourceVersion,
+  Future<IngestResult> ingestGlobalRecord(Vertx vertx, SourceId sourceId, int sourceVersion,
       JsonObject globalRecord, JsonArray matchKeyConfigs) {
 
-    return pool.withTransaction(conn ->
-            ingestGlobalRecord(vertx, conn, sourceId, sourceVersion,
-                globalRecord, matchKeyConfigs))
-        // addValuesToCluster may fail if for same new match key for parallel operations
-        // we recover just once for that. 2nd will find the new value for the one that
-        // succeeded.
-        .recover(x ->
-            pool.withTransaction(conn ->
-                ingestGlobalRecord(vertx, conn, sourceId, sourceVersion,
-                    globalRecord, matchKeyConfigs)));
+    return ensureSourcePartition(sourceId, sourceVersion)
+        .compose(x -> getMatchKeyValues(vertx, globalRecord, matchKeyConfigs))
+        .compose(matchKeyValues -> pool.withTransaction(conn ->
+                ingestGlobalRecord(conn, sourceId, sourceVersion, globalRecord, matchKeyValues))
+            // addValuesToCluster may fail if for same new match key for parallel operations
+            // we recover just once for that. 2nd will find the new value for the one that
+            // succeeded.
+            .recover(x ->
+                pool.withTransaction(conn ->
+                    ingestGlobalRecord(conn, sourceId, sourceVersion,
+                        globalRecord, matchKeyValues))));
   }
 
   /**
    * Insert/update/delete global record.
-   * @param vertx Vert.x handle
    * @param conn connection
    * @param sourceId source identifier
    * @param sourceVersion source version
    * @param globalRecord global record JSON object
-   * @param matchKeyConfigs match key configrations in use
-   * @return async result with TRUE=inserted, FALSE=updated, null=deleted
+   * @param matchKeyValues values for each match key configuration
+   * @return async result with outcome
    */
-  Future<Boolean> ingestGlobalRecord(Vertx vertx, SqlConnection conn,
+  Future<IngestResult> ingestGlobalRecord(SqlConnection conn,
       SourceId sourceId, int sourceVersion, JsonObject globalRecord,
-      JsonArray matchKeyConfigs) {
+      Map<String, Collection<String>> matchKeyValues) {
 
     final String localIdentifier = globalRecord.getString("localId");
     if (localIdentifier == null) {
       return Future.failedFuture("localId required");
     }
-    if (Boolean.TRUE.equals(globalRecord.getBoolean("delete"))) {
+    if (isDelete(globalRecord)) {
       return deleteGlobalRecord(conn, localIdentifier, sourceId, sourceVersion)
-          .map(x -> null);
+          .map(IngestResult.DELETED);
     }
     final JsonObject payload = globalRecord.getJsonObject("payload");
     if (payload == null) {
@@ -292,74 +665,264 @@ public class Storage {
     if (sourceId == null) {
       return Future.failedFuture("sourceId required");
     }
-    return upsertGlobalRecord(vertx, conn, localIdentifier, sourceId,
-        sourceVersion, payload, matchKeyConfigs);
+    return upsertGlobalRecord(conn, localIdentifier, sourceId,
+        sourceVersion, payload, matchKeyValues);
   }
 
-  Future<Void> updateMatchKeyValues(Vertx vertx, SqlConnection conn, UUID globalId,
-      JsonObject payload, JsonArray matchKeyConfigs) {
+  /**
+   * Insert/update/delete global records with computed match key values in one transaction.
+   * @param sourceId source identifier
+   * @param sourceVersion source version
+   * @param globalRecords global record JSON objects
+   * @param matchKeyValues values for each match key configuration, for each record
+   * @return async result with outcome for each record
+   */
+  Future<List<IngestResult>> ingestGlobalRecords(SourceId sourceId, int sourceVersion,
+      List<JsonObject> globalRecords, List<Map<String, Collection<String>>> matchKeyValues) {
+
+    return ensureSourcePartition(sourceId, sourceVersion)
+        .compose(y -> pool.withTransaction(conn ->
+            ingestGlobalRecords(conn, sourceId, sourceVersion, globalRecords, matchKeyValues)))
+        // see ingestGlobalRecord for why we recover once
+        .recover(x ->
+            pool.withTransaction(conn ->
+                ingestGlobalRecords(conn, sourceId, sourceVersion,
+                    globalRecords, matchKeyValues)));
+  }
+
+  /**
+   * Insert/update/delete global records.
+   *
+   * <p>Consecutive upserts with distinct local identifiers are inserted with one
+   * multi-row statement; deletes are performed in order between them.
+   * @param conn connection
+   * @param sourceId source identifier
+   * @param sourceVersion source version
+   * @param globalRecords global record JSON objects
+   * @param matchKeyValues values for each match key configuration, for each record
+   * @return async result with outcome for each record
+   */
+  Future<List<IngestResult>> ingestGlobalRecords(SqlConnection conn,
+      SourceId sourceId, int sourceVersion, List<JsonObject> globalRecords,
+      List<Map<String, Collection<String>>> matchKeyValues) {
+
+    for (JsonObject globalRecord : globalRecords) {
+      if (globalRecord.getString("localId") == null) {
+        return Future.failedFuture("localId required");
+      }
+      if (!isDelete(globalRecord)) {
+        if (globalRecord.getJsonObject("payload") == null) {
+          return Future.failedFuture("payload required");
+        }
+        if (sourceId == null) {
+          return Future.failedFuture("sourceId required");
+        }
+      }
+    }
+    List<IngestResult> results = new ArrayList<>(
+        Collections.nCopies(globalRecords.size(), IngestResult.DELETED));
+    Future<Void> future = Future.succeededFuture();
+    int i = 0;
+    while (i < globalRecords.size()) {
+      JsonObject globalRecord = globalRecords.get(i);
+      String localIdentifier = globalRecord.getString("localId");
+      if (isDelete(globalRecord)) {
+        future = future.compose(x ->
+            deleteGlobalRecord(conn, localIdentifier, sourceId, sourceVersion));
+        i++;
+        continue;
+      }
+      // ON CONFLICT DO UPDATE can not affect the same row twice in one statement
+      Set<String> localIdentifiers = new HashSet<>();
+      int start = i;
+      while (i < globalRecords.size() && !isDelete(globalRecords.get(i))
+          && localIdentifiers.add(globalRecords.get(i).getString("localId"))) {
+        i++;
+      }
+      List<JsonObject> upserts = globalRecords.subList(start, i);
+      List<Map<String, Collection<String>>> upsertValues = matchKeyValues.subList(start, i);
+      future = future.compose(x ->
+          upsertGlobalRecords(conn, sourceId, sourceVersion, upserts, upsertValues)
+              .map(upserted -> {
+                for (int j = 0; j < upserted.size(); j++) {
+                  results.set(start + j, upserted.get(j));
+                }
+                return null;
+              }));
+    }
+    return future.map(results);
+  }
+
+  private static boolean isDelete(JsonObject globalRecord) {
+    return Boolean.TRUE.equals(globalRecord.getBoolean("delete"));
+  }
+
+  Future<List<IngestResult>> upsertGlobalRecords(SqlConnection conn, SourceId sourceId,
+      int sourceVersion, List<JsonObject> globalRecords,
+      List<Map<String, Collection<String>>> matchKeyValues) {
+
+    UUID[] startIds = new UUID[globalRecords.size()];
+    String[] localIdentifiers = new String[globalRecords.size()];
+    JsonObject[] payloads = new JsonObject[globalRecords.size()];
+    for (int i = 0; i < globalRecords.size(); i++) {
+      JsonObject globalRecord = globalRecords.get(i);
+      startIds[i] = UUID.randomUUID();
+      localIdentifiers[i] = globalRecord.getString("localId");
+      payloads[i] = globalRecord.getJsonObject("payload");
+    }
+    // records with unchanged payload digest are not returned
+    return conn.preparedQuery("INSERT INTO " + globalRecordTable + " AS g"
+            + " (id, local_id, source_id, source_version, payload, digest)"
+            + " SELECT id, local_id, $1, $2, payload, md5(payload::text)::uuid"
+            + " FROM unnest($3::uuid[], $4::varchar[], $5::jsonb[]) AS t(id, local_id, payload)"
+            + " ON CONFLICT (local_id, source_id, source_version) DO UPDATE"
+            + " SET payload = EXCLUDED.payload, digest = EXCLUDED.digest"
+            + " WHERE g.digest IS DISTINCT FROM EXCLUDED.digest"
+            + " RETURNING id, local_id")
+        .execute(Tuple.of(sourceId.toString(), sourceVersion, startIds, localIdentifiers,
+            payloads))
+        .compose(rowSet -> {
+          Map<String, UUID> ids = new HashMap<>();
+          rowSet.forEach(row -> ids.put(row.getString("local_id"), row.getUUID("id")));
+          List<IngestResult> results = new ArrayList<>(globalRecords.size());
+          Future<Void> future = Future.succeededFuture();
+          for (int i = 0; i < globalRecords.size(); i++) {
+            JsonObject globalRecord = globalRecords.get(i);
+            UUID id = ids.get(globalRecord.getString("localId"));
+            if (id == null) {
+              results.add(IngestResult.UNCHANGED);
+              continue;
+            }
+            results.add(id.equals(startIds[i]) ? IngestResult.INSERTED : IngestResult.UPDATED);
+            // records may share match values, so clusters are resolved one after another
+            Map<String, Collection<String>> values = matchKeyValues.get(i);
+            future = future.compose(x -> updateMatchKeyValues(conn, id, values));
+          }
+          return future.map(results);
+        });
+  }
+
+  /**
+   * Compute match key values for a global record.
+   * @param vertx Vert.x handle
+   * @param globalRecord global record JSON object
+   * @param matchKeyConfigs match key configurations in use
+   * @return values for each match key configuration; empty for delete
+   */
+  Future<Map<String, Collection<String>>> getMatchKeyValues(Vertx vertx,
+      JsonObject globalRecord, JsonArray matchKeyConfigs) {
+
+    Map<String, Collection<String>> matchKeyValues = new HashMap<>();
+    JsonObject payload = globalRecord.getJsonObject("payload");
+    if (isDelete(globalRecord) || payload == null) {
+      return Future.succeededFuture(matchKeyValues);
+    }
     List<Future<Void>> futures = new ArrayList<>(matchKeyConfigs.size());
     for (int i = 0; i < matchKeyConfigs.size(); i++) {
       JsonObject matchKeyConfig = matchKeyConfigs.getJsonObject(i);
-      futures.add(updateMatchKeyValues(vertx, conn, globalId, payload, matchKeyConfig));
+      if ("manual".equals(matchKeyConfig.getString("update"))) {
+        continue;
+      }
+      futures.add(getMatchKeyValues(vertx, payload, matchKeyConfig)
+          .map(values -> {
+            matchKeyValues.put(matchKeyConfig.getString("id"), values);
+            return null;
+          }));
     }
-    return GenericCompositeFuture.all(futures).mapEmpty();
+    return GenericCompositeFuture.all(futures).map(matchKeyValues);
   }
 
-  Future<Void> updateMatchKeyValues(Vertx vertx, SqlConnection conn, UUID globalId,
-      JsonObject payload, JsonObject matchKeyConfig) {
+  Future<Collection<String>> getMatchKeyValues(Vertx vertx, JsonObject payload,
+      JsonObject matchKeyConfig) {
 
-    String update = matchKeyConfig.getString("update");
-    if ("manual".equals(update)) {
-      return Future.succeededFuture();
-    }
+    return getMatchKeyFunction(vertx, matchKeyConfig)
+        .compose(function -> ModuleWorker.execute(vertx, function.getName(), p ->
+            p.complete(function.apply(payload))));
+  }
+
+  Future<MatchKeyFunction> getMatchKeyFunction(Vertx vertx, JsonObject matchKeyConfig) {
     String matchkeyId = matchKeyConfig.getString("id");
     String matcherProp = matchKeyConfig.getString("matcher");
     if (matcherProp != null) {
       ModuleInvocation invocation = new ModuleInvocation(matcherProp);
-      return selectCodeModuleEntity(conn, invocation.getModuleName())
+      return getCodeModuleEntity(invocation.getModuleName())
           .compose(entity -> {
             if (entity == null) {
               return Future.failedFuture(
                   "Module '" + invocation.getModuleName()
                       + "' does not exist for '" + invocation + "'");
             }
-            return ModuleCache.getInstance().lookup(vertx, tenant, entity);
+            return lookupModule(vertx, entity);
           })
-          .compose(module ->
-              vertx.<Collection<String>>executeBlocking(p -> {
-                try {
-                  p.complete(new ModuleExecutable(module, invocation).executeAsCollection(payload));
-                } catch (Exception e) {
-                  p.fail(e);
-                }
-              }, true)
-              .compose(values ->
-                updateMatchKeyValues(conn, globalId, matchkeyId, values)
-              ));
+          .map(module -> new MatchKeyFunction(matchkeyId,
+              new ModuleExecutable(module, invocation)));
     } else {
       String methodName = matchKeyConfig.getString("method");
       JsonObject params = matchKeyConfig.getJsonObject("params");
       return MatchKeyMethod.get(vertx, tenant, matchkeyId, methodName, params)
-          .compose(matchKeyMethod -> {
-            Set<String> keys = new HashSet<>();
-            matchKeyMethod.getKeys(payload, keys);
-            String matchKeyConfigId = matchKeyConfig.getString("id");
-            return updateMatchKeyValues(conn, globalId, matchKeyConfigId, keys);
-          });
+          .map(matchKeyMethod -> new MatchKeyFunction(matchkeyId, matchKeyMethod));
     }
   }
 
+  /**
+   * Resolve match key functions, so that they can be applied to many records.
+   * @param vertx Vert.x handle
+   * @param matchKeyConfigs match key configurations in use
+   * @return functions for configurations that are updated on ingest
+   */
+  Future<List<MatchKeyFunction>> getMatchKeyFunctions(Vertx vertx, JsonArray matchKeyConfigs) {
+    List<Future<MatchKeyFunction>> futures = new ArrayList<>(matchKeyConfigs.size());
+    for (int i = 0; i < matchKeyConfigs.size(); i++) {
+      JsonObject matchKeyConfig = matchKeyConfigs.getJsonObject(i);
+      if (!"manual".equals(matchKeyConfig.getString("update"))) {
+        futures.add(getMatchKeyFunction(vertx, matchKeyConfig));
+      }
+    }
+    return GenericCompositeFuture.all(futures)
+        .map(x -> futures.stream().map(Future::result).toList());
+  }
+
+  /**
+   * Compute match key values for a global record; executes on worker.
+   * @param globalRecord global record JSON object
+   * @param functions match key functions
+   * @param matchKeyValues where values for each match key configuration are put;
+   *     nothing is put for delete
+   */
+  static void getMatchKeyValues(JsonObject globalRecord, List<MatchKeyFunction> functions,
+      Map<String, Collection<String>> matchKeyValues) {
+
+    JsonObject payload = globalRecord.getJsonObject("payload");
+    if (isDelete(globalRecord) || payload == null) {
+      return;
+    }
+    for (MatchKeyFunction function : functions) {
+      matchKeyValues.put(function.matchKeyConfigId, function.apply(payload));
+    }
+  }
+
+  Future<Void> updateMatchKeyValues(SqlConnection conn, UUID globalId,
+      Map<String, Collection<String>> matchKeyValues) {
+    List<Future<Void>> futures = new ArrayList<>(matchKeyValues.size());
+    matchKeyValues.forEach((matchKeyConfigId, keys) ->
+        futures.add(updateMatchKeyValues(conn, globalId, matchKeyConfigId, keys)));
+    return GenericCompositeFuture.all(futures).mapEmpty();
+  }
+
   Future<Void> updateMatchKeyValues(SqlConnection conn, UUID globalId,
       String matchKeyConfigId, Collection<String> keys) {
 
     Set<String> truncatedKeys = new HashSet<>();
-    keys.forEach(k -> truncatedKeys.add(k.length() > MATCHVALUE_MAX_LENGTH
-          ? k.substring(0, MATCHVALUE_MAX_LENGTH) : k));
+    keys.forEach(k -> truncatedKeys.add(truncateMatchValue(k)));
 
     return updateClusterForRecord(conn, globalId, matchKeyConfigId, truncatedKeys);
   }
 
+  static String truncateMatchValue(String value) {
+    return value.length() > MATCHVALUE_MAX_LENGTH
+        ? value.substring(0, MATCHVALUE_MAX_LENGTH) : value;
+  }
+
   Future<Set<UUID>> updateClusterValues(SqlConnection conn, UUID newClusterId,
       String matchKeyConfigId, Collection<String> keys) {
 
@@ -367,22 +930,8 @@ public class Storage {
     if (keys.isEmpty()) {
       return Future.succeededFuture(clustersFound);
     }
-    StringBuilder q = new StringBuilder("SELECT cluster_id, match_value FROM " + clusterValueTable
-        + " WHERE match_key_config_id = $1 AND (");
-    List<Object> tupleList = new ArrayList<>();
-    tupleList.add(matchKeyConfigId);
-    int no = 2;
-    for (String key : keys) {
-      if (no > 2) {
-        q.append(" OR ");
-      }
-      q.append("match_value = $" + no++);
-      tupleList.add(key);
-    }
-    q.append(")");
     Set<String> foundKeys = new HashSet<>();
-    return conn.preparedQuery(q.toString())
-        .execute(Tuple.from(tupleList))
+    return selectClusterValues(conn, matchKeyConfigId, keys)
         .map(rowSet -> {
           rowSet.forEach(row -> {
             foundKeys.add(row.getString("match_value"));
@@ -400,13 +949,42 @@ public class Storage {
         .map(clustersFound);
   }
 
-  Future<Integer> touchClusters(PgCqlQuery query) {
-    String where = query.getWhereClause();
+  /**
+   * Find clusters having any of the match values.
+   * @param conn connection
+   * @param matchKeyConfigId match key identifier
+   * @param values match values
+   * @return rows with cluster_id and match_value
+   */
+  Future<RowSet<Row>> selectClusterValues(SqlConnection conn, String matchKeyConfigId,
+      Collection<String> values) {
+
+    return getLayout().compose(layout -> {
+      String q = "SELECT cluster_id, match_value FROM " + clusterValueTable
+          + " WHERE match_key_config_id = $1 AND match_value = ANY($2::varchar[])";
+      if (layout.hashedValues()) {
+        // look up by hash; the value comparison above rules out collisions
+        q = q + " AND match_hash = ANY(ARRAY(SELECT md5(v)::uuid FROM unnest($2::varchar[]) v))";
+      }
+      return conn.preparedQuery(q)
+          .execute(Tuple.of(matchKeyConfigId).addArrayOfString(values.toArray(new String[0])));
+    });
+  }
+
+  static String checkTouchClusters(String where) {
     if (where == null
         || !where.contains("global_records.source_id")
         || !where.contains("cluster_meta.match_key_config_id")) {
-      return Future.failedFuture(
-        "query too broad, must at least contain 'matchkeyId' and 'sourceId'");
+      return "query too broad, must at least contain 'matchkeyId' and 'sourceId'";
+    }
+    return null;
+  }
+
+  Future<Integer> touchClusters(PgCqlQuery query) {
+    String where = query.getWhereClause();
+    String error = checkTouchClusters(where);
+    if (error != null) {
+      return Future.failedFuture(error);
     }
     String q = "UPDATE " + clusterMetaTable
         + " SET datestamp = $1"
@@ -419,6 +997,63 @@ public class Storage {
         .map(RowSet<Row>::rowCount);
   }
 
+  private String touchClustersFrom(String where) {
+    return " FROM " + clusterMetaTable + ", " + globalRecordTable + ", " + clusterRecordTable
+        + " WHERE cluster_meta.cluster_id = cluster_records.cluster_id"
+        + " AND cluster_records.record_id = global_records.id"
+        + " AND (" + where + ")";
+  }
+
+  /**
+   * Count clusters affected by touch.
+   * @param where SQL WHERE clause as for {@link #touchClusters(PgCqlQuery)}
+   * @return number of clusters
+   */
+  Future<Long> countTouchClusters(String where) {
+    return pool.query("SELECT COUNT(DISTINCT cluster_meta.cluster_id)" + touchClustersFrom(where))
+        .execute()
+        .map(rowSet -> rowSet.iterator().next().getLong(0));
+  }
+
+  /**
+   * Update datestamp of a chunk of clusters.
+   * @param where SQL WHERE clause as for {@link #touchClusters(PgCqlQuery)}
+   * @param after only clusters with identifier greater than this; null for first chunk
+   * @param limit maximum number of clusters
+   * @return identifiers of clusters updated in ascending order
+   */
+  Future<List<UUID>> touchClustersChunk(String where, UUID after, int limit) {
+    return selectIds("SELECT DISTINCT cluster_meta.cluster_id" + touchClustersFrom(where),
+        "cluster_meta.cluster_id", after, limit)
+        .compose(ids -> {
+          if (ids.isEmpty()) {
+            return Future.succeededFuture(ids);
+          }
+          return pool.preparedQuery("UPDATE " + clusterMetaTable + " SET datestamp = $1"
+                  + " WHERE cluster_id = ANY($2)")
+              .execute(Tuple.tuple()
+                  .addLocalDateTime(LocalDateTime.now(ZoneOffset.UTC))
+                  .addArrayOfUUID(ids.toArray(new UUID[0])))
+              .map(ids);
+        });
+  }
+
+  private Future<List<UUID>> selectIds(String select, String column, UUID after, int limit) {
+    String q = select;
+    Tuple tuple = Tuple.tuple();
+    if (after != null) {
+      q = q + " AND " + column + " > $1";
+      tuple.addUUID(after);
+    }
+    return pool.preparedQuery(q + " ORDER BY 1 LIMIT " + limit)
+        .execute(tuple)
+        .map(rowSet -> {
+          List<UUID> ids = new ArrayList<>(rowSet.size());
+          rowSet.forEach(row -> ids.add(row.getUUID(0)));
+          return ids;
+        });
+  }
+
   Future<Void> updateClusterForRecord(SqlConnection conn, UUID globalId,
       String matchKeyConfigId, Collection<String> keys) {
 
@@ -451,28 +1086,19 @@ public class Storage {
   Future<Void> addValuesToCluster(SqlConnection conn, UUID clusterId, String matchKeyConfigId,
       Collection<String> keys, Set<String> foundKeys) {
 
-    StringBuilder q = new StringBuilder("INSERT INTO " + clusterValueTable
-        + " (cluster_id, match_key_config_id, match_value) VALUES");
-
-    List<Object> tupleList = new ArrayList<>();
-    tupleList.add(clusterId);
-    tupleList.add(matchKeyConfigId);
-    int no = 3;
-    for (String key: keys) {
+    List<String> newKeys = new ArrayList<>();
+    for (String key : keys) {
       if (!foundKeys.contains(key)) {
-        if (no > 3) {
-          q.append(",");
-        }
-        q.append(" ($1, $2, $" + no + ")");
-        tupleList.add(key);
-        no++;
+        newKeys.add(key);
       }
     }
-    if (no == 3) {
+    if (newKeys.isEmpty()) {
       return Future.succeededFuture();
     }
-    return conn.preparedQuery(q.toString())
-        .execute(Tuple.from(tupleList))
+    return conn.preparedQuery("INSERT INTO " + clusterValueTable
+            + " (cluster_id, match_key_config_id, match_value)"
+            + " SELECT $1, $2, unnest($3::varchar[])")
+        .execute(Tuple.of(clusterId, matchKeyConfigId, newKeys.toArray(new String[0])))
         .mapEmpty();
   }
 
@@ -484,40 +1110,22 @@ public class Storage {
   }
 
   Future<Void> updateMetaEntries(SqlConnection conn, Set<UUID> clusters) {
-    Iterator<UUID> iterator = clusters.iterator();
-    StringBuilder setClause = new StringBuilder("UPDATE " + clusterMetaTable
-        + " SET datestamp = $1 WHERE ");
-    List<Object> tupleList = new ArrayList<>();
-    tupleList.add(LocalDateTime.now(ZoneOffset.UTC));
-    for (int no = 2; iterator.hasNext(); no++) {
-      tupleList.add(iterator.next());
-      if (no > 2) {
-        setClause.append(" OR ");
-      }
-      setClause.append("cluster_id = $");
-      setClause.append(no);
-    }
-    return conn.preparedQuery(setClause.toString())
-        .execute(Tuple.from(tupleList))
+    return conn.preparedQuery("UPDATE " + clusterMetaTable
+            + " SET datestamp = $1 WHERE cluster_id = ANY($2::uuid[])")
+        .execute(Tuple.of(LocalDateTime.now(ZoneOffset.UTC))
+            .addArrayOfUUID(clusters.toArray(new UUID[0])))
         .mapEmpty();
   }
 
   Future<Void> mergeClusters(SqlConnection conn, UUID clusterId, Iterator<UUID> iterator) {
-    StringBuilder setClause = new StringBuilder(" SET cluster_id = $1 WHERE ");
-    List<UUID> tupleList = new ArrayList<>();
-    tupleList.add(clusterId); // $1
-    for (int no = 2; iterator.hasNext(); no++) {
-      tupleList.add(iterator.next());
-      if (no > 2) {
-        setClause.append(" OR ");
-      }
-      setClause.append("cluster_id = $");
-      setClause.append(no);
-    }
+    List<UUID> otherClusters = new ArrayList<>();
+    iterator.forEachRemaining(otherClusters::add);
+    String setClause = " SET cluster_id = $1 WHERE cluster_id = ANY($2::uuid[])";
+    Tuple tuple = Tuple.of(clusterId).addArrayOfUUID(otherClusters.toArray(new UUID[0]));
     return conn.preparedQuery("UPDATE " + clusterValueTable + setClause)
-        .execute(Tuple.from(tupleList))
+        .execute(tuple)
         .compose(x -> conn.preparedQuery("UPDATE " + clusterRecordTable + setClause)
-            .execute(Tuple.from(tupleList)))
+            .execute(tuple))
         .mapEmpty();
   }
 
@@ -528,15 +1136,119 @@ public class Storage {
    * @return async result
    */
   public Future<Void> updateGlobalRecords(Vertx vertx, LargeJsonReadStream request) {
-    return pool.withConnection(this::getAvailableMatchConfigs).compose(matchKeyConfigs ->
+    return updateGlobalRecords(vertx, request, false);
+  }
+
+  /**
+   * Insert/update/delete global records from JSON stream.
+   *
+   * <p>In bulk mode, records are ingested in batches without updating clusters;
+   * instead all records of the source are clustered in one pass when the stream has
+   * been consumed. The source version must have no records; see
+   * {@link #checkBulkSource}.
+   * @param vertx Vert.x handle
+   * @param request JSON stream with sourceId, sourceVersion and records
+   * @param bulk whether to defer clustering
+   * @return async result
+   */
+  public Future<Void> updateGlobalRecords(Vertx vertx, LargeJsonReadStream request,
+      boolean bulk) {
+    if (bulk) {
+      return ingestBulk(vertx, request);
+    }
+    return getAvailableMatchConfigs().compose(configs ->
         new ReadStreamConsumer<JsonObject, Void>()
             .consume(request, r ->
                 ingestGlobalRecord(
                     vertx, new SourceId(request.topLevelObject().getString("sourceId")),
-                    request.topLevelObject().getInteger("sourceVersion", 1), r, matchKeyConfigs)
+                    request.topLevelObject().getInteger("sourceVersion", 1), r, configs)
                     .mapEmpty()));
   }
 
+  private Future<Void> ingestBulk(Vertx vertx, LargeJsonReadStream request) {
+    List<JsonObject> batch = new ArrayList<>();
+    // source is known when the first record has been read; no records, nothing to do
+    AtomicReference<Future<Void>> checked = new AtomicReference<>();
+    return new ReadStreamConsumer<JsonObject, Void>()
+        .consume(request, r -> {
+          if (checked.get() == null) {
+            checked.set(checkBulkSource(bulkSourceId(request), bulkSourceVersion(request)));
+          }
+          batch.add(r);
+          if (batch.size() < IngestParams.BULK_BATCH_SIZE) {
+            return checked.get();
+          }
+          List<JsonObject> records = new ArrayList<>(batch);
+          batch.clear();
+          return checked.get().compose(x -> ingestBulk(request, records));
+        })
+        .compose(x -> checked.get() == null ? Future.succeededFuture()
+            : ingestBulk(request, batch)
+                .compose(y -> clusterGlobalRecords(vertx, bulkSourceId(request),
+                    bulkSourceVersion(request))));
+  }
+
+  private static SourceId bulkSourceId(LargeJsonReadStream request) {
+    return new SourceId(request.topLevelObject().getString("sourceId"));
+  }
+
+  private static int bulkSourceVersion(LargeJsonReadStream request) {
+    return request.topLevelObject().getInteger("sourceVersion", 1);
+  }
+
+  /**
+   * Check that a source version has no records, as required for bulk load.
+   *
+   * <p>Clustering after a bulk load does not remove match values of existing records,
+   * so stale values would keep joining clusters.
+   * @param sourceId source identifier
+   * @param sourceVersion source version
+   * @return async result; failed if the source version has records
+   */
+  Future<Void> checkBulkSource(SourceId sourceId, int sourceVersion) {
+    return pool.preparedQuery("SELECT 1 FROM " + globalRecordTable
+            + " WHERE source_id = $1 AND source_version = $2 LIMIT 1")
+        .execute(Tuple.of(sourceId.toString(), sourceVersion))
+        .compose(rowSet -> rowSet.size() == 0 ? Future.succeededFuture()
+            : Future.failedFuture("Bulk mode requires that source " + sourceId
+                + " version " + sourceVersion + " has no records"));
+  }
+
+  private Future<Void> ingestBulk(LargeJsonReadStream request, List<JsonObject> records) {
+    if (records.isEmpty()) {
+      return Future.succeededFuture();
+    }
+    return ingestGlobalRecords(bulkSourceId(request), bulkSourceVersion(request), records,
+        Collections.nCopies(records.size(), Map.of()))
+        .mapEmpty();
+  }
+
+  /**
+   * Populate clusters for all records of a source.
+   *
+   * <p>Used after a bulk load where records are inserted without clustering.
+   * Match key configurations with manual update are skipped.
+   * @param vertx Vert.x handle
+   * @param sourceId source identifier
+   * @param sourceVersion source version
+   * @return async result
+   */
+  public Future<Void> clusterGlobalRecords(Vertx vertx, SourceId sourceId, int sourceVersion) {
+    return getAvailableMatchConfigs()
+        .compose(configs -> getMatchKeyFunctions(vertx, configs))
+        .compose(functions -> {
+          Future<Void> future = Future.succeededFuture();
+          for (MatchKeyFunction function : functions) {
+            future = future.compose(x ->
+                new SourceClustering(this, vertx, function, sourceId, sourceVersion).run()
+                    .onSuccess(res -> log.info("{}:{} clustered {} for {}", sourceId,
+                        sourceVersion, res.encode(), function.matchKeyConfigId))
+                    .mapEmpty());
+          }
+          return future;
+        });
+  }
+
   /**
    * Get available match key configurations.
    * @param conn connection to use for selecting them
@@ -547,35 +1259,65 @@ public class Storage {
         .execute()
         .map(res -> {
           JsonArray matchConfigs = new JsonArray();
-          res.forEach(row ->
-              matchConfigs.add(new JsonObject()
-                  .put("id", row.getString("id"))
-                  .put("matcher", row.getString("matcher"))
-                  .put("method", row.getString("method"))
-                  .put("params", row.getJsonObject("params"))
-                  .put("update", row.getString("update"))
-              ));
+          res.forEach(row -> matchConfigs.add(matchKeyConfigFromRow(row)));
           return matchConfigs;
         });
   }
 
+  private static JsonObject matchKeyConfigFromRow(Row row) {
+    return new JsonObject()
+        .put("id", row.getString("id"))
+        .put("matcher", row.getString("matcher"))
+        .put("method", row.getString("method"))
+        .put("params", row.getJsonObject("params"))
+        .put("update", row.getString("update"));
+  }
+
+  /**
+   * Get available match key configurations from cache.
+   * @return async result with array of configurations
+   */
   public Future<JsonArray> getAvailableMatchConfigs() {
-    return pool.withConnection(this::getAvailableMatchConfigs);
+    return ConfigCache.getInstance().getMatchKeyConfigs(tenant,
+        () -> pool.withConnection(this::getAvailableMatchConfigs));
   }
 
   /**
-   * Delete global records and update timestamp.
-   * @param sqlWhere SQL WHERE clause
-   * @return async result
+   * Count global records.
+   * @param sqlWhere SQL WHERE clause; null for all records
+   * @return number of records
    */
-  public Future<Void> deleteGlobalRecords(String sqlWhere) {
-    String q = "UPDATE " + clusterMetaTable + " AS m"
-        + " SET datestamp = $1"
-        + " FROM " + globalRecordTable + ", " + clusterRecordTable + " AS r"
-        + " WHERE m.cluster_id = r.cluster_id AND r.record_id = id";
+  Future<Long> countGlobalRecords(String sqlWhere) {
+    String q = "SELECT COUNT(*) FROM " + globalRecordTable;
     if (sqlWhere != null) {
-      q = q + " AND " + sqlWhere;
-      if (sqlWhere.contains("source_version=")) {
+      q = q + " WHERE " + sqlWhere;
+    }
+    return pool.query(q).execute().map(rowSet -> rowSet.iterator().next().getLong(0));
+  }
+
+  /**
+   * Delete a chunk of global records and update timestamp.
+   *
+   * <p>Timestamps and records are updated in one transaction, so deletion can be
+   * repeated or resumed after an interruption.
+   * @param sqlWhere SQL WHERE clause; null for all records
+   * @param after only records with identifier greater than this; null for first chunk
+   * @param limit maximum number of records
+   * @return identifiers of deleted records in ascending order
+   */
+  Future<List<UUID>> deleteGlobalRecordsChunk(String sqlWhere, UUID after, int limit) {
+    String select = "SELECT id FROM " + globalRecordTable + " WHERE "
+        + (sqlWhere != null ? "(" + sqlWhere + ")" : "TRUE");
+    return selectIds(select, "id", after, limit).compose(ids -> {
+      if (ids.isEmpty()) {
+        return Future.succeededFuture(ids);
+      }
+      UUID[] idArray = ids.toArray(new UUID[0]);
+      String q = "UPDATE " + clusterMetaTable + " AS m"
+          + " SET datestamp = $1"
+          + " FROM " + globalRecordTable + ", " + clusterRecordTable + " AS r"
+          + " WHERE m.cluster_id = r.cluster_id AND r.record_id = id AND id = ANY($2)";
+      if (sqlWhere != null && sqlWhere.contains("source_version=")) {
         // if limit by source version, then update timestamp only if this cluster only
         // contains the source_version and not others. The datestamp for cluster was
         // already updated on update during ingest.
@@ -584,18 +1326,17 @@ public class Storage {
             + " WHERE m.cluster_id = r.cluster_id AND r.record_id = id"
             + " AND " + sqlWhere.replace("source_version=", "source_version!=") + ")";
       }
-    }
-    return pool.preparedQuery(q)
-        .execute(Tuple.of(LocalDateTime.now(ZoneOffset.UTC)))
-        .compose(rowSet -> {
-          log.info("Number of meta records updated = {}", rowSet.rowCount());
-          String from = globalRecordTable;
-          if (sqlWhere != null) {
-            from = from + " WHERE " + sqlWhere;
-          }
-          return pool.query("DELETE FROM " + from).execute();
-        })
-        .mapEmpty();
+      String update = q;
+      return pool.withTransaction(conn -> conn.preparedQuery(update)
+          .execute(Tuple.tuple()
+              .addLocalDateTime(LocalDateTime.now(ZoneOffset.UTC))
+              .addArrayOfUUID(idArray))
+          .compose(x -> conn.preparedQuery("DELETE FROM " + clusterRecordTable
+              + " WHERE record_id = ANY($1)").execute(Tuple.tuple().addArrayOfUUID(idArray)))
+          .compose(x -> conn.preparedQuery("DELETE FROM " + globalRecordTable
+              + " WHERE id = ANY($1)").execute(Tuple.tuple().addArrayOfUUID(idArray))))
+          .map(ids);
+    });
   }
 
   /**
@@ -606,11 +1347,8 @@ public class Storage {
    * @return async result
    */
   public Future<Void> getGlobalRecords(RoutingContext ctx, String sqlWhere, String sqlOrderBy) {
-    String from = globalRecordTable;
-    if (sqlWhere != null) {
-      from = from + " WHERE " + sqlWhere;
-    }
-    return streamResult(ctx, null, from, sqlOrderBy, "items",
+    return streamResult(ctx, globalRecordTable, sqlWhere, new Keyset("id", "id", true),
+        sqlOrderBy, "items", getFetchSize(FETCH_RECORDS),
         row -> Future.succeededFuture(ClusterBuilder.encodeRecord(row)));
   }
 
@@ -624,28 +1362,60 @@ public class Storage {
   }
 
   Future<JsonObject> getClusterById(SqlConnection connection, UUID clusterId) {
-    // get all records part of cluster and join with cluster_meta to get datestamp
-    return connection.preparedQuery("SELECT * FROM " + globalRecordTable
+    return getClustersByIds(connection, List.of(clusterId)).map(clusters -> clusters.get(0));
+  }
+
+  /**
+   * Get clusters by cluster identifiers.
+   *
+   * <p>Records and match values for all clusters are fetched with one query each.
+   * @param connection SQL connection
+   * @param clusterIds cluster identifiers
+   * @return cluster objects in the same order as clusterIds
+   */
+  Future<List<JsonObject>> getClustersByIds(SqlConnection connection, List<UUID> clusterIds) {
+    Map<UUID, ClusterBuilder> builders = new LinkedHashMap<>();
+    Map<UUID, JsonArray> records = new HashMap<>();
+    Map<UUID, JsonArray> matchValues = new HashMap<>();
+    for (UUID clusterId : clusterIds) {
+      builders.put(clusterId, new ClusterBuilder(clusterId));
+      records.put(clusterId, new JsonArray());
+      matchValues.put(clusterId, new JsonArray());
+    }
+    Tuple tuple = Tuple.tuple().addArrayOfUUID(builders.keySet().toArray(new UUID[0]));
+    // get all records part of clusters and join with cluster_meta to get datestamp
+    return connection.preparedQuery("SELECT *, " + clusterRecordTable + ".cluster_id AS cid"
+            + " FROM " + globalRecordTable
             + " LEFT JOIN " + clusterRecordTable + " ON id = record_id"
             + " LEFT JOIN " + clusterMetaTable + " ON "
             + clusterMetaTable + ".cluster_id = " + clusterRecordTable + ".cluster_id"
-            + " WHERE " + clusterRecordTable + ".cluster_id = $1")
-        .execute(Tuple.of(clusterId))
-        .map(rowSet -> {
-          ClusterBuilder cb = new ClusterBuilder(clusterId);
-          RowIterator<Row> iterator = rowSet.iterator();
-          if (iterator.hasNext()) {
-            Row row = iterator.next();
-            cb.datestamp(row.getLocalDateTime("datestamp"));
+            + " WHERE " + clusterRecordTable + ".cluster_id = ANY($1::uuid[])")
+        .execute(tuple)
+        .compose(rowSet -> {
+          for (Row row : rowSet) {
+            UUID clusterId = row.getUUID("cid");
+            JsonArray clusterRecords = records.get(clusterId);
+            LocalDateTime datestamp = row.getLocalDateTime("datestamp");
+            if (clusterRecords.isEmpty() && datestamp != null) {
+              builders.get(clusterId).datestamp(datestamp);
+            }
+            clusterRecords.add(ClusterBuilder.encodeRecord(row));
           }
-          cb.records(rowSet);
-          return cb;
+          return connection.preparedQuery("SELECT cluster_id, match_value FROM "
+                  + clusterValueTable + " WHERE cluster_id = ANY($1::uuid[])")
+              .execute(tuple);
         })
-        .compose(cb -> connection.preparedQuery("SELECT * FROM " + clusterValueTable
-              + " WHERE cluster_id = $1")
-            .execute(Tuple.of(clusterId))
-            .map(cb::matchValues))
-        .map(ClusterBuilder::build);
+        .map(rowSet -> {
+          for (Row row : rowSet) {
+            matchValues.get(row.getUUID("cluster_id")).add(row.getString("match_value"));
+          }
+          List<JsonObject> clusters = new ArrayList<>(builders.size());
+          builders.forEach((clusterId, cb) -> clusters.add(cb
+              .records(records.get(clusterId))
+              .matchValues(matchValues.get(clusterId))
+              .build()));
+          return clusters;
+        });
   }
 
   /**
@@ -668,14 +1438,34 @@ public class Storage {
     }
     String from = clusterRecordTable
         + joinClusterValue
-        + joinGlobal
-        + " WHERE " + clusterRecordTable + ".match_key_config_id = $1";
-    if (sqlWhere != null) {
-      from = from + " AND (" + sqlWhere + ")";
+        + joinGlobal;
+    String clusterId = clusterRecordTable + ".cluster_id";
+    return getLayout().compose(layout -> {
+      String where = clusterRecordTable + ".match_key_config_id = $1";
+      if (sqlWhere != null) {
+        where = where + " AND (" + (layout.hashedValues() ? hashMatchValues(sqlWhere) : sqlWhere)
+            + ")";
+      }
+      int fetchSize = getFetchSize(FETCH_CLUSTERS);
+      return streamResult(ctx, clusterId, Tuple.of(matchKeyId), from, where,
+          new Keyset(clusterId, "cluster_id", true), sqlOrderBy, "items",
+          fetchSize, fetchSize, (connection, rows) -> getClustersByIds(connection,
+              rows.stream().map(row -> row.getUUID("cluster_id")).toList()));
+    });
+  }
+
+  /**
+   * Make match value terms of a SQL WHERE clause use the match value hash index.
+   * @param sqlWhere SQL WHERE clause; null for none
+   * @return clause with each term also comparing the hash
+   */
+  static String hashMatchValues(String sqlWhere) {
+    if (sqlWhere == null) {
+      return null;
     }
-    return streamResult(ctx, clusterRecordTable + ".cluster_id", Tuple.of(matchKeyId),
-        from, sqlOrderBy, "items",
-        row -> getClusterById(row.getUUID("cluster_id")));
+    return MATCH_VALUE_WHERE.matcher(sqlWhere).replaceAll(m -> Matcher.quoteReplacement(
+        "(" + CLUSTER_VALUES_TABLE + ".match_hash = md5(" + m.group(1)
+            + ")::uuid AND " + m.group() + ")"));
   }
 
   /**
@@ -711,7 +1501,7 @@ public class Storage {
         "INSERT INTO " + matchKeyConfigTable + " (id, matcher, method, params, update)"
             + " VALUES ($1, $2, $3, $4, $5)")
         .execute(Tuple.of(id, matcher, method, params, update))
-        .mapEmpty();
+        .compose(res -> configChanged(ConfigChangeListener.MATCH_KEY, null));
   }
 
   /**
@@ -729,7 +1519,8 @@ public class Storage {
             "UPDATE " + matchKeyConfigTable
                 + " SET matcher = $2, method = $3, params = $4, update = $5 WHERE id = $1")
         .execute(Tuple.of(id, matcher, method, params, update))
-        .map(res -> res.rowCount() > 0);
+        .compose(res -> configChanged(ConfigChangeListener.MATCH_KEY, null)
+            .map(res.rowCount() > 0));
   }
 
   /**
@@ -771,7 +1562,8 @@ public class Storage {
         connection.preparedQuery(
                 "DELETE FROM " + matchKeyConfigTable + " WHERE id = $1")
             .execute(Tuple.of(id))
-            .map(res -> res.rowCount() > 0));
+            .compose(res -> configChanged(ConfigChangeListener.MATCH_KEY, null)
+                .map(res.rowCount() > 0)));
   }
 
   /**
@@ -782,11 +1574,8 @@ public class Storage {
    * @return async result
    */
   public Future<Void> getMatchKeyConfigs(RoutingContext ctx, String sqlWhere, String sqlOrderBy) {
-    String from = matchKeyConfigTable;
-    if (sqlWhere != null) {
-      from = from + " WHERE " + sqlWhere;
-    }
-    return streamResult(ctx, null, from, sqlOrderBy, "matchKeys",
+    return streamResult(ctx, matchKeyConfigTable, sqlWhere, new Keyset("id", "id", false),
+        sqlOrderBy, "matchKeys", getFetchSize(FETCH_MATCHKEYS),
         row -> Future.succeededFuture(new JsonObject()
             .put("id", row.getString("id"))
             .put("matcher", row.getString("matcher"))
@@ -796,86 +1585,22 @@ public class Storage {
         ));
   }
 
-  Future<JsonObject> recalculateMatchKeyValueTable(SqlConnection connection,
-      ModuleExecutable matcher, MatchKeyMethod method, String matchKeyConfigId) {
-
-    String query = "SELECT * FROM " + globalRecordTable;
-    AtomicInteger totalRecords = new AtomicInteger();
-    return connection.prepare(query).compose(pq ->
-        connection.begin().compose(tx -> {
-          RowStream<Row> stream = pq.createStream(sqlStreamFetchSize);
-          Promise<JsonObject> promise = Promise.promise();
-          stream.handler(row -> {
-            stream.pause();
-            totalRecords.incrementAndGet();
-            UUID globalId = row.getUUID("id");
-            if (matcher != null) {
-              updateMatchKeyValues(connection, globalId, matchKeyConfigId,
-                  matcher.executeAsCollection(row.getJsonObject("payload")))
-                  .onFailure(e -> log.error(e.getMessage(), e))
-                  .onComplete(e -> stream.resume());
-            } else {
-              Set<String> keys = new HashSet<>();
-              method.getKeys(row.getJsonObject("payload"), keys);
-              updateMatchKeyValues(connection, globalId, matchKeyConfigId, keys)
-                  .onFailure(e -> log.error(e.getMessage(), e))
-                  .onComplete(e -> stream.resume());
-            }
-          });
-          stream.endHandler(end -> {
-            tx.commit();
-            promise.complete(new JsonObject().put("totalRecords", totalRecords.get()));
-          });
-          stream.exceptionHandler(e -> {
-            log.error(e.getMessage(), e);
-            tx.commit();
-            promise.fail(e);
-          });
-          return promise.future();
-        })
-    );
-  }
-
   /**
    * Initialize match key (populate clusters).
+   *
+   * <p>Existing clusters of the match key are replaced by clusters computed offline.
    * @param vertx Vert.x handle
    * @param id match key id (user specified)
-   * @return statistics
+   * @return statistics; null if match key is not found
    */
   public Future<JsonObject> initializeMatchKey(Vertx vertx, String id) {
-    return pool.withConnection(connection ->
-        connection.preparedQuery(
-                "SELECT * FROM " + matchKeyConfigTable + " WHERE id = $1")
-            .execute(Tuple.of(id))
-            .compose(res -> {
-              RowIterator<Row> iterator = res.iterator();
-              if (!iterator.hasNext()) {
-                return Future.succeededFuture();
-              }
-              Row row = iterator.next();
-              String matcherProp = row.getString("matcher");
-              if (matcherProp != null) {
-                ModuleInvocation invocation = new ModuleInvocation(matcherProp);
-                return selectCodeModuleEntity(connection, invocation.getModuleName())
-                  .compose(entity -> {
-                    if (entity == null) {
-                      return Future.failedFuture(
-                        "Module '" + invocation.getModuleName()
-                          + "' does not exist for '" + invocation + "'");
-                    }
-                    return ModuleCache.getInstance().lookup(vertx, tenant, entity);
-                  })
-                  .compose(module -> recalculateMatchKeyValueTable(connection,
-                      new ModuleExecutable(module, invocation), null, id));
-              } else {
-                String method = row.getString("method");
-                JsonObject params = row.getJsonObject("params");
-                return MatchKeyMethod.get(vertx, tenant, id, method, params)
-                    .compose(matchKeyMethod ->
-                        recalculateMatchKeyValueTable(connection, null, matchKeyMethod, id));
-              }
-            })
-    );
+    return selectMatchKeyConfig(id).compose(matchKeyConfig -> {
+      if (matchKeyConfig == null) {
+        return Future.succeededFuture();
+      }
+      return getMatchKeyFunction(vertx, matchKeyConfig)
+          .compose(function -> new ClusterRebuild(this, vertx, function).run());
+    });
   }
 
   class StatsTrack {
@@ -972,10 +1697,11 @@ public class Storage {
   public Future<Void> insertCodeModuleEntity(CodeModuleEntity module) {
 
     return pool.preparedQuery(
-            "INSERT INTO " + moduleTable + " (id, type, url, function, script)"
-                + " VALUES ($1, $2, $3, $4, $5)")
-        .execute(module.asTuple())
-        .mapEmpty();
+            "INSERT INTO " + moduleTable
+                + " (id, type, url, function, script, convention, source)"
+                + " VALUES ($1, $2, $3, $4, $5, $6, $7)")
+        .execute(module.asTuple().addString(module.getSource()))
+        .compose(res -> configChanged(ConfigChangeListener.MODULE, module.getId()));
   }
 
   /**
@@ -987,9 +1713,47 @@ public class Storage {
 
     return pool.preparedQuery(
             "UPDATE " + moduleTable
-                + " SET type = $2, url = $3, function = $4, script = $5 WHERE id = $1")
-        .execute(module.asTuple())
-        .map(res -> res.rowCount() > 0);
+                + " SET type = $2, url = $3, function = $4, script = $5, convention = $6,"
+                + " source = $7 WHERE id = $1")
+        .execute(module.asTuple().addString(module.getSource()))
+        .compose(res -> configChanged(ConfigChangeListener.MODULE, module.getId())
+            .map(res.rowCount() > 0));
+  }
+
+  /**
+   * Store code fetched for code module.
+   * @param id code module id
+   * @param source fetched code
+   * @return async result
+   */
+  public Future<Void> updateCodeModuleSource(String id, String source) {
+    return pool.preparedQuery("UPDATE " + moduleTable + " SET source = $2 WHERE id = $1")
+        .execute(Tuple.of(id, source))
+        .mapEmpty();
+  }
+
+  /**
+   * Get module instance for code module entity.
+   *
+   * <p>Code fetched for a module given by URL is stored with the entity, so that it
+   * is not fetched again, e.g. after a restart.
+   * @param vertx Vert.x handle
+   * @param entity code module entity
+   * @return async result with module
+   */
+  public Future<Module> lookupModule(Vertx vertx, CodeModuleEntity entity) {
+    return ModuleJavaScript.resolveSource(vertx, entity)
+        .compose(resolved -> {
+          if (resolved.getSource() == null || entity.getSource() != null) {
+            return Future.succeededFuture(resolved);
+          }
+          return updateCodeModuleSource(entity.getId(), resolved.getSource())
+              .map(x -> {
+                ConfigCache.getInstance().invalidateCodeModuleEntity(tenant, entity.getId());
+                return resolved;
+              });
+        })
+        .compose(resolved -> ModuleCache.getInstance().lookup(vertx, tenant, resolved));
   }
 
   /**
@@ -1001,6 +1765,16 @@ public class Storage {
     return pool.withConnection(conn -> selectCodeModuleEntity(conn, id));
   }
 
+  /**
+   * Get code module entity from cache.
+   * @param id code module id
+   * @return code module entity if found; null if not found
+   */
+  public Future<CodeModuleEntity> getCodeModuleEntity(String id) {
+    return ConfigCache.getInstance().getCodeModuleEntity(tenant, id,
+        () -> selectCodeModuleEntity(id));
+  }
+
   /**
    * Select code module entity from storage.
    * @param id code module id; null takes any first config
@@ -1035,7 +1809,8 @@ public class Storage {
         connection.preparedQuery(
                 "DELETE FROM " + moduleTable + " WHERE id = $1")
             .execute(Tuple.of(id))
-            .map(res -> res.rowCount() > 0));
+            .compose(res -> configChanged(ConfigChangeListener.MODULE, id)
+                .map(res.rowCount() > 0)));
   }
 
   /**
@@ -1047,11 +1822,8 @@ public class Storage {
    */
   public Future<Void> selectCodeModuleEntities(RoutingContext ctx,
       String sqlWhere, String sqlOrderBy) {
-    String from = moduleTable;
-    if (sqlWhere != null) {
-      from = from + " WHERE " + sqlWhere;
-    }
-    return streamResult(ctx, null, from, sqlOrderBy, "modules",
+    return streamResult(ctx, moduleTable, sqlWhere, new Keyset("id", "id", false),
+        sqlOrderBy, "modules", getFetchSize(FETCH_MODULES),
         row -> Future.succeededFuture(CodeModuleEntity.CodeModuleBuilder.asJson(row)));
   }
 
@@ -1069,6 +1841,7 @@ public class Storage {
       "INSERT INTO " + oaiConfigTable + " (id, config)"
           + " VALUES ($1, $2) ON CONFLICT(id) DO UPDATE SET config = $2")
       .execute(Tuple.of("1", config))
+      .compose(res -> configChanged(ConfigChangeListener.OAI_CONFIG, null))
       .mapEmpty();
   }
 
@@ -1091,13 +1864,22 @@ public class Storage {
         });
   }
 
+  /**
+   * Get OAI config from cache.
+   * @return OAI config; null if not found
+   */
+  public Future<JsonObject> getOaiConfig() {
+    return ConfigCache.getInstance().getOaiConfig(tenant, this::selectOaiConfig);
+  }
+
   /**
    * Delete OAI config.
    * @return async void result
    */
   public Future<Void> deleteOaiConfig() {
     return pool.preparedQuery("DELETE FROM " + oaiConfigTable + " WHERE id = $1")
-        .execute(Tuple.of("1")).mapEmpty();
+        .execute(Tuple.of("1"))
+        .compose(res -> configChanged(ConfigChangeListener.OAI_CONFIG, null));
   }
 
   // end oai config
@@ -1112,15 +1894,28 @@ public class Storage {
     return n;
   }
 
-  static void resultFooter(RoutingContext ctx, RowSet<Row> rowSet, List<String[]> facets,
+  /**
+   * Counts of a result: total count followed by one count per facet.
+   * @param counts counts
+   * @param estimated whether counts are planner estimates
+   */
+  record ResultCount(List<Integer> counts, boolean estimated) {
+  }
+
+  static void resultFooter(RoutingContext ctx, ResultCount resultCount, List<String[]> facets,
       String diagnostic) {
+    resultFooter(ctx, resultCount, facets, diagnostic, null);
+  }
+
+  static void resultFooter(RoutingContext ctx, ResultCount resultCount, List<String[]> facets,
+      String diagnostic, String nextCursor) {
 
     JsonObject resultInfo = new JsonObject();
     JsonArray facetArray = new JsonArray();
-    if (rowSet != null) {
+    if (resultCount != null) {
       int pos = 0;
-      Row row = rowSet.iterator().next();
-      int count = row.getInteger(pos);
+      List<Integer> counts = resultCount.counts();
+      int count = counts.get(pos);
       for (String [] facetEntry : facets) {
         pos++;
         JsonObject facetObj = null;
@@ -1142,9 +1937,13 @@ public class Storage {
         JsonArray facetValues = facetObj.getJsonArray("facetValues");
         facetValues.add(new JsonObject()
             .put("value", facetValue)
-            .put("count", row.getInteger(pos)));
+            .put("count", counts.get(pos)));
       }
       resultInfo.put("totalRecords", count);
+      resultInfo.put("estimated", resultCount.estimated());
+    }
+    if (nextCursor != null) {
+      resultInfo.put("nextCursor", nextCursor);
     }
     JsonArray diagnostics = new JsonArray();
     if (diagnostic != null) {
@@ -1156,11 +1955,61 @@ public class Storage {
     ctx.response().end();
   }
 
+  /**
+   * Convert a row result handler to a batch handler.
+   * @param handler handler producing one result per row
+   * @return batch handler
+   */
+  static BiFunction<SqlConnection, List<Row>, Future<List<JsonObject>>> perRow(
+      Function<Row, Future<JsonObject>> handler) {
+    return (connection, rows) -> handler.apply(rows.get(0)).map(List::of);
+  }
+
+  Future<Void> writeBatch(RoutingContext ctx, SqlConnection sqlConnection, List<Row> rows,
+      AtomicBoolean first, BiFunction<SqlConnection, List<Row>, Future<List<JsonObject>>> handler) {
+
+    if (rows.isEmpty() || ctx.response().closed()) {
+      return Future.succeededFuture();
+    }
+    return handler.apply(sqlConnection, rows)
+        .map(responses -> {
+          for (JsonObject response : responses) {
+            if (!first.getAndSet(false)) {
+              ctx.response().write(",");
+            }
+            ctx.response().write(copyWithoutNulls(response).encode());
+          }
+          return (Void) null;
+        })
+        .recover(e -> {
+          log.info("failure {}", e.getMessage(), e);
+          return Future.succeededFuture();
+        });
+  }
+
+  /**
+   * Resume row stream once the HTTP response can take more.
+   *
+   * <p>This keeps memory bounded when the client reads slower than rows are produced.
+   * @param response HTTP response that rows are written to
+   * @param stream paused row stream
+   */
+  static void resumeWhenDrained(HttpServerResponse response, RowStream<Row> stream) {
+    if (response.writeQueueFull() && !response.closed()) {
+      response.drainHandler(x -> stream.resume());
+    } else {
+      stream.resume();
+    }
+  }
+
   @java.lang.SuppressWarnings({"squid:S107"})  // too many arguments
   Future<Void> streamResult(RoutingContext ctx, SqlConnection sqlConnection,
-      String query, String cnt, Tuple tuple, String property, List<String[]> facets,
-      Function<Row, Future<JsonObject>> handler) {
+      String query, Tuple tuple, Function<SqlConnection, Future<ResultCount>> counter,
+      Keyset keyset, String property, List<String[]> facets, int fetchSize, int batchSize,
+      BiFunction<SqlConnection, List<Row>, Future<List<JsonObject>>> handler) {
 
+    RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
+    int limit = params.queryParameter("limit").getInteger();
     return sqlConnection.prepare(query)
         .compose(pq ->
             sqlConnection.begin().compose(tx -> {
@@ -1168,31 +2017,38 @@ public class Storage {
               ctx.response().putHeader("Content-Type", "application/json");
               ctx.response().write("{ \"" + property + "\" : [");
               AtomicBoolean first = new AtomicBoolean(true);
-              RowStream<Row> stream = pq.createStream(sqlStreamFetchSize, tuple);
+              AtomicInteger rowCount = new AtomicInteger();
+              AtomicReference<Object> lastKey = new AtomicReference<>();
+              List<Row> batch = new ArrayList<>(batchSize);
+              RowStream<Row> stream = pq.createStream(fetchSize, tuple);
+              // a client gone away would never drain, so let the stream run to its end
+              ctx.response().closeHandler(x -> stream.resume());
               stream.handler(row -> {
+                rowCount.incrementAndGet();
+                if (keyset != null) {
+                  lastKey.set(row.getValue(keyset.name()));
+                }
+                batch.add(row);
+                if (batch.size() < batchSize) {
+                  return;
+                }
                 stream.pause();
-                Future<JsonObject> f = handler.apply(row);
-                f.onSuccess(response -> {
-                  if (!first.getAndSet(false)) {
-                    ctx.response().write(",");
-                  }
-                  ctx.response().write(copyWithoutNulls(response).encode());
-                  stream.resume();
-                });
-                f.onFailure(e -> {
-                  log.info("failure {}", e.getMessage(), e);
-                  stream.resume();
-                });
+                List<Row> rows = new ArrayList<>(batch);
+                batch.clear();
+                writeBatch(ctx, sqlConnection, rows, first, handler)
+                    .onComplete(x -> resumeWhenDrained(ctx.response(), stream));
               });
               stream.endHandler(end -> {
-                Future<RowSet<Row>> cntFuture = cnt != null
-                    ? sqlConnection.preparedQuery(cnt).execute(tuple)
-                    : Future.succeededFuture(null);
-                cntFuture
-                    .onSuccess(cntRes -> resultFooter(ctx, cntRes, facets, null))
+                String nextCursor = rowCount.get() == limit && lastKey.get() != null
+                    ? new Cursor(lastKey.get().toString()).encode() : null;
+                writeBatch(ctx, sqlConnection, batch, first, handler)
+                    .compose(x -> counter != null
+                        ? counter.apply(sqlConnection)
+                        : Future.<ResultCount>succeededFuture(null))
+                    .onSuccess(cntRes -> resultFooter(ctx, cntRes, facets, null, nextCursor))
                     .onFailure(f -> {
                       log.error(f.getMessage(), f);
-                      resultFooter(ctx, null, facets, f.getMessage());
+                      resultFooter(ctx, null, facets, f.getMessage(), nextCursor);
                     })
                     .eventually(x -> tx.commit().compose(y -> sqlConnection.close()));
               });
@@ -1206,56 +2062,156 @@ public class Storage {
         );
   }
 
-  Future<Void> streamResult(RoutingContext ctx, String distinct,
-      String from, String orderByClause, String property, Function<Row,
-      Future<JsonObject>> handler) {
+  @java.lang.SuppressWarnings({"squid:S107"})  // too many arguments
+  Future<Void> streamResult(RoutingContext ctx, String from, String where, Keyset keyset,
+      String orderByClause, String property, int fetchSize,
+      Function<Row, Future<JsonObject>> handler) {
 
-    return streamResult(ctx, distinct, distinct, Tuple.tuple(), List.of(from),
-        Collections.emptyList(), orderByClause, property, handler);
+    return streamResult(ctx, null, Tuple.tuple(), from, where, keyset, orderByClause,
+        property, fetchSize, 1, perRow(handler));
   }
 
+  @java.lang.SuppressWarnings({"squid:S107"})  // too many arguments
   Future<Void> streamResult(RoutingContext ctx, String distinct,
-      Tuple tuple, String from, String orderByClause, String property,
-      Function<Row, Future<JsonObject>> handler) {
+      Tuple tuple, String from, String where, Keyset keyset, String orderByClause,
+      String property, int fetchSize, int batchSize,
+      BiFunction<SqlConnection, List<Row>, Future<List<JsonObject>>> handler) {
 
-    return streamResult(ctx, distinct, distinct, tuple, List.of(from),
-        Collections.emptyList(), orderByClause, property, handler);
+    return streamResult(ctx, distinct, distinct, tuple, List.of(from), where, keyset,
+        Collections.emptyList(), orderByClause, property, fetchSize, batchSize, handler);
   }
 
+  /**
+   * Stream result, optionally paged by cursor.
+   *
+   * <p>Rows are passed to the handler in batches. The handler gets the connection of the
+   * stream, so that it may look up data for a whole batch of rows with a few queries.
+   *
+   * <p>With a keyset and a cursor parameter, the result is ordered by the key and
+   * continues after the key of the previous page, so that deep pages do not have to
+   * skip over rows like offset does. Cursor {@link Cursor#FIRST} starts at the first page.
+   * @param where SQL WHERE clause for first from entry; null for none
+   * @param keyset unique key of result; null if cursor is not supported
+   */
   @java.lang.SuppressWarnings({"squid:S107"})  // too many arguments
   Future<Void> streamResult(RoutingContext ctx, String distinctMain,
-      String distinctCount, Tuple tuple, List<String> fromList, List<String[]> facets,
-      String orderByClause, String property, Function<Row, Future<JsonObject>> handler) {
+      String distinctCount, Tuple tuple, List<String> fromList, String where, Keyset keyset,
+      List<String[]> facets, String orderByClause, String property, int fetchSize,
+      int batchSize, BiFunction<SqlConnection, List<Row>, Future<List<JsonObject>>> handler) {
 
     RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
     Integer offset = params.queryParameter("offset").getInteger();
     Integer limit = params.queryParameter("limit").getInteger();
     String count = params.queryParameter("count").getString();
+    String cursor = Util.getParameterString(params.queryParameter("cursor"));
+    Keyset pageKeyset = null;
+    String mainWhere = where;
+    Tuple mainTuple = tuple;
+    if (cursor != null) {
+      if (keyset == null || orderByClause != null) {
+        return Future.failedFuture(new IllegalArgumentException(
+            "cursor cannot be combined with sortby"));
+      }
+      if (offset > 0) {
+        return Future.failedFuture(new IllegalArgumentException(
+            "cursor cannot be combined with offset"));
+      }
+      pageKeyset = keyset;
+      if (!Cursor.FIRST.equals(cursor)) {
+        mainTuple = Tuple.tuple();
+        for (int i = 0; i < tuple.size(); i++) {
+          mainTuple.addValue(tuple.getValue(i));
+        }
+        try {
+          mainTuple.addValue(pageKeyset.value(Cursor.decode(cursor)));
+        } catch (IllegalArgumentException e) {
+          return Future.failedFuture(new IllegalArgumentException("Bad cursor"));
+        }
+        String predicate = pageKeyset.column() + " > $" + mainTuple.size();
+        mainWhere = where != null ? where + " AND " + predicate : predicate;
+      }
+    }
     String query = "SELECT " + (distinctMain != null ? "DISTINCT ON (" + distinctMain + ")" : "")
-        + " * FROM " + fromList.get(0)
-        + (orderByClause == null ?  "" : " ORDER BY " + orderByClause)
+        + " * FROM " + fromList.get(0) + (mainWhere != null ? " WHERE " + mainWhere : "")
+        + (orderByClause != null ? " ORDER BY " + orderByClause
+        : pageKeyset != null ? " ORDER BY " + pageKeyset.column() : "")
         + " LIMIT " + limit + " OFFSET " + offset;
-    boolean exact = "exact".equals(count);
     log.info("query={}", query);
-    StringBuilder countQuery = new StringBuilder("SELECT");
-    if (exact) {
-      int pos = 0;
-      for (String from : fromList) {
-        if (pos > 0) {
-          countQuery.append(",\n");
-        }
-        countQuery.append("(SELECT COUNT("
-            + (distinctCount != null ? "DISTINCT " + distinctCount : "*")
-            + ") FROM " + from + ") AS cnt" + pos);
-        pos++;
-      }
-      log.info("cnt={}", countQuery);
+    List<String> countFromList = new ArrayList<>(fromList);
+    if (where != null) {
+      countFromList.set(0, fromList.get(0) + " WHERE " + where);
     }
-    String countQueryString = exact ? countQuery.toString() : null;
+    Function<SqlConnection, Future<ResultCount>> counter = switch (count) {
+      case "exact" -> connection -> exactCount(connection, distinctCount, countFromList, tuple);
+      case "estimate" -> connection ->
+          estimateCount(connection, distinctCount, countFromList, tuple)
+              .compose(estimate -> estimate != null ? Future.succeededFuture(estimate)
+                  : exactCount(connection, distinctCount, countFromList, tuple));
+      default -> null;
+    };
+    Tuple queryTuple = mainTuple;
+    Keyset cursorKeyset = pageKeyset;
     return pool.getConnection()
-        .compose(sqlConnection -> streamResult(ctx, sqlConnection, query, countQueryString,
-            tuple, property, facets, handler)
+        .compose(sqlConnection -> streamResult(ctx, sqlConnection, query, queryTuple,
+            counter, cursorKeyset, property, facets, fetchSize, batchSize, handler)
             .onFailure(x -> sqlConnection.close()));
   }
 
+  static Future<ResultCount> exactCount(SqlConnection connection, String distinctCount,
+      List<String> fromList, Tuple tuple) {
+
+    StringBuilder countQuery = new StringBuilder("SELECT");
+    int pos = 0;
+    for (String from : fromList) {
+      if (pos > 0) {
+        countQuery.append(",\n");
+      }
+      countQuery.append("(SELECT COUNT("
+          + (distinctCount != null ? "DISTINCT " + distinctCount : "*")
+          + ") FROM " + from + ") AS cnt" + pos);
+      pos++;
+    }
+    log.info("cnt={}", countQuery);
+    return connection.preparedQuery(countQuery.toString()).execute(tuple).map(rowSet -> {
+      Row row = rowSet.iterator().next();
+      List<Integer> counts = new ArrayList<>();
+      for (int i = 0; i < row.size(); i++) {
+        counts.add(row.getInteger(i));
+      }
+      return new ResultCount(counts, false);
+    });
+  }
+
+  /**
+   * Estimate counts from the row estimates of the query planner.
+   * @return estimated counts; null if any estimate is below countEstimateThreshold
+   */
+  static Future<ResultCount> estimateCount(SqlConnection connection, String distinctCount,
+      List<String> fromList, Tuple tuple) {
+
+    List<Integer> counts = new ArrayList<>();
+    Future<Void> future = Future.succeededFuture();
+    for (String from : fromList) {
+      String query = "EXPLAIN (FORMAT JSON) SELECT "
+          + (distinctCount != null ? "DISTINCT " + distinctCount : "*") + " FROM " + from;
+      future = future.compose(x -> connection.preparedQuery(query).execute(tuple))
+          .map(rowSet -> {
+            Object plan = rowSet.iterator().next().getValue(0);
+            JsonArray plans = plan instanceof JsonArray a ? a : new JsonArray(plan.toString());
+            long rows = plans.getJsonObject(0).getJsonObject("Plan").getLong("Plan Rows");
+            counts.add((int) Math.min(rows, Integer.MAX_VALUE));
+            return null;
+          });
+    }
+    return future.map(x -> {
+      log.info("estimated counts={}", counts);
+      for (int estimate : counts) {
+        if (estimate < countEstimateThreshold) {
+          return null;
+        }
+      }
+      return new ResultCount(counts, true);
+    });
+  }
+
 }
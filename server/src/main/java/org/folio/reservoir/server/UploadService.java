@@ -54,6 +54,25 @@ public class UploadService {
     try {
       enforcePermissionsBySource(ctx);
       IngestParams params = new IngestParams(ctx.request());
+      if (params.bulk && params.ingest && !params.raw) {
+        // body is held back until the source is known to have no records
+        HttpServerRequest request = ctx.request();
+        request.pause();
+        return new Storage(ctx).checkBulkSource(params.sourceId, params.sourceVersion)
+            .compose(x -> {
+              Future<Void> future = uploadRecords(ctx, params);
+              request.resume();
+              return future;
+            });
+      }
+      return uploadRecords(ctx, params);
+    } catch (Exception e) {
+      return Future.failedFuture(e);
+    }
+  }
+
+  private Future<Void> uploadRecords(RoutingContext ctx, IngestParams params) {
+    try {
       HttpServerRequest request = ctx.request();
       Future<IngestStatsByFile> future;
       if (params.contentType != null && params.contentType.startsWith("multipart/form-data")) {
@@ -73,6 +92,11 @@ public class UploadService {
         future = uploadContent(ctx, request, params, params.fileName, params.contentType)
             .map(IngestStatsByFile::new);
       }
+      if (params.bulk && params.ingest && !params.raw) {
+        future = future.compose(res -> new Storage(ctx)
+            .clusterGlobalRecords(ctx.vertx(), params.sourceId, params.sourceVersion)
+            .map(res));
+      }
       return future.onSuccess(res ->
         HttpResponse.responseJson(ctx, 200).end(res.toJson().encode()))
         .mapEmpty();
@@ -95,7 +119,9 @@ public class UploadService {
         return promise.future();
       }
       Storage storage = new Storage(ctx);
-      int queueSize = storage.pool.getPoolOptions().getMaxSize() * 10;
+      // keep room for a batch being filled while the previous one is being ingested
+      int queueSize = Math.max(storage.pool.getPoolOptions().getMaxSize() * 10,
+          params.batchSize * 2);
       log.info("{} uploading. {} queuSize: {} tenant: {}",
           params.getSummary(fileName), params.getDetails(contentType),
           queueSize, storage.getTenant());
@@ -110,6 +110,15 @@ public class ClusterBuilder {
   public ClusterBuilder matchValues(RowSet<Row> rows) {
     JsonArray matchValues = new JsonArray();
     rows.forEach(row -> matchValues.add(row.getString("match_value")));
+    return matchValues(matchValues);
+  }
+
+  /**
+   * Set matchValues from JsonArray.
+   * @param matchValues match values
+   * @return this
+   */
+  public ClusterBuilder matchValues(JsonArray matchValues) {
     clusterJson.put(MATCH_VALUES_LABEL, matchValues);
     return this;
   }
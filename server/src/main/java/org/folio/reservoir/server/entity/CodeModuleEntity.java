@@ -13,6 +13,8 @@ public class CodeModuleEntity {
   @Deprecated(forRemoval = true, since = "1.0")
   private final String function;
   private final String script;
+  private final String convention;
+  private final String source;
 
   /**
    * Create code module entity from arguments.
@@ -21,11 +23,27 @@ public class CodeModuleEntity {
    * @param function function exported by the module
    */
   public CodeModuleEntity(String id, String type, String url, String function, String script) {
+    this(id, type, url, function, script, null, null);
+  }
+
+  /**
+   * Create code module entity from arguments.
+   * @param id local id
+   * @param url url to the module
+   * @param function function exported by the module
+   * @param script inline code script
+   * @param convention calling convention; null for default
+   * @param source code fetched from url; null if not fetched yet
+   */
+  public CodeModuleEntity(String id, String type, String url, String function, String script,
+      String convention, String source) {
     this.id = id;
     this.type = type;
     this.url = url;
     this.function = function;
     this.script = script;
+    this.convention = convention;
+    this.source = source;
   }
   
   /**
@@ -68,6 +86,22 @@ public class CodeModuleEntity {
   public String getScript() {
     return script;
   }
+
+  /**
+   * Calling convention: how input is passed to functions of the module.
+   * @return the convention; null for default
+   */
+  public String getConvention() {
+    return convention;
+  }
+
+  /**
+   * Code fetched from url. Not part of JSON or equality, as it is derived from url.
+   * @return the source; null if not fetched yet
+   */
+  public String getSource() {
+    return source;
+  }
   
   private static void put(JsonObject json, boolean omitNull, String key, Object value) {
     if (omitNull && value == null) {
@@ -96,6 +130,8 @@ public class CodeModuleEntity {
     put(json, omitNull, CodeModuleBuilder.URL_FIELD, url);
     put(json, omitNull, CodeModuleBuilder.FUNCTION_FIELD, function);
     put(json, omitNull, CodeModuleBuilder.SCRIPT_FIELD, script);
+    // only when set, as earlier versions did not have it
+    put(json, true, CodeModuleBuilder.CONVENTION_FIELD, convention);
     return json;
   }
   
@@ -104,7 +140,7 @@ public class CodeModuleEntity {
    * @return Tuple object
    */
   public Tuple asTuple() {
-    return Tuple.of(id, type, url, function, script);
+    return Tuple.of(id, type, url, function, script, convention);
   }
 
 
@@ -114,7 +150,7 @@ public class CodeModuleEntity {
   
   @Override
   public int hashCode() {
-    return Objects.hash(id, type, url, function, script);
+    return Objects.hash(id, type, url, function, script, convention);
   }
 
   /* (non-Javadoc)
@@ -137,7 +173,8 @@ public class CodeModuleEntity {
         && Objects.equals(type, other.type) 
         && Objects.equals(url, other.url)
         && Objects.equals(function, other.function) 
-        && Objects.equals(script, other.script);
+        && Objects.equals(script, other.script)
+        && Objects.equals(convention, other.convention);
   }
 
   public static class CodeModuleBuilder {
@@ -153,6 +190,10 @@ public class CodeModuleEntity {
     
     public static final String SCRIPT_FIELD = "script";
 
+    public static final String CONVENTION_FIELD = "convention";
+
+    public static final String SOURCE_FIELD = "source";
+
     private final JsonObject json;
 
     public CodeModuleBuilder(String id) {
@@ -166,6 +207,7 @@ public class CodeModuleEntity {
 
     public CodeModuleBuilder(Row row) {
       json = asJson(row);
+      json.put(SOURCE_FIELD, row.getString(SOURCE_FIELD));
     }
 
     public CodeModuleBuilder type(String type) {
@@ -188,6 +230,16 @@ public class CodeModuleEntity {
       return this;
     }
 
+    public CodeModuleBuilder convention(String convention) {
+      json.put(CONVENTION_FIELD, convention);
+      return this;
+    }
+
+    public CodeModuleBuilder source(String source) {
+      json.put(SOURCE_FIELD, source);
+      return this;
+    }
+
     /**
      * Build the entity.
      * @return entity
@@ -198,7 +250,9 @@ public class CodeModuleEntity {
         json.getString(TYPE_FIELD),
         json.getString(URL_FIELD),
         json.getString(FUNCTION_FIELD),
-        json.getString(SCRIPT_FIELD)
+        json.getString(SCRIPT_FIELD),
+        json.getString(CONVENTION_FIELD),
+        json.getString(SOURCE_FIELD)
       );
     }
 
@@ -215,12 +269,17 @@ public class CodeModuleEntity {
      * @return JSON object
      */
     public static JsonObject asJson(Row row) {
-      return new JsonObject()
+      JsonObject json = new JsonObject()
         .put(ID_FIELD, row.getString(ID_FIELD))
         .put(TYPE_FIELD, row.getString(TYPE_FIELD))
         .put(URL_FIELD, row.getString(URL_FIELD))
         .put(FUNCTION_FIELD, row.getString(FUNCTION_FIELD))
         .put(SCRIPT_FIELD, row.getString(SCRIPT_FIELD));
+      String convention = row.getString(CONVENTION_FIELD);
+      if (convention != null) {
+        json.put(CONVENTION_FIELD, convention);
+      }
+      return json;
     }
 
     /**
@@ -229,12 +288,17 @@ public class CodeModuleEntity {
      * @return new JSON output
      */
     public static JsonObject asJson(JsonObject source) {
-      return new JsonObject()
+      JsonObject json = new JsonObject()
         .put(ID_FIELD, source.getString(ID_FIELD))
         .put(TYPE_FIELD, source.getString(TYPE_FIELD))
         .put(URL_FIELD, source.getString(URL_FIELD))
         .put(FUNCTION_FIELD, source.getString(FUNCTION_FIELD))
         .put(SCRIPT_FIELD, source.getString(SCRIPT_FIELD));
+      String convention = source.getString(CONVENTION_FIELD);
+      if (convention != null) {
+        json.put(CONVENTION_FIELD, convention);
+      }
+      return json;
     }
 
 
@@ -152,6 +152,31 @@ public class MatchKeyJavaScriptTest {
         }));
   }
 
+  @Test
+  public void testObjectConvention(TestContext context) {
+    Collection<String> keys = new HashSet<>();
+    MatchKeyMethod m = new MatchKeyJavaScript();
+    m.configure(vertx, new JsonObject()
+            .put("convention", "object")
+            .put("script", "x => x.identifiers.map(i => i.isbn)"))
+        .onComplete(context.asyncAssertSuccess(x -> {
+          m.getKeys(new JsonObject().put("identifiers", new JsonArray()
+              .add(new JsonObject().put("isbn", "1"))
+              .add(new JsonObject().put("isbn", "2"))), keys);
+          assertThat(keys, containsInAnyOrder("1", "2"));
+        }));
+  }
+
+  @Test
+  public void testUnknownConvention(TestContext context) {
+    MatchKeyMethod m = new MatchKeyJavaScript();
+    m.configure(vertx, new JsonObject()
+            .put("convention", "xml")
+            .put("script", "x => x"))
+        .onComplete(context.asyncAssertFailure(e ->
+            assertThat(e.getMessage(), is("javascript: unknown convention 'xml'"))));
+  }
+
   @Test
   public void testNotFound(TestContext context) {
     MatchKeyMethod m = new MatchKeyJavaScript();
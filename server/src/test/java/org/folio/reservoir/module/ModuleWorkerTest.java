@@ -0,0 +1,67 @@
+package org.folio.reservoir.module;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.micrometer.MicrometerMetricsOptions;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+@RunWith(VertxUnitRunner.class)
+public class ModuleWorkerTest {
+
+  static Vertx vertx;
+
+  static MeterRegistry registry = new SimpleMeterRegistry();
+
+  @BeforeClass
+  public static void beforeClass() {
+    vertx = Vertx.vertx(new VertxOptions().setMetricsOptions(new MicrometerMetricsOptions()
+        .setMicrometerRegistry(registry)
+        .setEnabled(true)));
+  }
+
+  @AfterClass
+  public static void afterClass(TestContext context) {
+    vertx.close().onComplete(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testExecute(TestContext context) {
+    ModuleWorker.<String>execute(vertx, "m1", p -> p.complete(Thread.currentThread().getName()))
+        .onComplete(context.asyncAssertSuccess(name -> {
+          assertThat(name, startsWith(ModuleWorker.POOL_NAME));
+          context.assertEquals(1L, registry.get("reservoir.module.queue")
+              .tag("module", "m1").timer().count());
+          context.assertEquals(1L, registry.get("reservoir.module.execute")
+              .tag("module", "m1").timer().count());
+        }));
+  }
+
+  @Test
+  public void testExecuteThrows(TestContext context) {
+    ModuleWorker.execute(vertx, "m2", p -> {
+      throw new IllegalArgumentException("bad input");
+    }).onComplete(context.asyncAssertFailure(e ->
+        assertThat(e.getMessage(), is("bad input"))));
+  }
+
+  @Test
+  public void testPoolSize() {
+    int size = ModuleWorker.getPoolSize();
+    Assert.assertThrows(IllegalArgumentException.class, () -> ModuleWorker.setPoolSize(0));
+    ModuleWorker.setPoolSize(size + 1);
+    Assert.assertEquals(size + 1, ModuleWorker.getPoolSize());
+    ModuleWorker.setPoolSize(size);
+  }
+}
@@ -0,0 +1,274 @@
+package org.folio.reservoir.module.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.reservoir.module.Module;
+import org.folio.reservoir.server.entity.CodeModuleEntity;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(VertxUnitRunner.class)
+public class GoldrushTest {
+  private static final Logger log = LogManager.getLogger(GoldrushTest.class);
+
+  static Vertx vertx;
+
+  static final Path JS_DIR = Path.of("../js");
+
+  @BeforeClass
+  public static void beforeClass() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void afterClass(TestContext context) {
+    vertx.close().onComplete(context.asyncAssertSuccess());
+  }
+
+  static JsonObject payload(JsonObject marc) {
+    return new JsonObject().put("marc", marc);
+  }
+
+  static JsonObject field(String tag, String... subfields) {
+    JsonArray array = new JsonArray();
+    for (int i = 0; i < subfields.length; i += 2) {
+      array.add(new JsonObject().put(subfields[i], subfields[i + 1]));
+    }
+    return new JsonObject().put(tag, new JsonObject()
+        .put("ind1", " ").put("ind2", " ").put("subfields", array));
+  }
+
+  static JsonObject marc(String leader, JsonObject... fields) {
+    JsonObject marc = new JsonObject().put("fields", new JsonArray(List.of((Object[]) fields)));
+    if (leader != null) {
+      marc.put("leader", leader);
+    }
+    return marc;
+  }
+
+  /**
+   * Records from js/test/records that the JavaScript tests use.
+   */
+  static List<JsonObject> recordPayloads() throws IOException {
+    List<JsonObject> payloads = new ArrayList<>();
+    try (var files = Files.list(JS_DIR.resolve("test/records"))) {
+      for (Path file : files.sorted().toList()) {
+        if (!file.getFileName().toString().startsWith("invalid")) {
+          payloads.add(payload(new JsonObject(Files.readString(file))));
+        }
+      }
+    }
+    return payloads;
+  }
+
+  /**
+   * Records that exercise the less common branches of the algorithms.
+   */
+  static List<JsonObject> edgePayloads() {
+    return List.of(
+        payload(marc(null)),
+        payload(marc("short", field("245", "a", "A tale of two cities"))),
+        payload(marc("01234cam a2200000 i 4500",
+            new JsonObject().put("008", "850101r19751974nyu           000 0 eng d"),
+            field("245", "a", "  The  \u0152uvres  compl\u00e8tes %22de%22 Moli\u00e8re & {Co} : ",
+                "b", "tome 1 / ", "p", "Premi\u00e8re partie", "p", "Deuxi\u00e8me  partie.",
+                "p", "Troisi\u00e8me partie", "n", "Vol. 2-3", "f", "1900 - 1910",
+                "h", "[Electronic resource]"),
+            field("250", "a", " Second ed."),
+            field("260", "b", "\u00c9ditions Gallimard,", "c", "c1975."),
+            field("300", "a", "1024 p. ; 24 cm"),
+            field("100", "a", "Moli\u00e8re,"),
+            field("130", "a", "Uniform title"),
+            field("086", "a", "Y 4.G 74/7:C 73/5"),
+            field("856", "u", "http://example.com"))),
+        payload(marc("00000nam a22000000a 4500",
+            new JsonObject().put("008", "850101s1975    nyu           000 0 eng d"),
+            field("245", "h", "print"),
+            field("245", "a", "An  example", "b", "second"),
+            field("250", "a", "3rd edition, revised 2001"),
+            field("250", "a", "Other"),
+            field("264", "b", "Ace", "c", "\u00a92019"),
+            field("260", "b", "Beta", "c", "9999"),
+            field("590", "a", "Electronic reproduction. Ann Arbor, Mich."),
+            field("110", "a", "Societ\u00e0 editrice"))),
+        payload(marc("00000nam a22000000a 4500",
+            new JsonObject().put("008", "850101m0000999 nyu"),
+            field("245", "a", "Numbers 12345"),
+            field("250", "a", "ten"),
+            field("264", "c", "[19--?]"),
+            field("260", "c", "0123"),
+            field("300", "a", "1 online resource (xii, 300 p.)"),
+            new JsonObject().put("007", "cr |||||||||||"),
+            field("111", "a", "Meeting (1st : 2001)"))),
+        payload(marc("00000nam a22000000a 4500",
+            new JsonObject().put("245", new JsonObject()),
+            field("245", "a", "", "a", "Second a"),
+            field("250", "a", "12th"),
+            field("337", "a", "computer"),
+            field("533", "a", "Electronic reproductions"))),
+        payload(marc("00000nam a22000000a 4500",
+            field("245", "a", "The best of \u01c4okovi\u0107 \ufb01nal", "p", "\u1f48\u03b4\u03cd\u03c3\u03c3\u03b5\u03b9\u03b1"),
+            field("250", "a", "Eighth"),
+            field("264", "b", "Dziewi\u0119\u0107"))));
+  }
+
+  static void assertKeys(String file, Function<JsonObject, String> matchkey) throws IOException {
+    JsonObject assertions = new JsonObject(Files.readString(JS_DIR.resolve(file)));
+    for (Map.Entry<String, Object> e : assertions) {
+      String name = e.getKey();
+      if (name.contains("invalid-1")) {
+        continue; // not JSON; does not apply for JsonObject input
+      }
+      String content = Files.readString(JS_DIR.resolve(name));
+      JsonObject payload = payload(new JsonObject(content));
+      if (name.contains("invalid-2")) {
+        Throwable t = Assert.assertThrows(IllegalArgumentException.class,
+            () -> matchkey.apply(payload));
+        assertThat(name, t.getMessage(), is(e.getValue()));
+      } else {
+        assertThat(name, matchkey.apply(payload), is(e.getValue()));
+      }
+    }
+  }
+
+  @Test
+  public void testAssertions2024() throws IOException {
+    assertKeys("test/assertions-goldrush2024.json", Goldrush::matchkey2024);
+  }
+
+  @Test
+  public void testAssertions2021() throws IOException {
+    assertKeys("test/assertions-goldrush2021.json", Goldrush::matchkey2021);
+  }
+
+  @Test
+  public void testInvalid() {
+    Throwable t = Assert.assertThrows(IllegalArgumentException.class,
+        () -> Goldrush.matchkey2024(new JsonObject()));
+    assertThat(t.getMessage(), is("MARC record is missing."));
+    t = Assert.assertThrows(IllegalArgumentException.class,
+        () -> Goldrush.matchkey2024(payload(new JsonObject())));
+    assertThat(t.getMessage(), is("MARC fields array is missing."));
+    t = Assert.assertThrows(IllegalArgumentException.class,
+        () -> Goldrush.matchkey2021(payload(new JsonObject().put("fields", "x"))));
+    assertThat(t.getMessage(), is("MARC fields is not an array."));
+  }
+
+  @Test
+  public void testDiacritic() {
+    Assert.assertTrue(Goldrush.isDiacritic('^'));
+    Assert.assertTrue(Goldrush.isDiacritic(0x301));
+    Assert.assertTrue(Goldrush.isDiacritic(0x1E94A));
+    Assert.assertFalse(Goldrush.isDiacritic('a'));
+    Assert.assertFalse(Goldrush.isDiacritic(0x1E94B));
+  }
+
+  static Future<Module> jsModule(String dir) {
+    String url = "http://localhost/" + dir + "/goldrush.mjs";
+    String source;
+    try {
+      source = Files.readString(JS_DIR.resolve("matchkeys/" + dir + "/goldrush.mjs"));
+    } catch (IOException e) {
+      return Future.failedFuture(e);
+    }
+    CodeModuleEntity entity = new CodeModuleEntity(dir, "javascript", url, "matchkey", null,
+        null, source);
+    Module module = new ModuleJavaScript();
+    return module.initialize(vertx, entity).map(module);
+  }
+
+  /** Keys computed or "error" if computation fails. */
+  static Object outcome(Supplier<Collection<String>> keys) {
+    try {
+      return new HashSet<>(keys.get());
+    } catch (RuntimeException e) {
+      return "error";
+    }
+  }
+
+  void assertSameAsJavaScript(TestContext context, String dir,
+      Function<JsonObject, String> matchkey) {
+    jsModule(dir).onComplete(context.asyncAssertSuccess(module -> {
+      try {
+        List<JsonObject> payloads = new ArrayList<>(recordPayloads());
+        payloads.addAll(edgePayloads());
+        for (JsonObject payload : payloads) {
+          context.assertEquals(outcome(() -> module.executeAsCollection(null, payload)),
+              outcome(() -> Set.of(matchkey.apply(payload))), payload.encode());
+        }
+      } catch (IOException e) {
+        context.fail(e);
+      }
+      module.terminate();
+    }));
+  }
+
+  @Test
+  public void testSameAsJavaScript2024(TestContext context) {
+    assertSameAsJavaScript(context, "goldrush2024", Goldrush::matchkey2024);
+  }
+
+  @Test
+  public void testSameAsJavaScript2021(TestContext context) {
+    assertSameAsJavaScript(context, "goldrush", Goldrush::matchkey2021);
+  }
+
+  /**
+   * Compare throughput of the Java and JavaScript implementations.
+   *
+   * <p>Skipped unless run with -Dgoldrush.benchmark=true; iterations per record with
+   * -Dgoldrush.iterations (default 2000).
+   */
+  @Test
+  public void benchmark(TestContext context) throws IOException {
+    Assume.assumeTrue(Boolean.getBoolean("goldrush.benchmark"));
+    int iterations = Integer.getInteger("goldrush.iterations", 2000);
+    List<JsonObject> payloads = recordPayloads();
+    jsModule("goldrush2024").onComplete(context.asyncAssertSuccess(module -> {
+      for (int round = 0; round < 2; round++) { // first round is warm-up
+        long t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+          for (JsonObject payload : payloads) {
+            module.executeAsCollection(null, payload);
+          }
+        }
+        long t1 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+          for (JsonObject payload : payloads) {
+            Goldrush.matchkey2024(payload);
+          }
+        }
+        long t2 = System.nanoTime();
+        long n = (long) iterations * payloads.size();
+        log.info("goldrush2024 round {}: javascript {} ns/key, java {} ns/key, speedup {}",
+            round, (t1 - t0) / n, (t2 - t1) / n, String.format("%.1f",
+                (double) (t1 - t0) / (t2 - t1)));
+      }
+      module.terminate();
+    }));
+  }
+}
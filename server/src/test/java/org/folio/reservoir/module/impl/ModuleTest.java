@@ -1,5 +1,6 @@
 package org.folio.reservoir.module.impl;
 
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
@@ -7,8 +8,11 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import org.folio.reservoir.module.ModuleCache;
 import org.folio.reservoir.module.ModuleExecutable;
@@ -19,6 +23,7 @@ import org.folio.reservoir.server.entity.CodeModuleEntity.CodeModuleBuilder;
 import org.graalvm.polyglot.PolyglotException;
 import org.junit.After;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -530,6 +535,76 @@ public class ModuleTest {
 
   }
 
+  @Test
+  public void testJavaModule(TestContext context) {
+    JsonObject payload = new JsonObject()
+        .put("marc", new JsonObject()
+            .put("fields", new JsonArray()
+                .add(new JsonObject()
+                    .put("245", new JsonObject()
+                        .put("subfields", new JsonArray()
+                            .add(new JsonObject().put("a", "The title"))
+                        )
+                    )
+                )
+            )
+        );
+    String key = Goldrush.matchkey2024(payload);
+    assertThat(key.substring(0, 8), is("title___"));
+
+    CodeModuleEntity entity = new CodeModuleBuilder(new JsonObject()
+        .put("id", "goldrush")
+        .put("type", "java")).build();
+
+    ModuleCache.getInstance()
+        .lookup(vertx, TENANT, entity)
+        .onComplete(context.asyncAssertSuccess(m -> {
+          context.assertEquals(List.of(key), m.executeAsCollection("goldrush2024", payload));
+          context.assertEquals(List.of(Goldrush.matchkey2021(payload)),
+              m.executeAsCollection("goldrush2021", payload));
+          Throwable e = Assert.assertThrows(IllegalArgumentException.class,
+              () -> m.executeAsCollection(null, payload));
+          assertThat(e.getMessage(),
+              is("Java modules require 'function' defined in config or by caller"));
+          e = Assert.assertThrows(IllegalArgumentException.class,
+              () -> m.executeAsCollection("other", payload));
+          assertThat(e.getMessage(), is("Module goldrush does not include function other"));
+          e = Assert.assertThrows(UnsupportedOperationException.class,
+              () -> m.execute("goldrush2024", payload));
+          assertThat(e.getMessage(), is("only executeAsCollection supported for type=java"));
+        }));
+  }
+
+  @Test
+  public void testJavaModuleDefaultFunction(TestContext context) {
+    JsonObject payload = new JsonObject()
+        .put("marc", new JsonObject().put("fields", new JsonArray()));
+
+    CodeModuleEntity entity = new CodeModuleBuilder(new JsonObject()
+        .put("id", "goldrush")
+        .put("type", "java")
+        .put("function", "goldrush2021")).build();
+
+    ModuleCache.getInstance()
+        .lookup(vertx, TENANT, entity)
+        .onComplete(context.asyncAssertSuccess(m ->
+            context.assertEquals(List.of(Goldrush.matchkey2021(payload)),
+                m.executeAsCollection(null, payload))));
+  }
+
+  @Test
+  public void testJavaModuleUnknownFunction(TestContext context) {
+    CodeModuleEntity entity = new CodeModuleBuilder(new JsonObject()
+        .put("id", "goldrush")
+        .put("type", "java")
+        .put("function", "other")).build();
+
+    ModuleCache.getInstance()
+        .lookup(vertx, TENANT, entity)
+        .onComplete(context.asyncAssertFailure(e ->
+            assertThat(e.getMessage(), is("Module goldrush does not include function other"))));
+  }
+
   @Test
   public void testInlineJsMatchkeyModule(TestContext context) {
     Collection<String> expected = new HashSet<>();
@@ -566,6 +641,234 @@ public class ModuleTest {
 
   }
 
+  @Test
+  public void testInlineJsConcurrent(TestContext context) {
+    JsonObject config = new JsonObject()
+      .put("id", "matchkey-concurrent")
+      .put("type", "javascript")
+      .put("script", "x => JSON.parse(x).id");
+
+    CodeModuleEntity entity = new CodeModuleBuilder(config).build();
+
+    int poolSize = ModuleJavaScript.getContextPoolSize();
+    ModuleJavaScript.setContextPoolSize(2);
+    ModuleCache.getInstance()
+      .lookup(vertx, TENANT, entity)
+      .compose(m -> {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+          String id = Integer.toString(i);
+          futures.add(vertx.executeBlocking(() -> m.executeAsCollection(null,
+                  new JsonObject().put("id", id)), false)
+              .map(result -> {
+                context.assertEquals(Set.of(id), new HashSet<>(result));
+                return null;
+              }));
+        }
+        return Future.all(futures);
+      })
+      .eventually(() -> {
+        ModuleJavaScript.setContextPoolSize(poolSize);
+        return Future.succeededFuture();
+      })
+      .onComplete(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testInlineJsCheckoutEventLoop(TestContext context) {
+    JsonObject config = new JsonObject()
+      .put("id", "matchkey-checkout")
+      .put("type", "javascript")
+      .put("script", "x => { const end = Date.now() + 1000; while (Date.now() < end) {}"
+          + " return JSON.parse(x).id; }");
+
+    CodeModuleEntity entity = new CodeModuleBuilder(config).build();
+
+    int poolSize = ModuleJavaScript.getContextPoolSize();
+    ModuleJavaScript.setContextPoolSize(1);
+    JsonObject input = new JsonObject().put("id", "a");
+    ModuleCache.getInstance()
+      .lookup(vertx, TENANT, entity)
+      .compose(m -> {
+        // the only context is busy on a worker; the event loop must not wait for it
+        Future<Collection<String>> busy = vertx.executeBlocking(
+            () -> m.executeAsCollection(null, input), false);
+        Future<Void> timer = Future.future(p -> vertx.setTimer(300, x -> {
+          IllegalStateException e = Assert.assertThrows(IllegalStateException.class,
+              () -> m.executeAsCollection(null, input));
+          assertThat(e.getMessage(), containsString("cannot wait on event loop thread"));
+          p.complete();
+        }));
+        return Future.all(busy, timer).map(x -> {
+          context.assertEquals(Set.of("a"), new HashSet<>(busy.result()));
+          return null;
+        });
+      })
+      .eventually(() -> {
+        ModuleJavaScript.setContextPoolSize(poolSize);
+        return Future.succeededFuture();
+      })
+      .onComplete(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testContextPoolSize() {
+    Assert.assertThrows(IllegalArgumentException.class,
+        () -> ModuleJavaScript.setContextPoolSize(0));
+  }
+
+  @Test
+  public void testObjectConvention(TestContext context) {
+    JsonObject payload = new JsonObject()
+        .put("identifiers", new JsonArray()
+            .add(new JsonObject().put("isbn", "73209629"))
+            .add(new JsonObject().put("isbn", 73209623)));
+
+    CodeModuleEntity entity = new CodeModuleBuilder(new JsonObject()
+        .put("id", "matchkey-object")
+        .put("type", "javascript")
+        .put("script", "x => x.identifiers.map(i => i.isbn)"))
+        .convention(ModuleJavaScript.CONVENTION_OBJECT)
+        .build();
+
+    ModuleCache.getInstance()
+        .lookup(vertx, TENANT, entity)
+        .map(m -> m.executeAsCollection(null, payload))
+        .onComplete(context.asyncAssertSuccess(result ->
+            context.assertEquals(Set.of("73209629", "73209623"), new HashSet<>(result))));
+  }
+
+  @Test
+  public void testObjectConventionExecute(TestContext context) {
+    JsonObject input = new JsonObject()
+        .put("id", "c1")
+        .put("records", new JsonArray().add(new JsonObject().put("localId", "a")));
+
+    CodeModuleEntity entity = new CodeModuleBuilder(new JsonObject()
+        .put("id", "transform-object")
+        .put("type", "javascript")
+        .put("script", "x => ({ id: x.id, count: x.records.length, first: x.records[0],"
+            + " keys: Object.keys(x), none: null, ok: true, ratio: 0.5 })"))
+        .convention(ModuleJavaScript.CONVENTION_OBJECT)
+        .build();
+
+    ModuleCache.getInstance()
+        .lookup(vertx, TENANT, entity)
+        .compose(m -> m.execute(null, input))
+        .onComplete(context.asyncAssertSuccess(output -> context.assertEquals(
+            new JsonObject()
+                .put("id", "c1")
+                .put("count", 1)
+                .put("first", new JsonObject().put("localId", "a"))
+                .put("keys", new JsonArray().add("id").add("records"))
+                .putNull("none")
+                .put("ok", true)
+                .put("ratio", 0.5),
+            output)));
+  }
+
+  @Test
+  public void testObjectConventionReadOnly(TestContext context) {
+    CodeModuleEntity entity = new CodeModuleBuilder(new JsonObject()
+        .put("id", "transform-modify")
+        .put("type", "javascript")
+        .put("script", "x => { x.id = 'other'; return x; }"))
+        .convention(ModuleJavaScript.CONVENTION_OBJECT)
+        .build();
+
+    JsonObject input = new JsonObject().put("id", "c1");
+    ModuleCache.getInstance()
+        .lookup(vertx, TENANT, entity)
+        .compose(m -> m.execute(null, input))
+        .onComplete(context.asyncAssertSuccess(output -> {
+          // assignment is ignored as script is not strict
+          context.assertEquals("c1", output.getString("id"));
+          context.assertEquals("c1", input.getString("id"));
+        }));
+  }
+
+  @Test
+  public void testStringConventionReturnsObject(TestContext context) {
+    CodeModuleEntity entity = new CodeModuleBuilder(new JsonObject()
+        .put("id", "transform-string")
+        .put("type", "javascript")
+        .put("script", "x => ({ id: JSON.parse(x).id })"))
+        .build();
+
+    ModuleCache.getInstance()
+        .lookup(vertx, TENANT, entity)
+        .compose(m -> m.execute(null, new JsonObject().put("id", "c1")))
+        .onComplete(context.asyncAssertSuccess(output ->
+            context.assertEquals(new JsonObject().put("id", "c1"), output)));
+  }
+
+  @Test
+  public void testUnknownConvention(TestContext context) {
+    CodeModuleEntity entity = new CodeModuleBuilder(new JsonObject()
+        .put("id", "transform-unknown")
+        .put("type", "javascript")
+        .put("script", "x => x"))
+        .convention("xml")
+        .build();
+
+    ModuleCache.getInstance()
+        .lookup(vertx, TENANT, entity)
+        .onComplete(context.asyncAssertFailure(e ->
+            assertThat(e.getMessage(), is("Unknown convention 'xml'"))));
+  }
+
+  @Test
+  public void testSharedSource() {
+    String script = "x => JSON.parse(x).id";
+    Assert.assertSame(JavaScriptEngine.getSource("script.js", script),
+        JavaScriptEngine.getSource("script.js", new String(script)));
+    Assert.assertNotSame(JavaScriptEngine.getSource("script.js", script),
+        JavaScriptEngine.getSource("other.js", script));
+    Assert.assertSame(JavaScriptEngine.getEngine(), JavaScriptEngine.getEngine());
+  }
+
+  @Test
+  public void testResolveSource(TestContext context) {
+    CodeModuleEntity entity = new CodeModuleBuilder(new JsonObject()
+        .put("id", "matchkey-isbn")
+        .put("type", "javascript")
+        .put("url", HOSTPORT + "/lib/matchkey-isbn.mjs"))
+        .build();
+    CodeModuleEntity inline = new CodeModuleBuilder(new JsonObject()
+        .put("id", "matchkey-inline")
+        .put("type", "javascript")
+        .put("script", "x => JSON.parse(x).id"))
+        .build();
+
+    ModuleJavaScript.resolveSource(vertx, entity)
+        .onComplete(context.asyncAssertSuccess(resolved -> {
+          assertThat(resolved.getSource(), containsString("matchkey"));
+          // source is derived from url
+          context.assertEquals(entity, resolved);
+          context.assertEquals(entity.asJson(), resolved.asJson());
+        }));
+    ModuleJavaScript.resolveSource(vertx, inline)
+        .onComplete(context.asyncAssertSuccess(resolved -> context.assertTrue(inline == resolved)));
+  }
+
+  @Test
+  public void testStoredSource(TestContext context) {
+    // url not found, but source is stored already
+    CodeModuleEntity entity = new CodeModuleBuilder(new JsonObject()
+        .put("id", "matchkey-stored")
+        .put("type", "javascript")
+        .put("url", HOSTPORT + "/lib/not-found.mjs")
+        .put("function", "matchkey"))
+        .source("export function matchkey(x) { return [JSON.parse(x).id]; }")
+        .build();
+
+    ModuleCache.getInstance()
+        .lookup(vertx, TENANT, entity)
+        .map(m -> m.executeAsCollection(null, new JsonObject().put("id", "1")))
+        .onComplete(context.asyncAssertSuccess(result ->
+            context.assertEquals(Set.of("1"), new HashSet<>(result))));
+  }
+
   @Test
   public void testJsMatchkeyModuleNoFunction(TestContext context) {
 
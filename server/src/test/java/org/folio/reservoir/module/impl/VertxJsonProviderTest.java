@@ -0,0 +1,101 @@
+package org.folio.reservoir.module.impl;
+
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.PathNotFoundException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VertxJsonProviderTest {
+
+  JsonObject marc = new JsonObject()
+      .put("leader", "00914naa  2200337   450 ")
+      .put("fields", new JsonArray()
+          .add(new JsonObject().put("001", "a1"))
+          .add(new JsonObject().put("020", new JsonObject()
+              .put("ind1", " ")
+              .put("subfields", new JsonArray()
+                  .add(new JsonObject().put("a", "73209629"))
+                  .add(new JsonObject().put("q", "pbk")))))
+          .add(new JsonObject().put("020", new JsonObject()
+              .put("subfields", new JsonArray()
+                  .add(new JsonObject().put("a", "73209623"))))));
+
+  JsonObject payload = new JsonObject().put("marc", marc);
+
+  Object read(String path) {
+    return VertxJsonProvider.read(VertxJsonProvider.compile(path), payload);
+  }
+
+  @Test
+  public void testDefinite() {
+    Assert.assertEquals("a1", read("$.marc.fields[0].001"));
+    Assert.assertEquals(3, read("$.marc.fields.length()"));
+    Assert.assertTrue(read("$.marc.fields") instanceof JsonArray);
+    Assert.assertThrows(PathNotFoundException.class, () -> read("$.marc.other"));
+  }
+
+  @Test
+  public void testIndefinite() {
+    Assert.assertEquals(List.of("73209629", "73209623"),
+        read("$.marc.fields[*].020.subfields[*].a"));
+    Assert.assertEquals(List.of("73209629", "73209623"),
+        read("$..020.subfields[*].a"));
+    Assert.assertEquals(List.of("73209629"),
+        read("$.marc.fields[?(@.020.ind1 == ' ')].020.subfields[0].a"));
+    Assert.assertEquals(List.of(), read("$.marc.fields[*].245.subfields[*].a"));
+  }
+
+  @Test
+  public void testGetKeys() {
+    Collection<String> keys = new ArrayList<>();
+    ModuleJsonPath.getKeys(VertxJsonProvider.compile("$.marc.fields[*].020.subfields[*].a"),
+        payload, keys);
+    Assert.assertEquals(List.of("73209629", "73209623"), keys);
+
+    keys.clear();
+    ModuleJsonPath.getKeys(VertxJsonProvider.compile("$.marc.fields[1].020.subfields[*].a"),
+        payload, keys);
+    Assert.assertEquals(List.of("73209629"), keys);
+
+    // not all strings
+    keys.clear();
+    ModuleJsonPath.getKeys(VertxJsonProvider.compile("$.marc.fields[*].020.subfields[*]"),
+        payload, keys);
+    Assert.assertEquals(List.of(), keys);
+
+    keys.clear();
+    ModuleJsonPath.getKeys(VertxJsonProvider.compile("$.marc.other"), payload, keys);
+    Assert.assertEquals(List.of(), keys);
+
+    keys.clear();
+    ModuleJsonPath.getKeys(VertxJsonProvider.compile("$.marc.leader"), payload, keys);
+    Assert.assertEquals(List.of("00914naa  2200337   450 "), keys);
+  }
+
+  @Test
+  public void testPayloadNotModified() {
+    JsonObject copy = payload.copy();
+    read("$..a");
+    Assert.assertEquals(copy, payload);
+  }
+
+  @Test
+  public void testCompileCached() {
+    JsonPath path = VertxJsonProvider.compile("$.marc.leader");
+    Assert.assertSame(path, VertxJsonProvider.compile("$.marc.leader"));
+  }
+
+  @Test
+  public void testParse() {
+    Object document = VertxJsonProvider.getConfiguration().jsonProvider()
+        .parse(payload.encode());
+    Assert.assertEquals(payload, document);
+    Assert.assertEquals("a1", JsonPath.using(VertxJsonProvider.getConfiguration())
+        .parse(payload.encode()).read("$.marc.fields[0].001"));
+  }
+}
@@ -0,0 +1,111 @@
+package org.folio.reservoir.server;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.folio.reservoir.server.entity.CodeModuleEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConfigCacheTest {
+
+  static <T> Future<T> notCached() {
+    return Future.failedFuture("not cached");
+  }
+
+  ConfigCache cache = ConfigCache.getInstance();
+
+  @After
+  public void after() {
+    cache.invalidateAll();
+  }
+
+  @Test
+  public void testMatchKeyConfigs() {
+    AtomicInteger loads = new AtomicInteger();
+    JsonArray configs = new JsonArray().add(new JsonObject().put("id", "isbn"));
+    for (int i = 0; i < 3; i++) {
+      Future<JsonArray> f = cache.getMatchKeyConfigs("t1", () -> {
+        loads.incrementAndGet();
+        return Future.succeededFuture(configs);
+      });
+      Assert.assertEquals(configs, f.result());
+    }
+    Assert.assertEquals(1, loads.get());
+    cache.invalidateMatchKeyConfigs("t2");
+    Assert.assertEquals(configs, cache.getMatchKeyConfigs("t1", ConfigCacheTest::notCached).result());
+    cache.invalidateMatchKeyConfigs("t1");
+    cache.getMatchKeyConfigs("t1", () -> {
+      loads.incrementAndGet();
+      return Future.succeededFuture(configs);
+    });
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testFailureNotCached() {
+    AtomicInteger loads = new AtomicInteger();
+    for (int i = 0; i < 2; i++) {
+      Future<JsonObject> f = cache.getOaiConfig("t1", () -> {
+        loads.incrementAndGet();
+        return Future.failedFuture("fail");
+      });
+      Assert.assertEquals("fail", f.cause().getMessage());
+    }
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testCodeModuleEntity() {
+    AtomicInteger loads = new AtomicInteger();
+    CodeModuleEntity entity = new CodeModuleEntity.CodeModuleBuilder(
+        new JsonObject().put("id", "m1").put("type", "jsonpath").put("script", "$.a")).build();
+    cache.getCodeModuleEntity("t1", "m1", () -> {
+      loads.incrementAndGet();
+      return Future.succeededFuture(entity);
+    });
+    // not found is cached as well
+    cache.getCodeModuleEntity("t1", "m2", () -> {
+      loads.incrementAndGet();
+      return Future.succeededFuture(null);
+    });
+    Assert.assertEquals(entity,
+        cache.getCodeModuleEntity("t1", "m1", ConfigCacheTest::notCached).result());
+    Assert.assertNull(cache.getCodeModuleEntity("t1", "m2", ConfigCacheTest::notCached).result());
+    Assert.assertEquals(2, loads.get());
+
+    cache.invalidateCodeModuleEntity("t1", "m2");
+    Assert.assertTrue(cache.getCodeModuleEntity("t1", "m2", ConfigCacheTest::notCached).failed());
+    Assert.assertTrue(cache.getCodeModuleEntity("t1", "m1", ConfigCacheTest::notCached).succeeded());
+
+    cache.invalidate("t1");
+    Assert.assertTrue(cache.getCodeModuleEntity("t1", "m1", ConfigCacheTest::notCached).failed());
+  }
+
+
+  @Test
+  public void testLayout() {
+    AtomicInteger loads = new AtomicInteger();
+    for (int i = 0; i < 2; i++) {
+      cache.getLayout("t1", () -> {
+        loads.incrementAndGet();
+        return Future.succeededFuture(new Storage.Layout(true, false));
+      });
+      cache.getPartition("t1", "p1", () -> {
+        loads.incrementAndGet();
+        return Future.succeededFuture();
+      });
+    }
+    Assert.assertEquals(2, loads.get());
+    cache.invalidatePartitions("t2");
+    Assert.assertTrue(cache.getPartition("t1", "p1", ConfigCacheTest::notCached).succeeded());
+    cache.invalidatePartitions("t1");
+    Assert.assertTrue(cache.getLayout("t1", ConfigCacheTest::notCached).result().partitioned());
+    Assert.assertTrue(cache.getPartition("t1", "p1", ConfigCacheTest::notCached).failed());
+    cache.invalidate("t1");
+    Assert.assertTrue(cache.getLayout("t1", ConfigCacheTest::notCached).failed());
+  }
+}
@@ -0,0 +1,31 @@
+package org.folio.reservoir.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Base64;
+
+public class CursorTest {
+
+  @Test
+  public void testEncodeDecode() {
+    for (String key : new String[] { "", "a", "3f0c/b+?", "\u00e6\u00f8\u00e5" }) {
+      String coded = new Cursor(key).encode();
+      Assert.assertFalse(coded, coded.contains("="));
+      Assert.assertEquals(key, Cursor.decode(coded).getKey());
+    }
+  }
+
+  @Test
+  public void testBadCursor() {
+    String notBase64 = "%%";
+    String e = Assert.assertThrows(IllegalArgumentException.class,
+        () -> Cursor.decode(notBase64)).getMessage();
+    Assert.assertEquals("Bad cursor", e);
+
+    String noPrefix = Base64.getUrlEncoder().encodeToString("a".getBytes());
+    e = Assert.assertThrows(IllegalArgumentException.class,
+        () -> Cursor.decode(noPrefix)).getMessage();
+    Assert.assertEquals("Bad cursor", e);
+  }
+}
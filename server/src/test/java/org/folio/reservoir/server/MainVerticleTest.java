@@ -1,6 +1,7 @@
 package org.folio.reservoir.server;
 
 import io.restassured.RestAssured;
+import io.restassured.specification.RequestSpecification;
 import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
@@ -20,9 +21,11 @@ import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -34,6 +37,7 @@ import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 
 import io.vertx.ext.web.client.predicate.ResponsePredicate;
+import io.vertx.sqlclient.SqlConnection;
 import io.vertx.sqlclient.Tuple;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -940,13 +944,18 @@ public class MainVerticleTest extends TestBase {
   }
 
   static void ingestRecords(JsonArray records, String sourceId, int sourceVersion) {
+    ingestRecords(TENANT_1, records, sourceId, sourceVersion);
+  }
+
+  static void ingestRecords(String tenant, JsonArray records, String sourceId,
+      int sourceVersion) {
     JsonObject request = new JsonObject()
         .put("sourceId", sourceId)
         .put("sourceVersion", sourceVersion)
         .put("records", records);
 
     RestAssured.given()
-        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.TENANT, tenant)
         .header("Content-Type", "application/json")
         .body(request.encode())
         .put("/reservoir/records")
@@ -1098,6 +1107,419 @@ public class MainVerticleTest extends TestBase {
         .then().statusCode(204);
   }
 
+  @Test
+  public void testClustersBatched() {
+    JsonObject matchKey = createIsbnMatchKey();
+
+    JsonArray records = new JsonArray();
+    List<List<String>> localIds = new ArrayList<>();
+    for (int i = 0; i < 7; i++) {
+      records.add(new JsonObject()
+          .put("localId", "B" + i)
+          .put("payload", new JsonObject()
+              .put("marc", new JsonObject().put("leader", "00914naa  2200337   450 "))
+              .put("inventory", new JsonObject().put("isbn", new JsonArray().add("b" + i)))
+          ));
+      localIds.add(List.of("B" + i));
+    }
+    ingestRecords(records, SOURCE_ID_1);
+
+    int fetchSize = Storage.sqlStreamFetchSize;
+    Storage.sqlStreamFetchSize = 3;
+    try {
+      String s = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header("Content-Type", "application/json")
+          .param("matchkeyid", "isbn")
+          .param("limit", 100)
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .contentType("application/json")
+          .body("items", hasSize(7))
+          .body("items.findAll { it.records.size() == 1 }", hasSize(7))
+          .body("items.findAll { it.matchValues.size() == 1 }", hasSize(7))
+          .body("items.findAll { it.datestamp != null }", hasSize(7))
+          .extract().body().asString();
+      verifyClusterResponse(s, localIds);
+    } finally {
+      Storage.sqlStreamFetchSize = fetchSize;
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("query", "cql.allRecords=true")
+        .delete("/reservoir/records")
+        .then().statusCode(204);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .delete("/reservoir/config/matchkeys/" + matchKey.getString("id"))
+        .then().statusCode(204);
+  }
+
+  List<String> getPages(String path, String property, String key, Map<String, String> params,
+      int limit, int pages) {
+    List<String> keys = new ArrayList<>();
+    String cursor = Cursor.FIRST;
+    for (int i = 0; i < pages; i++) {
+      RequestSpecification request = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .params(params)
+          .param("limit", limit)
+          .param("cursor", cursor);
+      JsonObject page = new JsonObject(request.get(path)
+          .then().statusCode(200)
+          .contentType("application/json")
+          .extract().body().asString());
+      JsonArray items = page.getJsonArray(property);
+      Assert.assertTrue(items.size() <= limit);
+      items.forEach(item -> keys.add(((JsonObject) item).getString(key)));
+      cursor = page.getJsonObject("resultInfo").getString("nextCursor");
+      if (cursor == null) {
+        Assert.assertEquals(pages - 1, i);
+        return keys;
+      }
+    }
+    Assert.fail("More than " + pages + " pages");
+    return keys;
+  }
+
+  @Test
+  public void testCursor() {
+    JsonObject matchKey = createIsbnMatchKey();
+
+    JsonArray records = new JsonArray();
+    for (int i = 0; i < 7; i++) {
+      records.add(new JsonObject()
+          .put("localId", "C" + i)
+          .put("payload", new JsonObject()
+              .put("marc", new JsonObject().put("leader", "00914naa  2200337   450 "))
+              .put("inventory", new JsonObject().put("isbn", new JsonArray().add("c" + i)))
+          ));
+    }
+    ingestRecords(records, SOURCE_ID_1);
+
+    List<String> ids = getPages("/reservoir/records", "items", "globalId",
+        Map.of("query", "sourceId=" + SOURCE_ID_1), 3, 3);
+    Assert.assertEquals(7, ids.size());
+    Assert.assertEquals(ids.stream().sorted().toList(), ids);
+
+    ids = getPages("/reservoir/clusters", "items", "clusterId",
+        Map.of("matchkeyid", "isbn"), 2, 4);
+    Assert.assertEquals(7, ids.size());
+    Assert.assertEquals(ids.stream().sorted().toList(), ids);
+
+    // last page full: next page is empty
+    ids = getPages("/reservoir/config/matchkeys", "matchKeys", "id", Map.of(), 1, 2);
+    Assert.assertEquals(List.of("isbn"), ids);
+
+    String cursor = new Cursor(UUID.randomUUID().toString()).encode();
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("query", "cql.allRecords=1 sortby localId")
+        .param("cursor", cursor)
+        .get("/reservoir/records")
+        .then().statusCode(400)
+        .body(is("cursor cannot be combined with sortby"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("cursor", new Cursor("x").encode())
+        .get("/reservoir/records")
+        .then().statusCode(400)
+        .body(is("Bad cursor"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("cursor", Cursor.FIRST)
+        .param("offset", 1)
+        .get("/reservoir/records")
+        .then().statusCode(400)
+        .body(is("cursor cannot be combined with offset"));
+
+    // no cursor: no keyset order and no next cursor
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("limit", 3)
+        .get("/reservoir/records")
+        .then().statusCode(200)
+        .body("items", hasSize(3))
+        .body("resultInfo.nextCursor", nullValue());
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("query", "cql.allRecords=1 sortby localId")
+        .param("limit", 3)
+        .get("/reservoir/records")
+        .then().statusCode(200)
+        .body("items", hasSize(3))
+        .body("resultInfo.nextCursor", nullValue());
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("query", "cql.allRecords=true")
+        .delete("/reservoir/records")
+        .then().statusCode(204);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .delete("/reservoir/config/matchkeys/" + matchKey.getString("id"))
+        .then().statusCode(204);
+  }
+
+  @Test
+  public void testCountEstimate() {
+    JsonObject matchKey = createIsbnMatchKey();
+
+    JsonArray records = new JsonArray();
+    for (int i = 0; i < 5; i++) {
+      records.add(new JsonObject()
+          .put("localId", "E" + i)
+          .put("payload", new JsonObject()
+              .put("marc", new JsonObject().put("leader", "00914naa  2200337   450 "))
+              .put("inventory", new JsonObject().put("isbn", new JsonArray().add("e" + i)))
+          ));
+    }
+    ingestRecords(records, SOURCE_ID_1);
+
+    // small estimates are replaced by exact counts
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("count", "estimate")
+        .param("query", "sourceId=" + SOURCE_ID_1)
+        .get("/reservoir/records")
+        .then().statusCode(200)
+        .body("items", hasSize(5))
+        .body("resultInfo.totalRecords", is(5))
+        .body("resultInfo.estimated", is(false));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("count", "exact")
+        .param("matchkeyid", "isbn")
+        .get("/reservoir/clusters")
+        .then().statusCode(200)
+        .body("resultInfo.totalRecords", is(5))
+        .body("resultInfo.estimated", is(false));
+
+    int threshold = Storage.countEstimateThreshold;
+    Storage.countEstimateThreshold = 0;
+    try {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("count", "estimate")
+          .param("query", "sourceId=" + SOURCE_ID_1)
+          .get("/reservoir/records")
+          .then().statusCode(200)
+          .body("items", hasSize(5))
+          .body("resultInfo.totalRecords", greaterThanOrEqualTo(1))
+          .body("resultInfo.estimated", is(true));
+
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("count", "estimate")
+          .param("matchkeyid", "isbn")
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .body("items", hasSize(5))
+          .body("resultInfo.totalRecords", greaterThanOrEqualTo(1))
+          .body("resultInfo.estimated", is(true));
+    } finally {
+      Storage.countEstimateThreshold = threshold;
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("query", "cql.allRecords=true")
+        .delete("/reservoir/records")
+        .then().statusCode(204);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .delete("/reservoir/config/matchkeys/" + matchKey.getString("id"))
+        .then().statusCode(204);
+  }
+
+  @Test
+  public void testFetchSize() {
+    JsonArray records = new JsonArray();
+    for (int i = 0; i < 5; i++) {
+      records.add(new JsonObject()
+          .put("localId", "F" + i)
+          .put("payload", new JsonObject()
+              .put("marc", new JsonObject().put("leader", "00914naa  2200337   450 "))
+          ));
+    }
+    ingestRecords(records, SOURCE_ID_1);
+
+    int fetchSize = Storage.getFetchSize(Storage.FETCH_RECORDS);
+    Storage.setFetchSize(Storage.FETCH_RECORDS, 2);
+    try {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("query", "sourceId=" + SOURCE_ID_1)
+          .param("count", "exact")
+          .get("/reservoir/records")
+          .then().statusCode(200)
+          .body("items", hasSize(5))
+          .body("resultInfo.totalRecords", is(5));
+    } finally {
+      Storage.setFetchSize(Storage.FETCH_RECORDS, fetchSize);
+    }
+    Assert.assertThrows(IllegalArgumentException.class,
+        () -> Storage.setFetchSize(Storage.FETCH_RECORDS, 0));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("query", "cql.allRecords=true")
+        .delete("/reservoir/records")
+        .then().statusCode(204);
+  }
+
+  @Test
+  public void testMatchKeysIngestBulk() {
+    JsonObject matchKey = createIsbnMatchKey();
+
+    JsonArray records = new JsonArray()
+        .add(new JsonObject()
+            .put("localId", "S101")
+            .put("payload", new JsonObject()
+                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("1")))
+            )
+        )
+        .add(new JsonObject()
+            .put("localId", "S102")
+            .put("payload", new JsonObject()
+                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("2").add("3")))
+            )
+        )
+        .add(new JsonObject()
+            .put("localId", "S103")
+            .put("payload", new JsonObject()
+                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("3")))
+            )
+        );
+    JsonObject request = new JsonObject()
+        .put("sourceId", SOURCE_ID_1)
+        .put("records", records);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("mode", "other")
+        .body(request.encode())
+        .put("/reservoir/records")
+        .then().statusCode(400)
+        .body(is("mode must be one of: incremental, bulk"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("mode", "bulk")
+        .body(request.encode())
+        .put("/reservoir/records")
+        .then().statusCode(200);
+
+    String s = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("matchkeyid", "isbn")
+        .get("/reservoir/clusters")
+        .then().statusCode(200)
+        .contentType("application/json")
+        .body("items", hasSize(2))
+        .extract().body().asString();
+    verifyClusterResponse(s, List.of(List.of("S101"), List.of("S102", "S103")));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .delete("/reservoir/config/matchkeys/" + matchKey.getString("id"))
+        .then().statusCode(204);
+  }
+
+  static JsonObject isbnRecord(String localId, String... isbns) {
+    JsonArray isbn = new JsonArray();
+    for (String v : isbns) {
+      isbn.add(v);
+    }
+    return new JsonObject()
+        .put("localId", localId)
+        .put("payload", new JsonObject()
+            .put("inventory", new JsonObject().put("isbn", isbn)));
+  }
+
+  @Test
+  public void testMatchKeysIngestBulkMerge() {
+    JsonObject matchKey = createIsbnMatchKey();
+
+    ingestRecords(new JsonArray()
+        .add(isbnRecord("S1", "1"))
+        .add(isbnRecord("S2", "2")), SOURCE_ID_1);
+
+    JsonObject request = new JsonObject()
+        .put("sourceId", SOURCE_ID_2)
+        .put("records", new JsonArray()
+            .add(isbnRecord("T1", "1", "2"))
+            .add(isbnRecord("T2", "5"))
+            .add(isbnRecord("T3", "6"))
+            .add(isbnRecord("T4", "5", "6"))
+            .add(isbnRecord("T5")));
+
+    int pageSize = ClusterRebuild.pageSize;
+    ClusterRebuild.pageSize = 2; // records sharing values end up in different pages
+    try {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header("Content-Type", "application/json")
+          .param("mode", "bulk")
+          .body(request.encode())
+          .put("/reservoir/records")
+          .then().statusCode(200);
+
+      String s = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("matchkeyid", "isbn")
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .contentType("application/json")
+          .extract().body().asString();
+      verifyClusterResponse(s, List.of(List.of("S1", "S2", "T1"),
+          List.of("T2", "T3", "T4"), List.of("T5")));
+
+      // source now has records, so its match values could be stale after a bulk load
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header("Content-Type", "application/json")
+          .param("mode", "bulk")
+          .body(request.encode())
+          .put("/reservoir/records")
+          .then().statusCode(400)
+          .body(is("Bulk mode requires that source " + SOURCE_ID_2
+              + " version 1 has no records"));
+
+      s = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("matchkeyid", "isbn")
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .contentType("application/json")
+          .extract().body().asString();
+      verifyClusterResponse(s, List.of(List.of("S1", "S2", "T1"),
+          List.of("T2", "T3", "T4"), List.of("T5")));
+    } finally {
+      ClusterRebuild.pageSize = pageSize;
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .delete("/reservoir/config/matchkeys/" + matchKey.getString("id"))
+        .then().statusCode(204);
+  }
+
   @Test
   public void testTouchClusters() {
     createIsbnMatchKey();
@@ -1209,6 +1631,19 @@ public class MainVerticleTest extends TestBase {
     String datestamp2 = new JsonObject(s).getJsonArray("items").getJsonObject(0).getString("datestamp");
 
     MatcherAssert.assertThat(datestamp2, greaterThan(datestamp1));
+
+    // re-ingest of identical records must not touch clusters
+    ingestRecords(records1, SOURCE_ID_1);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("matchkeyid", "isbn")
+        .get("/reservoir/clusters")
+        .then().statusCode(200)
+        .contentType("application/json")
+        .body("items", hasSize(2))
+        .body("items[0].datestamp", is(datestamp2));
   }
 
   @Test
@@ -1317,10 +1752,36 @@ public class MainVerticleTest extends TestBase {
   }
 
   @Test
-  public void testClustersSameKey() {
-    createIssnMatchKey();
+  public void testConfigChangeNotification() throws Exception {
+    createIsbnMatchKey();
 
-    JsonArray records1 = new JsonArray()
+    Storage storage = new Storage(vertx, TENANT_1);
+    Assert.assertEquals(1, storage.getAvailableMatchConfigs()
+        .toCompletionStage().toCompletableFuture().get().size());
+
+    // removed by "another instance": cached until notified
+    storage.getPool().query("DELETE FROM " + storage.matchKeyConfigTable).execute()
+        .toCompletionStage().toCompletableFuture().get();
+    Assert.assertEquals(1, storage.getAvailableMatchConfigs()
+        .toCompletionStage().toCompletableFuture().get().size());
+
+    JsonObject event = new JsonObject()
+        .put("origin", "other")
+        .put("tenant", TENANT_1)
+        .put("type", ConfigChangeListener.MATCH_KEY);
+    storage.getPool().preparedQuery("SELECT pg_notify($1, $2)")
+        .execute(Tuple.of(ConfigChangeListener.CHANNEL, event.encode()))
+        .toCompletionStage().toCompletableFuture().get();
+
+    Awaitility.await().atMost(Duration.ofSeconds(2)).until(() ->
+        storage.getAvailableMatchConfigs().toCompletionStage().toCompletableFuture().get().isEmpty());
+  }
+
+  @Test
+  public void testClustersSameKey() {
+    createIssnMatchKey();
+
+    JsonArray records1 = new JsonArray()
         .add(new JsonObject()
             .put("localId", "S101")
             .put("payload", new JsonObject()
@@ -1676,6 +2137,307 @@ public class MainVerticleTest extends TestBase {
         .then().statusCode(204);
   }
 
+  @Test
+  public void testDeleteGlobalRecordsChunked() {
+    createIsbnMatchKey();
+    JsonArray records = new JsonArray();
+    for (int i = 0; i < 5; i++) {
+      records.add(new JsonObject()
+          .put("localId", "S" + i)
+          .put("payload", new JsonObject()
+              .put("marc", new JsonObject().put("leader", "00914naa  2200337   450 "))
+              .put("inventory", new JsonObject().put("isbn", new JsonArray().add("" + i)))));
+    }
+    ingestRecords(records, SOURCE_ID_1, 1);
+    ingestRecords(records, SOURCE_ID_2, 1);
+    // S0 and S1 of source 1 in version 2; other records of version 1 remain
+    records.remove(4);
+    records.remove(3);
+    records.remove(2);
+    ingestRecords(records, SOURCE_ID_1, 2);
+
+    int chunkSize = JobService.getChunkSize();
+    int throttle = JobService.getThrottle();
+    try {
+      JobService.setChunkSize(2);
+      JobService.setThrottle(10);
+
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("query", "sourceId=" + SOURCE_ID_1 + " AND sourceVersion=1")
+          .delete("/reservoir/records")
+          .then().statusCode(204);
+
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("query", "sourceId=" + SOURCE_ID_1)
+          .param("count", "exact")
+          .get("/reservoir/records")
+          .then().statusCode(200)
+          .body("resultInfo.totalRecords", is(2));
+
+      // deleting again is a no-op
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("query", "sourceId=" + SOURCE_ID_1 + " AND sourceVersion=1")
+          .delete("/reservoir/records")
+          .then().statusCode(204);
+
+      String s = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("matchkeyid", "isbn")
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .body("items", hasSize(5))
+          .extract().body().asString();
+      JsonArray items = new JsonObject(s).getJsonArray("items");
+      int total = 0;
+      for (int i = 0; i < items.size(); i++) {
+        total += items.getJsonObject(i).getJsonArray("records").size();
+      }
+      MatcherAssert.assertThat(total, is(7));
+
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("query", "cql.allRecords=1")
+          .delete("/reservoir/records")
+          .then().statusCode(204);
+
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("count", "exact")
+          .get("/reservoir/records")
+          .then().statusCode(200)
+          .body("resultInfo.totalRecords", is(0));
+    } finally {
+      JobService.setChunkSize(chunkSize);
+      JobService.setThrottle(throttle);
+    }
+    Assert.assertThrows(IllegalArgumentException.class, () -> JobService.setChunkSize(0));
+    Assert.assertThrows(IllegalArgumentException.class, () -> JobService.setThrottle(-1));
+  }
+
+  static int clusterRecordsTotal(String tenant) {
+    String s = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, tenant)
+        .param("matchkeyid", "isbn")
+        .get("/reservoir/clusters")
+        .then().statusCode(200)
+        .extract().body().asString();
+    JsonArray items = new JsonObject(s).getJsonArray("items");
+    int total = 0;
+    for (int i = 0; i < items.size(); i++) {
+      total += items.getJsonObject(i).getJsonArray("records").size();
+    }
+    return total;
+  }
+
+  static Set<String> clusterRecordIds(String tenant) {
+    String s = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, tenant)
+        .param("matchkeyid", "isbn")
+        .param("limit", 100)
+        .get("/reservoir/clusters")
+        .then().statusCode(200)
+        .extract().body().asString();
+    Set<String> ids = new HashSet<>();
+    JsonArray items = new JsonObject(s).getJsonArray("items");
+    for (int i = 0; i < items.size(); i++) {
+      JsonArray clusterRecords = items.getJsonObject(i).getJsonArray("records");
+      for (int j = 0; j < clusterRecords.size(); j++) {
+        JsonObject clusterRecord = clusterRecords.getJsonObject(j);
+        ids.add(clusterRecord.getString("sourceId") + "/"
+            + clusterRecord.getInteger("sourceVersion") + "/"
+            + clusterRecord.getString("localId"));
+      }
+    }
+    return ids;
+  }
+
+  static long orphanClusterRecords(Storage storage) throws Exception {
+    return storage.getPool().query("SELECT COUNT(*) FROM " + storage.getClusterRecordTable()
+            + " WHERE NOT EXISTS (SELECT 1 FROM " + storage.getGlobalRecordTable()
+            + " WHERE id = record_id)")
+        .execute()
+        .toCompletionStage().toCompletableFuture().get().iterator().next().getLong(0);
+  }
+
+  static boolean tableExists(Storage storage, String table) throws Exception {
+    return storage.getPool().preparedQuery("SELECT to_regclass($1) IS NOT NULL")
+        .execute(Tuple.of(storage.getPool().getSchema() + "." + table))
+        .toCompletionStage().toCompletableFuture().get().iterator().next().getBoolean(0);
+  }
+
+  @Test
+  public void testStorageLayout() throws Exception {
+    final String tenant = "tenant3";
+    RestAssured.given()
+        .header("Content-Type", "application/json")
+        .body(new JsonObject().put("id", tenant).encode())
+        .post("/_/proxy/tenants")
+        .then().statusCode(201);
+    RestAssured.given()
+        .header("Content-Type", "application/json")
+        .queryParam("tenantParameters", ReservoirService.PARTITION_BY_SOURCE + "=true,"
+            + ReservoirService.HASH_MATCH_VALUES + "=true")
+        .body(new JsonArray().add(new JsonObject()
+            .put("id", MODULE_PREFIX)
+            .put("action", "enable")).encode())
+        .post("/_/proxy/tenants/" + tenant + "/install")
+        .then().statusCode(200);
+
+    Storage storage = new Storage(vertx, tenant);
+    MatcherAssert.assertThat(storage.getLayout().toCompletionStage().toCompletableFuture().get(),
+        is(new Storage.Layout(true, true)));
+    MatcherAssert.assertThat(new Storage(vertx, TENANT_1).getLayout()
+        .toCompletionStage().toCompletableFuture().get(), is(Storage.Layout.DEFAULT));
+    Assert.assertTrue(tableExists(storage, "cluster_value_hash_idx"));
+    Assert.assertFalse(tableExists(storage, "cluster_value_value_idx"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, tenant)
+        .header("Content-Type", "application/json")
+        .body(new JsonObject()
+            .put("id", "isbn")
+            .put("method", "jsonpath")
+            .put("params", new JsonObject().put("expr", "$.inventory.isbn[*]")).encode())
+        .post("/reservoir/config/matchkeys")
+        .then().statusCode(201);
+
+    JsonArray records = new JsonArray();
+    for (int i = 0; i < 5; i++) {
+      records.add(new JsonObject()
+          .put("localId", "S" + i)
+          .put("payload", new JsonObject()
+              .put("marc", new JsonObject().put("leader", "00914naa  2200337   450 "))
+              .put("inventory", new JsonObject().put("isbn", new JsonArray().add("" + i)))));
+    }
+    ingestRecords(tenant, records, SOURCE_ID_1, 1);
+    ingestRecords(tenant, records, SOURCE_ID_2, 1);
+    // S0 and S1 of source 1 in version 2
+    ingestRecords(tenant, new JsonArray().add(records.getJsonObject(0))
+        .add(records.getJsonObject(1)), SOURCE_ID_1, 2);
+    String version1 = Storage.versionPartitionTable(SOURCE_ID_1, 1);
+    Assert.assertTrue(tableExists(storage, version1));
+    Assert.assertTrue(tableExists(storage, Storage.versionPartitionTable(SOURCE_ID_1, 2)));
+    // clusters show the newest version of a record only
+    MatcherAssert.assertThat(clusterRecordsTotal(tenant), is(10));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, tenant)
+        .param("matchkeyid", "isbn")
+        .param("query", "matchValue=3")
+        .get("/reservoir/clusters")
+        .then().statusCode(200)
+        .body("items", hasSize(1))
+        .body("items[0].matchValues", hasSize(1))
+        .body("items[0].records", hasSize(2));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, tenant)
+        .param("query", "sourceId=" + SOURCE_ID_1 + " AND sourceVersion=1")
+        .delete("/reservoir/records")
+        .then().statusCode(204);
+    Assert.assertFalse(tableExists(storage, version1));
+    MatcherAssert.assertThat(orphanClusterRecords(storage), is(0L));
+    Set<String> ids = clusterRecordIds(tenant);
+    for (int i = 0; i < 5; i++) {
+      Assert.assertFalse(ids.contains(SOURCE_ID_1 + "/1/S" + i));
+      Assert.assertTrue(ids.contains(SOURCE_ID_2 + "/1/S" + i));
+    }
+    Assert.assertTrue(ids.contains(SOURCE_ID_1 + "/2/S0"));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, tenant)
+        .param("query", "sourceId=" + SOURCE_ID_1)
+        .param("count", "exact")
+        .get("/reservoir/records")
+        .then().statusCode(200)
+        .body("resultInfo.totalRecords", is(2));
+    MatcherAssert.assertThat(clusterRecordsTotal(tenant), is(7));
+
+    // deleting a single record removes it from its cluster without a foreign key
+    ingestRecords(tenant, new JsonArray().add(new JsonObject()
+        .put("localId", "S4").put("delete", true)), SOURCE_ID_2, 1);
+    MatcherAssert.assertThat(clusterRecordsTotal(tenant), is(6));
+    MatcherAssert.assertThat(orphanClusterRecords(storage), is(0L));
+    Assert.assertFalse(clusterRecordIds(tenant).contains(SOURCE_ID_2 + "/1/S4"));
+
+    // other queries delete in chunks
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, tenant)
+        .param("query", "sourceId=" + SOURCE_ID_2 + " AND localId=S3")
+        .delete("/reservoir/records")
+        .then().statusCode(204);
+    MatcherAssert.assertThat(clusterRecordsTotal(tenant), is(5));
+    MatcherAssert.assertThat(orphanClusterRecords(storage), is(0L));
+    Assert.assertFalse(clusterRecordIds(tenant).contains(SOURCE_ID_2 + "/1/S3"));
+
+    JsonObject job = submitJob(tenant, new JsonObject().put("type", "deleteGlobalRecords")
+        .put("params", new JsonObject().put("query", "sourceId=" + SOURCE_ID_2)));
+    job = awaitJob(tenant, job.getString("id"));
+    MatcherAssert.assertThat(job.getString("status"), is("completed"));
+    MatcherAssert.assertThat(job.getLong("processed"), is(3L));
+    Assert.assertFalse(tableExists(storage, Storage.sourcePartitionTable(SOURCE_ID_2)));
+    MatcherAssert.assertThat(clusterRecordsTotal(tenant), is(2));
+    MatcherAssert.assertThat(orphanClusterRecords(storage), is(0L));
+    MatcherAssert.assertThat(clusterRecordIds(tenant),
+        is(Set.of(SOURCE_ID_1 + "/2/S0", SOURCE_ID_1 + "/2/S1")));
+
+    // partitions are created again after drop
+    ingestRecords(tenant, records, SOURCE_ID_2, 1);
+    ingestRecords(tenant, records, SOURCE_ID_1, 1);
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, tenant)
+        .param("count", "exact")
+        .get("/reservoir/records")
+        .then().statusCode(200)
+        .body("resultInfo.totalRecords", is(12));
+    MatcherAssert.assertThat(clusterRecordsTotal(tenant), is(10));
+
+    job = submitJob(tenant, new JsonObject().put("type", "initializeMatchKey")
+        .put("params", new JsonObject().put("matchKeyId", "isbn")));
+    MatcherAssert.assertThat(awaitJob(tenant, job.getString("id")).getString("status"),
+        is("completed"));
+    MatcherAssert.assertThat(clusterRecordsTotal(tenant), is(10));
+
+    RestAssured.given()
+        .header("Content-Type", "application/json")
+        .queryParam("purge", "true")
+        .body(new JsonArray().add(new JsonObject()
+            .put("id", MODULE_PREFIX)
+            .put("action", "disable")).encode())
+        .post("/_/proxy/tenants/" + tenant + "/install")
+        .then().statusCode(200);
+  }
+
+  @Test
+  public void testHashMatchValues() {
+    Assert.assertNull(Storage.hashMatchValues(null));
+    MatcherAssert.assertThat(Storage.hashMatchValues("source_id = 'S1'"), is("source_id = 'S1'"));
+    MatcherAssert.assertThat(
+        Storage.hashMatchValues("cluster_values.match_value = 'a''$1' OR x = 1"),
+        is("(cluster_values.match_hash = md5('a''$1')::uuid"
+            + " AND cluster_values.match_value = 'a''$1') OR x = 1"));
+  }
+
+  @Test
+  public void testMatchSourcePartition() {
+    Assert.assertNull(Storage.matchSourcePartition(null));
+    MatcherAssert.assertThat(Storage.matchSourcePartition("source_id = 'S1'"),
+        is(new Storage.SourcePartition("S1", null)));
+    MatcherAssert.assertThat(
+        Storage.matchSourcePartition("(source_id = 'S1' AND source_version=2)"),
+        is(new Storage.SourcePartition("S1", 2)));
+    MatcherAssert.assertThat(
+        Storage.matchSourcePartition("(source_version=2 AND source_id = 'S1')"),
+        is(new Storage.SourcePartition("S1", 2)));
+    Assert.assertNull(Storage.matchSourcePartition("source_id = 's1'"));
+    Assert.assertNull(Storage.matchSourcePartition("source_id = 'S 1'"));
+    Assert.assertNull(Storage.matchSourcePartition("source_id = 'S1' OR source_id = 'S2'"));
+    Assert.assertNull(Storage.matchSourcePartition("(source_id = 'S1' AND local_id = 'S2')"));
+    Assert.assertNull(Storage.matchSourcePartition(
+        "(source_id = 'S1' AND source_version=99999999999)"));
+  }
+
   @Test
   public void testEmptyMatchKeys() {
     JsonObject matchKey = createIsbnMatchKey();
@@ -1836,151 +2598,650 @@ public class MainVerticleTest extends TestBase {
     // populate first time
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header("Content-Type", "application/json")
-        .body(matchKey.encode())
+        .header("Content-Type", "application/json")
+        .body(matchKey.encode())
+        .put("/reservoir/config/matchkeys/" + matchKey.getString("id") + "/initialize")
+        .then().statusCode(200)
+        .contentType("application/json")
+        .body("totalRecords", is(2))
+    ;
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("query", "sourceId=" + SOURCE_ID_1)
+        .get("/reservoir/records")
+        .then().statusCode(200)
+        .contentType("application/json")
+        .body("items", hasSize(2));
+
+    String s = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("matchkeyid", "isbn")
+        .get("/reservoir/clusters")
+        .then().statusCode(200)
+        .contentType("application/json")
+        .body("items", hasSize(2))
+        .body("items[0].records", hasSize(1))
+        .body("items[1].records", hasSize(1))
+        .extract().body().asString();
+    verifyClusterResponse(s, List.of(List.of("S101"), List.of("S102")));
+
+    String sourceId2 = "SOURCE-2";
+    JsonArray records2 = new JsonArray()
+        .add(new JsonObject()
+            .put("localId", "S201")
+            .put("payload", new JsonObject()
+                .put("marc", new JsonObject().put("leader", "00914naa  0201   450 "))
+                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("3")))
+            )
+        )
+        .add(new JsonObject()
+            .put("localId", "S202")
+            .put("payload", new JsonObject()
+                .put("marc", new JsonObject().put("leader", "00914naa  0202   450 "))
+                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("1").add("2").add("3").add("4")))
+            )
+        )
+        .add(new JsonObject()
+            .put("localId", "S203")
+            .put("payload", new JsonObject()
+                .put("marc", new JsonObject().put("leader", "00914naa  0203   450 "))
+                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("5").add("6")))
+            )
+        )
+        .add(new JsonObject()
+            .put("localId", "S204")
+            .put("payload", new JsonObject()
+                .put("marc", new JsonObject().put("leader", "00914naa  0204   450 "))
+                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("5")))
+            )
+        )
+        .add(new JsonObject()
+            .put("localId", "S205")
+            .put("payload", new JsonObject()
+                .put("marc", new JsonObject().put("leader", "00914naa  0204   450 "))
+                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("4")))
+            )
+        );
+    ingestRecords(records2, sourceId2);
+
+    // populate again with both sources
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .body(matchKey.encode())
+        .put("/reservoir/config/matchkeys/" + matchKey.getString("id") + "/initialize")
+        .then().statusCode(200)
+        .contentType("application/json")
+        .body("totalRecords", is(7))
+    ;
+
+    s = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("matchkeyid", "isbn")
+        .get("/reservoir/clusters")
+        .then().statusCode(200)
+        .contentType("application/json")
+        .body("items", hasSize(2))
+        .extract().body().asString();
+    verifyClusterResponse(s, List.of(List.of("S101", "S102", "S201", "S202", "S205"), List.of("S203", "S204")));
+
+    s = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("matchkeyid", "isbn")
+        .param("query", "sourceId=" + SOURCE_ID_1 + " and sourceVersion = 1")
+        .get("/reservoir/clusters")
+        .then().statusCode(200)
+        .contentType("application/json")
+        .body("items", hasSize(1))
+        .extract().body().asString();
+    verifyClusterResponse(s, List.of(List.of("S101", "S102", "S201", "S202", "S205")));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("query", "localId=S101 and sourceId=" + SOURCE_ID_1)
+        .get("/reservoir/records")
+        .then().statusCode(200)
+        .contentType("application/json")
+        .body("items", hasSize(1));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .param("query", "localId==notfound")
+        .get("/reservoir/records")
+        .then().statusCode(200)
+        .contentType("application/json")
+        .body("items", hasSize(0));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .delete("/reservoir/config/matchkeys/" + matchKey.getString("id"))
+        .then().statusCode(204);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .delete("/reservoir/config/matchkeys/" + matchKey.getString("id"))
+        .then().statusCode(404);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .body(matchKey.encode())
+        .put("/reservoir/config/matchkeys/" + matchKey.getString("id") + "/initialize")
+        .then().statusCode(404)
+        .contentType("text/plain")
+        .body(is("MatchKey isbn not found"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("query", "cql.allRecords=true")
+        .delete("/reservoir/records")
+        .then().statusCode(204);
+  }
+
+  /**
+   * Cluster identifier and datestamp by lowest localId of cluster.
+   */
+  static Map<String, JsonObject> clustersByFirstLocalId(String s) {
+    Map<String, JsonObject> clusters = new HashMap<>();
+    JsonArray items = new JsonObject(s).getJsonArray("items");
+    for (int i = 0; i < items.size(); i++) {
+      JsonObject item = items.getJsonObject(i);
+      JsonArray records = item.getJsonArray("records");
+      String first = null;
+      for (int j = 0; j < records.size(); j++) {
+        String localId = records.getJsonObject(j).getString("localId");
+        if (first == null || localId.compareTo(first) < 0) {
+          first = localId;
+        }
+      }
+      clusters.put(first, new JsonObject()
+          .put("clusterId", item.getString("clusterId"))
+          .put("datestamp", item.getString("datestamp")));
+    }
+    return clusters;
+  }
+
+  @Test
+  public void testMatchKeysInitializeShadow() throws Exception {
+    JsonObject matchKey = createIsbnMatchKey("manual");
+
+    JsonArray records = new JsonArray();
+    String[][] isbns = {{"1"}, {"2"}, {"3", "4"}, {"1", "4"}, {}, {"5"}, {"5", "6"}};
+    for (int i = 0; i < isbns.length; i++) {
+      records.add(new JsonObject()
+          .put("localId", "S" + i)
+          .put("payload", new JsonObject()
+              .put("marc", new JsonObject().put("leader", "00914naa  0101   450 "))
+              .put("inventory", new JsonObject().put("isbn", new JsonArray(List.of(isbns[i]))))
+          ));
+    }
+    ingestRecords(records, SOURCE_ID_1);
+
+    int pageSize = ClusterRebuild.pageSize;
+    int insertBatchSize = ClusterRebuild.insertBatchSize;
+    int heapLimit = ClusterRebuild.getHeapLimit();
+    ClusterRebuild.pageSize = 2;
+    ClusterRebuild.insertBatchSize = 3;
+    ClusterRebuild.setHeapLimit(0);
+    try {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .put("/reservoir/config/matchkeys/" + matchKey.getString("id") + "/initialize")
+          .then().statusCode(200)
+          .contentType("application/json")
+          .body("totalRecords", is(7))
+          .body("clustersTotal", is(4))
+          .body("clustersAdded", is(4))
+          .body("clustersRemoved", is(0));
+
+      String s = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("matchkeyid", matchKey.getString("id"))
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .contentType("application/json")
+          .body("items", hasSize(4))
+          .extract().body().asString();
+      verifyClusterResponse(s, List.of(List.of("S0", "S2", "S3"), List.of("S1"), List.of("S4"),
+          List.of("S5", "S6")));
+      Map<String, JsonObject> clusters1 = clustersByFirstLocalId(s);
+
+      // same clusters: identifiers and datestamps are kept
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .put("/reservoir/config/matchkeys/" + matchKey.getString("id") + "/initialize")
+          .then().statusCode(200)
+          .contentType("application/json")
+          .body("totalRecords", is(7))
+          .body("clustersTotal", is(4))
+          .body("clustersAdded", is(0))
+          .body("clustersRemoved", is(0));
+
+      s = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("matchkeyid", matchKey.getString("id"))
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .contentType("application/json")
+          .extract().body().asString();
+      Assert.assertEquals(clusters1, clustersByFirstLocalId(s));
+
+      // S4 joins S1; other clusters are unchanged
+      ingestRecords(new JsonArray().add(new JsonObject()
+          .put("localId", "S4")
+          .put("payload", new JsonObject()
+              .put("marc", new JsonObject().put("leader", "00914naa  0101   450 "))
+              .put("inventory", new JsonObject().put("isbn", new JsonArray().add("2"))))),
+          SOURCE_ID_1);
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .put("/reservoir/config/matchkeys/" + matchKey.getString("id") + "/initialize")
+          .then().statusCode(200)
+          .contentType("application/json")
+          .body("totalRecords", is(7))
+          .body("clustersTotal", is(3))
+          .body("clustersAdded", is(1))
+          .body("clustersRemoved", is(2));
+
+      s = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("matchkeyid", matchKey.getString("id"))
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .contentType("application/json")
+          .body("items", hasSize(3))
+          .extract().body().asString();
+      verifyClusterResponse(s, List.of(List.of("S0", "S2", "S3"), List.of("S1", "S4"),
+          List.of("S5", "S6")));
+      Map<String, JsonObject> clusters2 = clustersByFirstLocalId(s);
+      Assert.assertEquals(clusters1.get("S0"), clusters2.get("S0"));
+      Assert.assertEquals(clusters1.get("S5"), clusters2.get("S5"));
+      Assert.assertNotEquals(clusters1.get("S1").getString("clusterId"),
+          clusters2.get("S1").getString("clusterId"));
+        } finally {
+      ClusterRebuild.pageSize = pageSize;
+      ClusterRebuild.insertBatchSize = insertBatchSize;
+      ClusterRebuild.setHeapLimit(heapLimit);
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .get("/reservoir/config/matchkeys/" + matchKey.getString("id") + "/initialize")
+        .then().statusCode(404)
+        .contentType("text/plain")
+        .body(is("MatchKey isbn is not being initialized"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .get("/reservoir/config/matchkeys/other/initialize")
+        .then().statusCode(404)
+        .contentType("text/plain")
+        .body(is("MatchKey other not found"));
+
+    // rebuild by another instance holds the lock in the database
+    Storage storage = new Storage(vertx, TENANT_1);
+    Tuple lockTuple = Tuple.of(ClusterRebuild.key(storage, matchKey.getString("id")));
+    SqlConnection conn = storage.getPool().getConnection()
+        .toCompletionStage().toCompletableFuture().get();
+    try {
+      conn.preparedQuery("SELECT pg_advisory_lock(hashtext($1))").execute(lockTuple)
+          .toCompletionStage().toCompletableFuture().get();
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .put("/reservoir/config/matchkeys/" + matchKey.getString("id") + "/initialize")
+          .then().statusCode(400)
+          .contentType("text/plain")
+          .body(is("MatchKey isbn is being initialized"));
+      conn.preparedQuery("SELECT pg_advisory_unlock(hashtext($1))").execute(lockTuple)
+          .toCompletionStage().toCompletableFuture().get();
+    } finally {
+      conn.close();
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
         .put("/reservoir/config/matchkeys/" + matchKey.getString("id") + "/initialize")
         .then().statusCode(200)
-        .contentType("application/json")
-        .body("totalRecords", is(2))
-    ;
+        .body("totalRecords", is(7));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header("Content-Type", "application/json")
-        .param("query", "sourceId=" + SOURCE_ID_1)
-        .get("/reservoir/records")
-        .then().statusCode(200)
-        .contentType("application/json")
-        .body("items", hasSize(2));
+        .delete("/reservoir/config/matchkeys/" + matchKey.getString("id"))
+        .then().statusCode(204);
 
-    String s = RestAssured.given()
+    RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header("Content-Type", "application/json")
-        .param("matchkeyid", "isbn")
-        .get("/reservoir/clusters")
-        .then().statusCode(200)
-        .contentType("application/json")
-        .body("items", hasSize(2))
-        .body("items[0].records", hasSize(1))
-        .body("items[1].records", hasSize(1))
-        .extract().body().asString();
-    verifyClusterResponse(s, List.of(List.of("S101"), List.of("S102")));
+        .param("query", "cql.allRecords=true")
+        .delete("/reservoir/records")
+        .then().statusCode(204);
+  }
 
-    String sourceId2 = "SOURCE-2";
-    JsonArray records2 = new JsonArray()
-        .add(new JsonObject()
-            .put("localId", "S201")
-            .put("payload", new JsonObject()
-                .put("marc", new JsonObject().put("leader", "00914naa  0201   450 "))
-                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("3")))
-            )
-        )
-        .add(new JsonObject()
-            .put("localId", "S202")
-            .put("payload", new JsonObject()
-                .put("marc", new JsonObject().put("leader", "00914naa  0202   450 "))
-                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("1").add("2").add("3").add("4")))
-            )
-        )
-        .add(new JsonObject()
-            .put("localId", "S203")
-            .put("payload", new JsonObject()
-                .put("marc", new JsonObject().put("leader", "00914naa  0203   450 "))
-                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("5").add("6")))
-            )
-        )
-        .add(new JsonObject()
-            .put("localId", "S204")
-            .put("payload", new JsonObject()
-                .put("marc", new JsonObject().put("leader", "00914naa  0204   450 "))
-                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("5")))
-            )
-        )
-        .add(new JsonObject()
-            .put("localId", "S205")
-            .put("payload", new JsonObject()
-                .put("marc", new JsonObject().put("leader", "00914naa  0204   450 "))
-                .put("inventory", new JsonObject().put("isbn", new JsonArray().add("4")))
-            )
-        );
-    ingestRecords(records2, sourceId2);
+  @Test
+  public void testMatchKeysInitializeWhileIngest() {
+    // slow matcher, so that there is time to ingest while the rebuild reads records
+    JsonObject module = new JsonObject()
+        .put("id", "slow-isbn")
+        .put("type", "javascript")
+        .put("script", "x => { const end = Date.now() + 200; while (Date.now() < end) {}"
+            + " return JSON.parse(x).inventory.isbn; }");
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header("Content-Type", "application/json")
+        .body(module.encode())
+        .post("/reservoir/config/modules")
+        .then().statusCode(201);
 
-    // populate again with both sources
+    JsonObject matchKey = new JsonObject()
+        .put("id", "slow")
+        .put("matcher", "slow-isbn")
+        .put("update", "ingest");
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header("Content-Type", "application/json")
         .body(matchKey.encode())
-        .put("/reservoir/config/matchkeys/" + matchKey.getString("id") + "/initialize")
+        .post("/reservoir/config/matchkeys")
+        .then().statusCode(201);
+
+    JsonArray records = new JsonArray();
+    for (int i = 0; i < 20; i++) {
+      records.add(isbnRecord(String.format("S%02d", i), Integer.toString(i)));
+    }
+    ingestRecords(records, SOURCE_ID_1);
+
+    // the record with the lowest identifier is in the first page read
+    JsonArray items = new JsonObject(RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("limit", "100")
+        .get("/reservoir/records")
         .then().statusCode(200)
-        .contentType("application/json")
-        .body("totalRecords", is(7))
-    ;
+        .extract().body().asString()).getJsonArray("items");
+    JsonObject first = items.getJsonObject(0);
+    for (int i = 1; i < items.size(); i++) {
+      if (items.getJsonObject(i).getString("globalId").compareTo(first.getString("globalId")) < 0) {
+        first = items.getJsonObject(i);
+      }
+    }
+    String changed = first.getString("localId");
 
-    s = RestAssured.given()
+    int pageSize = ClusterRebuild.pageSize;
+    ClusterRebuild.pageSize = 2;
+    String jobId = null;
+    try {
+      jobId = submitJob(new JsonObject().put("type", "initializeMatchKey")
+          .put("params", new JsonObject().put("matchKeyId", "slow"))).getString("id");
+      Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> {
+        String s = RestAssured.given()
+            .header(XOkapiHeaders.TENANT, TENANT_1)
+            .get("/reservoir/config/matchkeys/slow/initialize")
+            .then().extract().body().asString();
+        return s.startsWith("{") && new JsonObject(s).getInteger("recordsRead") >= 2;
+      });
+      // N01 is new and may or may not be read; the changed record has been read already
+      ingestRecords(new JsonArray()
+          .add(isbnRecord("N01", "3", "new"))
+          .add(isbnRecord(changed, "new")), SOURCE_ID_1);
+
+      JsonObject job = awaitJob(jobId);
+      MatcherAssert.assertThat(job.getString("status"), is("completed"));
+      MatcherAssert.assertThat(job.getJsonObject("result").getInteger("recordsReclustered"),
+          greaterThanOrEqualTo(1));
+
+      String s = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("matchkeyid", "slow")
+          .param("limit", "100")
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .contentType("application/json")
+          .extract().body().asString();
+      Set<String> joined = new HashSet<>(List.of("S03", "N01", changed));
+      List<List<String>> expected = new ArrayList<>();
+      expected.add(new ArrayList<>(joined));
+      for (int i = 0; i < 20; i++) {
+        String localId = String.format("S%02d", i);
+        if (!joined.contains(localId)) {
+          expected.add(List.of(localId));
+        }
+      }
+      verifyClusterResponse(s, expected);
+    } finally {
+      ClusterRebuild.pageSize = pageSize;
+      if (jobId != null) {
+        RestAssured.given()
+            .header(XOkapiHeaders.TENANT, TENANT_1)
+            .delete("/reservoir/jobs/" + jobId)
+            .then().statusCode(204);
+      }
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .delete("/reservoir/config/matchkeys/slow")
+        .then().statusCode(204);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .delete("/reservoir/config/modules/slow-isbn")
+        .then().statusCode(204);
+
+    RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("query", "cql.allRecords=true")
+        .delete("/reservoir/records")
+        .then().statusCode(204);
+  }
+
+  static JsonObject submitJob(JsonObject request) {
+    return submitJob(TENANT_1, request);
+  }
+
+  static JsonObject submitJob(String tenant, JsonObject request) {
+    String s = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, tenant)
         .header("Content-Type", "application/json")
-        .param("matchkeyid", "isbn")
-        .get("/reservoir/clusters")
-        .then().statusCode(200)
+        .body(request.encode())
+        .post("/reservoir/jobs")
+        .then().statusCode(201)
         .contentType("application/json")
-        .body("items", hasSize(2))
+        .body("status", is("running"))
         .extract().body().asString();
-    verifyClusterResponse(s, List.of(List.of("S101", "S102", "S201", "S202", "S205"), List.of("S203", "S204")));
+    return new JsonObject(s);
+  }
 
-    s = RestAssured.given()
+  static JsonObject awaitJob(String id) {
+    return awaitJob(TENANT_1, id);
+  }
+
+  static JsonObject awaitJob(String tenant, String id) {
+    JsonObject[] job = new JsonObject[1];
+    Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> {
+      job[0] = new JsonObject(RestAssured.given()
+          .header(XOkapiHeaders.TENANT, tenant)
+          .get("/reservoir/jobs/" + id)
+          .then().statusCode(200)
+          .contentType("application/json")
+          .extract().body().asString());
+      return !"running".equals(job[0].getString("status"));
+    });
+    return job[0];
+  }
+
+  @Test
+  public void testJobs() throws Exception {
+    RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header("Content-Type", "application/json")
-        .param("matchkeyid", "isbn")
-        .param("query", "sourceId=" + SOURCE_ID_1 + " and sourceVersion = 1")
-        .get("/reservoir/clusters")
-        .then().statusCode(200)
-        .contentType("application/json")
-        .body("items", hasSize(1))
-        .extract().body().asString();
-    verifyClusterResponse(s, List.of(List.of("S101", "S102", "S201", "S202", "S205")));
+        .body(new JsonObject().put("type", "deleteGlobalRecords")
+            .put("params", new JsonObject()).encode())
+        .post("/reservoir/jobs")
+        .then().statusCode(400)
+        .body(is("Must specify query for deleteGlobalRecords"));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header("Content-Type", "application/json")
-        .param("query", "localId=S101 and sourceId=" + SOURCE_ID_1)
-        .get("/reservoir/records")
-        .then().statusCode(200)
-        .contentType("application/json")
-        .body("items", hasSize(1));
+        .body(new JsonObject().put("type", "other")
+            .put("params", new JsonObject()).encode())
+        .post("/reservoir/jobs")
+        .then().statusCode(400);
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header("Content-Type", "application/json")
-        .param("query", "localId==notfound")
-        .get("/reservoir/records")
-        .then().statusCode(200)
-        .contentType("application/json")
-        .body("items", hasSize(0));
+        .body(new JsonObject().put("type", "touchClusters")
+            .put("params", new JsonObject().put("query", "sourceId=" + SOURCE_ID_1)).encode())
+        .post("/reservoir/jobs")
+        .then().statusCode(400)
+        .body(is("query too broad, must at least contain 'matchkeyId' and 'sourceId'"));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .delete("/reservoir/config/matchkeys/" + matchKey.getString("id"))
-        .then().statusCode(204);
+        .header("Content-Type", "application/json")
+        .body(new JsonObject().put("type", "initializeMatchKey")
+            .put("params", new JsonObject().put("matchKeyId", "isbn")).encode())
+        .post("/reservoir/jobs")
+        .then().statusCode(400)
+        .body(is("MatchKey isbn not found"));
 
+    String unknownId = UUID.randomUUID().toString();
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .delete("/reservoir/config/matchkeys/" + matchKey.getString("id"))
+        .get("/reservoir/jobs/" + unknownId)
         .then().statusCode(404);
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header("Content-Type", "application/json")
-        .body(matchKey.encode())
-        .put("/reservoir/config/matchkeys/" + matchKey.getString("id") + "/initialize")
-        .then().statusCode(404)
-        .contentType("text/plain")
-        .body(is("MatchKey isbn not found"));
+        .delete("/reservoir/jobs/" + unknownId)
+        .then().statusCode(404);
+
+    createIsbnMatchKey();
+    JsonArray records = new JsonArray();
+    for (int i = 0; i < 5; i++) {
+      records.add(new JsonObject()
+          .put("localId", "S" + i)
+          .put("payload", new JsonObject()
+              .put("marc", new JsonObject().put("leader", "00914naa  2200337   450 "))
+              .put("inventory", new JsonObject().put("isbn", new JsonArray().add("" + i)))));
+    }
+    ingestRecords(records, SOURCE_ID_1);
+
+    int chunkSize = JobService.getChunkSize();
+    List<String> jobIds = new ArrayList<>();
+    try {
+      JobService.setChunkSize(2);
+
+      String s = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("matchkeyid", "isbn")
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .body("items", hasSize(5))
+          .extract().body().asString();
+      String datestamp1 = new JsonObject(s).getJsonArray("items").getJsonObject(0)
+          .getString("datestamp");
+
+      JsonObject job = submitJob(new JsonObject().put("type", "touchClusters")
+          .put("params", new JsonObject()
+              .put("query", "matchkeyId=isbn AND sourceId=" + SOURCE_ID_1)));
+      jobIds.add(job.getString("id"));
+      job = awaitJob(job.getString("id"));
+      MatcherAssert.assertThat(job.getString("status"), is("completed"));
+      MatcherAssert.assertThat(job.getLong("processed"), is(5L));
+      MatcherAssert.assertThat(job.getLong("total"), is(5L));
+      Assert.assertNotNull(job.getString("finished"));
+
+      s = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("matchkeyid", "isbn")
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .body("items", hasSize(5))
+          .extract().body().asString();
+      JsonArray items = new JsonObject(s).getJsonArray("items");
+      for (int i = 0; i < items.size(); i++) {
+        MatcherAssert.assertThat(items.getJsonObject(i).getString("datestamp"), greaterThan(datestamp1));
+      }
+
+      job = submitJob(new JsonObject().put("type", "initializeMatchKey")
+          .put("params", new JsonObject().put("matchKeyId", "isbn")));
+      jobIds.add(job.getString("id"));
+      job = awaitJob(job.getString("id"));
+      MatcherAssert.assertThat(job.getString("status"), is("completed"));
+      MatcherAssert.assertThat(job.getLong("processed"), is(5L));
+      MatcherAssert.assertThat(job.getJsonObject("result").getInteger("clustersTotal"), is(5));
+
+      // a running job whose owner went away is resumed from its checkpoint
+      UUID staleId = UUID.randomUUID();
+      jobIds.add(staleId.toString());
+      Storage storage = new Storage(vertx, TENANT_1);
+      storage.getPool().preparedQuery("INSERT INTO " + storage.getJobTable()
+              + " (id, type, params, status, processed, step_processed, total, checkpoint,"
+              + " owner, created, updated)"
+              + " VALUES ($1, $2, $3, 'running', 2, 1, 5, $4, $5, $6, $6)")
+          .execute(Tuple.of(staleId, "deleteGlobalRecords",
+              new JsonObject().put("query", "sourceId=" + SOURCE_ID_1),
+              new JsonObject().put("after", "00000000-0000-0000-0000-000000000000"),
+              UUID.randomUUID(), LocalDateTime.now(ZoneOffset.UTC).minusHours(1)))
+          .toCompletionStage().toCompletableFuture().get();
+
+      job = awaitJob(staleId.toString());
+      MatcherAssert.assertThat(job.getString("status"), is("completed"));
+      MatcherAssert.assertThat(job.getLong("processed"), is(7L));
+
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("count", "exact")
+          .get("/reservoir/records")
+          .then().statusCode(200)
+          .body("resultInfo.totalRecords", is(0));
+
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("matchkeyid", "isbn")
+          .get("/reservoir/clusters")
+          .then().statusCode(200)
+          .body("items", hasSize(0));
+
+      job = submitJob(new JsonObject().put("type", "initializeMatchKey")
+          .put("params", new JsonObject().put("matchKeyId", "isbn")));
+      jobIds.add(job.getString("id"));
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .delete("/reservoir/config/matchkeys/isbn")
+          .then().statusCode(204);
+      job = awaitJob(job.getString("id"));
+      // the match key may be removed before or while the job runs
+      Assert.assertNotEquals("running", job.getString("status"));
+
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .get("/reservoir/jobs")
+          .then().statusCode(200)
+          .contentType("application/json")
+          .body("items", hasSize(4))
+          .body("resultInfo.totalRecords", is(4));
+    } finally {
+      JobService.setChunkSize(chunkSize);
+      for (String id : jobIds) {
+        RestAssured.given()
+            .header(XOkapiHeaders.TENANT, TENANT_1)
+            .delete("/reservoir/jobs/" + id)
+            .then().statusCode(204);
+      }
+    }
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .param("query", "cql.allRecords=true")
-        .delete("/reservoir/records")
-        .then().statusCode(204);
+        .get("/reservoir/jobs")
+        .then().statusCode(200)
+        .body("items", hasSize(0));
   }
 
   @Test
@@ -2056,7 +3317,7 @@ public class MainVerticleTest extends TestBase {
   }
 
   @Test
-  public void testCodeModulesCRUD() {
+  public void testCodeModulesCRUD() throws Exception {
     //GET empty list no count
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
@@ -2136,6 +3397,12 @@ public class MainVerticleTest extends TestBase {
         .then().statusCode(200)
         .contentType("application/json")
         .body(Matchers.is(module.asJson().encode()));
+
+    // code fetched from url is stored along with the module
+    Storage storage = new Storage(vertx, TENANT_1);
+    Assert.assertNotNull(storage.selectCodeModuleEntity(module.getId())
+        .toCompletionStage().toCompletableFuture().get().getSource());
+
     // reload existing module
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
@@ -2833,6 +4100,23 @@ public class MainVerticleTest extends TestBase {
         .extract().body().asString();
     verifyOaiResponse(s, "ListRecords", identifiers, 0, null);
 
+    // identical records: datestamps not updated
+    ingestRecords(records1, SOURCE_ID_1);
+    s = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("verb", "ListRecords")
+        .param("from", time3)
+        .param("metadataPrefix", "marcxml")
+        .get("/reservoir/oai")
+        .then().statusCode(200)
+        .contentType("text/xml")
+        .extract().body().asString();
+    verifyOaiResponse(s, "ListRecords", identifiers, 0, null);
+
+    for (int i = 0; i < records1.size(); i++) {
+      records1.getJsonObject(i).getJsonObject("payload").getJsonObject("marc")
+          .put("leader", "00914nab  2200337   450 ");
+    }
     ingestRecords(records1, SOURCE_ID_1);
     s = RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
@@ -2962,6 +4246,53 @@ public class MainVerticleTest extends TestBase {
     Assert.assertEquals(10, identifiers.size());
   }
 
+  @Test
+  public void testOaiListRecordsOrder() throws XMLStreamException, IOException, SAXException {
+    createIsbnMatchKey();
+
+    JsonArray records = new JsonArray();
+    for (int i = 0; i < 60; i++) {
+      records.add(new JsonObject()
+          .put("localId", "S" + i)
+          .put("payload", new JsonObject()
+              .put("marc", new JsonObject().put("leader", "00914naa  0101   450 "))
+              .put("inventory", new JsonObject().put("isbn", new JsonArray().add(Integer.toString(i))))
+          ));
+    }
+    ingestRecords(records, SOURCE_ID_1);
+
+    // one page spanning more than one prefetch batch
+    List<String> identifiers = new LinkedList<>();
+    String s = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .param("verb", "ListRecords")
+        .param("limit", "100")
+        .get("/reservoir/oai")
+        .then().statusCode(200)
+        .contentType("text/xml")
+        .extract().body().asString();
+    Assert.assertNull(verifyOaiResponse(s, "ListRecords", identifiers, 60, null));
+
+    // pages are split by datestamp, cluster_id so their concatenation is in that order
+    List<String> paged = new LinkedList<>();
+    String token = null;
+    do {
+      RequestSpecification request = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .param("verb", "ListIdentifiers")
+          .param("limit", "7");
+      if (token != null) {
+        request.param("resumptionToken", token);
+      }
+      s = request.get("/reservoir/oai")
+          .then().statusCode(200)
+          .contentType("text/xml")
+          .extract().body().asString();
+      token = verifyOaiResponse(s, "ListIdentifiers", paged, -1, null);
+    } while (token != null);
+    Assert.assertEquals(paged, identifiers);
+  }
+
   @Test
   public void testOaiResumptionToken2(TestContext context) {
     createIsbnMatchKey();
@@ -3833,6 +5164,7 @@ public class MainVerticleTest extends TestBase {
         .body("items[0].totalDeleted", is(0))
         .body("items[0].totalInserted", is(10))
         .body("items[0].totalUpdated", is(0))
+        .body("items[0].totalUnchanged", is(0))
         .body("items[0].totalRecords", is(10))
         .body("items[0].totalRequests", is(3)) // 4 + 4 + 2 : 3 requests with limit 4
         .body("items[0].config.id", is(PMH_CLIENT_ID))
@@ -2,12 +2,15 @@ package org.folio.reservoir.server;
 
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.file.FileSystem;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.client.predicate.ResponsePredicate;
 import io.vertx.ext.web.multipart.MultipartForm;
+import java.util.HashSet;
+import java.util.Set;
 import org.folio.okapi.common.XOkapiHeaders;
 import org.junit.Before;
 import org.junit.Test;
@@ -330,7 +333,8 @@ public class UploadTest extends TestBase {
             assertThat(responseBody.getJsonObject("marc3.xml").getInteger("processed"), is(3));
             assertThat(responseBody.getJsonObject("marc3.xml").getInteger("ignored"), is(0));
             assertThat(responseBody.getJsonObject("marc3.xml").getInteger("inserted"), is(0));
-            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("updated"), is(3));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("updated"), is(0));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("unchanged"), is(3));
             assertThat(responseBody.getJsonObject("marc3.xml").getInteger("deleted"), is(0));
             return webClient.getAbs(OKAPI_URL + "/reservoir/records")
                 .addQueryParam("query", "sourceId = \"SOURCE-5\"")
@@ -346,6 +350,238 @@ public class UploadTest extends TestBase {
         .onComplete(context.asyncAssertSuccess());
   }
 
+  @Test
+  public void uploadMarcXmlBatched(TestContext context) {
+    MultipartForm requestForm1 = MultipartForm.create()
+        .binaryFileUpload("records", "marc3.xml", marc3xmlBuffer,  "text/xml");
+    MultipartForm requestForm2 = MultipartForm.create()
+        .binaryFileUpload("records", "marc1-delete.xml", marc1xmlBuffer,  "text/xml");
+
+    // upload 3 new records in batches of 2
+    webClient.postAbs(OKAPI_URL + "/reservoir/upload")
+        .expect(ResponsePredicate.SC_OK)
+        .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+        .putHeader(XOkapiHeaders.PERMISSIONS, "[\"" + PERM_PREFIX + "." + "SOURCE-6" + "\"]")
+        .addQueryParam("sourceId", "SOURCE-6")
+        .addQueryParam("localIdPath",  "$.marc.fields[*].001")
+        .addQueryParam("batchSize", "2")
+        .sendMultipartForm(requestForm1)
+        .compose(res -> {
+            JsonObject responseBody = res.bodyAsJsonObject();
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("processed"), is(3));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("ignored"), is(0));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("inserted"), is(3));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("updated"), is(0));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("deleted"), is(0));
+            // same records again
+            return webClient.postAbs(OKAPI_URL + "/reservoir/upload")
+                .expect(ResponsePredicate.SC_OK)
+                .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+                .putHeader(XOkapiHeaders.PERMISSIONS, "[\"" + PERM_PREFIX + "." + "SOURCE-6" + "\"]")
+                .addQueryParam("sourceId", "SOURCE-6")
+                .addQueryParam("localIdPath",  "$.marc.fields[*].001")
+                .addQueryParam("batchSize", "2")
+                .sendMultipartForm(requestForm1);
+        })
+        .compose(res -> {
+            JsonObject responseBody = res.bodyAsJsonObject();
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("processed"), is(3));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("inserted"), is(0));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("updated"), is(0));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("unchanged"), is(3));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("deleted"), is(0));
+            // upload 1 "delete" record
+            return webClient.postAbs(OKAPI_URL + "/reservoir/upload")
+                .expect(ResponsePredicate.SC_OK)
+                .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+                .putHeader(XOkapiHeaders.PERMISSIONS, "[\"" + PERM_PREFIX + "." + "SOURCE-6" + "\"]")
+                .addQueryParam("sourceId", "SOURCE-6")
+                .addQueryParam("localIdPath",  "$.marc.fields[*].001")
+                .addQueryParam("batchSize", "2")
+                .addQueryParam("xmlFixing", "true")
+                .sendMultipartForm(requestForm2);
+        })
+        .compose(res -> {
+            JsonObject responseBody = res.bodyAsJsonObject();
+            assertThat(responseBody.getJsonObject("marc1-delete.xml").getInteger("processed"), is(1));
+            assertThat(responseBody.getJsonObject("marc1-delete.xml").getInteger("inserted"), is(0));
+            assertThat(responseBody.getJsonObject("marc1-delete.xml").getInteger("updated"), is(0));
+            assertThat(responseBody.getJsonObject("marc1-delete.xml").getInteger("deleted"), is(1));
+            return webClient.getAbs(OKAPI_URL + "/reservoir/records")
+                .addQueryParam("query", "sourceId = \"SOURCE-6\"")
+                .expect(ResponsePredicate.SC_OK)
+                .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+                .send();
+        })
+        .map(res -> {
+          JsonObject responseBody = res.bodyAsJsonObject();
+          assertThat(responseBody.getJsonArray("items").size(), is(2));
+          return null;
+        })
+        .onComplete(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void uploadMarcXmlBatchedWithMatcher(TestContext context) {
+    MultipartForm requestForm = MultipartForm.create()
+        .binaryFileUpload("records", "marc3.xml", marc3xmlBuffer,  "text/xml");
+
+    JsonObject module = new JsonObject()
+        .put("id", "title-matcher")
+        .put("type", "jsonpath")
+        .put("script", "$.marc.fields[*].245.subfields[*].a");
+    JsonObject matchKey = new JsonObject()
+        .put("id", "title")
+        .put("matcher", "title-matcher");
+
+    webClient.postAbs(OKAPI_URL + "/reservoir/config/modules")
+        .expect(ResponsePredicate.SC_CREATED)
+        .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+        .sendJsonObject(module)
+        .compose(res -> webClient.postAbs(OKAPI_URL + "/reservoir/config/matchkeys")
+            .expect(ResponsePredicate.SC_CREATED)
+            .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+            .sendJsonObject(matchKey))
+        .compose(res -> webClient.postAbs(OKAPI_URL + "/reservoir/upload")
+            .expect(ResponsePredicate.SC_OK)
+            .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+            .putHeader(XOkapiHeaders.PERMISSIONS, "[\"" + PERM_PREFIX + "." + "SOURCE-8" + "\"]")
+            .addQueryParam("sourceId", "SOURCE-8")
+            .addQueryParam("localIdPath",  "$.marc.fields[*].001")
+            .addQueryParam("batchSize", "2")
+            .sendMultipartForm(requestForm))
+        .compose(res -> {
+          JsonObject responseBody = res.bodyAsJsonObject();
+          assertThat(responseBody.getJsonObject("marc3.xml").getInteger("processed"), is(3));
+          assertThat(responseBody.getJsonObject("marc3.xml").getInteger("inserted"), is(3));
+          return webClient.getAbs(OKAPI_URL + "/reservoir/clusters")
+              .addQueryParam("matchkeyid", "title")
+              .expect(ResponsePredicate.SC_OK)
+              .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+              .send();
+        })
+        .compose(res -> {
+          JsonArray items = res.bodyAsJsonObject().getJsonArray("items");
+          assertThat(items.size(), is(3));
+          Set<String> localIds = new HashSet<>();
+          Set<String> matchValues = new HashSet<>();
+          for (int i = 0; i < items.size(); i++) {
+            JsonObject cluster = items.getJsonObject(i);
+            cluster.getJsonArray("records").forEach(r ->
+                localIds.add(((JsonObject) r).getString("localId")));
+            cluster.getJsonArray("matchValues").forEach(v -> matchValues.add((String) v));
+          }
+          assertThat(localIds, is(Set.of("73209622 //r823", "11224466", "77123332")));
+          assertThat(matchValues, is(Set.of("The Computer Bible /", "How to program a computer",
+              "Voyager Diacritic test -- New input 001 (SBIE).")));
+          return webClient.deleteAbs(OKAPI_URL + "/reservoir/config/matchkeys/title")
+              .expect(ResponsePredicate.SC_NO_CONTENT)
+              .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+              .send();
+        })
+        .compose(res -> webClient.deleteAbs(OKAPI_URL + "/reservoir/config/modules/title-matcher")
+            .expect(ResponsePredicate.SC_NO_CONTENT)
+            .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+            .send())
+        .onComplete(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void uploadMarcXmlBulk(TestContext context) {
+    MultipartForm requestForm = MultipartForm.create()
+        .binaryFileUpload("records", "marc3.xml", marc3xmlBuffer,  "text/xml");
+
+    webClient.postAbs(OKAPI_URL + "/reservoir/upload")
+        .expect(ResponsePredicate.SC_OK)
+        .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+        .putHeader(XOkapiHeaders.PERMISSIONS, "[\"" + PERM_PREFIX + "." + "SOURCE-7" + "\"]")
+        .addQueryParam("sourceId", "SOURCE-7")
+        .addQueryParam("localIdPath",  "$.marc.fields[*].001")
+        .addQueryParam("mode", "bulk")
+        .sendMultipartForm(requestForm)
+        .compose(res -> {
+            JsonObject responseBody = res.bodyAsJsonObject();
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("processed"), is(3));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("ignored"), is(0));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("inserted"), is(3));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("updated"), is(0));
+            assertThat(responseBody.getJsonObject("marc3.xml").getInteger("deleted"), is(0));
+            return webClient.getAbs(OKAPI_URL + "/reservoir/records")
+                .addQueryParam("query", "sourceId = \"SOURCE-7\"")
+                .expect(ResponsePredicate.SC_OK)
+                .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+                .send();
+        })
+        .compose(res -> {
+          JsonObject responseBody = res.bodyAsJsonObject();
+          assertThat(responseBody.getJsonArray("items").size(), is(3));
+          return webClient.postAbs(OKAPI_URL + "/reservoir/upload")
+              .expect(ResponsePredicate.SC_BAD_REQUEST)
+              .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+              .putHeader(XOkapiHeaders.PERMISSIONS,
+                  "[\"" + PERM_PREFIX + "." + "SOURCE-7" + "\"]")
+              .addQueryParam("sourceId", "SOURCE-7")
+              .addQueryParam("localIdPath",  "$.marc.fields[*].001")
+              .addQueryParam("mode", "bulk")
+              .sendMultipartForm(requestForm);
+        })
+        .map(res -> {
+          assertThat(res.bodyAsString(),
+              is("Bulk mode requires that source SOURCE-7 version 1 has no records"));
+          return null;
+        })
+        .onComplete(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void uploadNonFormIso2709Bulk(TestContext context) {
+    webClient.postAbs(OKAPI_URL + "/reservoir/upload")
+        .expect(ResponsePredicate.SC_OK)
+        .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+        .putHeader(XOkapiHeaders.PERMISSIONS, "[\"" + PERM_PREFIX + "." + "SOURCE-9" + "\"]")
+        .putHeader("Content-Type", "application/marc")
+        .addQueryParam("sourceId", "SOURCE-9")
+        .addQueryParam("mode", "bulk")
+        .addQueryParam("fileName", "marc3.mrc")
+        .sendBuffer(marc3marcBuffer)
+        .compose(res -> {
+          JsonObject responseBody = res.bodyAsJsonObject();
+          assertThat(responseBody.getJsonObject("marc3.mrc").getInteger("inserted"), is(3));
+          return webClient.postAbs(OKAPI_URL + "/reservoir/upload")
+              .expect(ResponsePredicate.SC_BAD_REQUEST)
+              .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+              .putHeader(XOkapiHeaders.PERMISSIONS,
+                  "[\"" + PERM_PREFIX + "." + "SOURCE-9" + "\"]")
+              .putHeader("Content-Type", "application/marc")
+              .addQueryParam("sourceId", "SOURCE-9")
+              .addQueryParam("mode", "bulk")
+              .sendBuffer(marc3marcBuffer);
+        })
+        .map(res -> {
+          assertThat(res.bodyAsString(),
+              is("Bulk mode requires that source SOURCE-9 version 1 has no records"));
+          return null;
+        })
+        .onComplete(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void uploadBadBatchSize(TestContext context) {
+    MultipartForm requestForm = MultipartForm.create()
+        .binaryFileUpload("records", "marc3.mrc", marc3marcBuffer,  "application/marc");
+
+    webClient.postAbs(OKAPI_URL + "/reservoir/upload")
+        .expect(ResponsePredicate.SC_BAD_REQUEST)
+        .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+        .putHeader(XOkapiHeaders.PERMISSIONS, "[\"" + PERM_PREFIX + "." + "SOURCE-1" + "\"]")
+        .addQueryParam("sourceId", "SOURCE-1")
+        .addQueryParam("batchSize", "0")
+        .sendMultipartForm(requestForm)
+        .onComplete(context.asyncAssertSuccess(res -> {
+          assertThat(res.bodyAsString(), is("batchSize must be in range 1..10000"));
+        }));
+  }
+
   @Test
   public void uploadMarcXmlNoId(TestContext context) {
     MultipartForm requestForm1 = MultipartForm.create()
@@ -0,0 +1,185 @@
+package org.folio.reservoir.util;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Disjoint sets of elements numbered 0, 1, 2, ...
+ *
+ * <p>Union by size with path halving. Each element takes a single int: the parent of
+ * the element or, for the root of a set, the negated size of the set. Storage is
+ * allocated in chunks; chunks for elements at or beyond the heap limit are allocated
+ * outside the Java heap, so that tens of millions of elements do not need a large heap.
+ *
+ * <p>When all unions are done, {@link #label()} numbers the sets, after which
+ * {@link #component(int)} returns the set number of an element.
+ */
+public class UnionFind {
+  static final int CHUNK_BITS = 16;
+  static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private final int heapLimit;
+  private final List<IntBuffer> chunks = new ArrayList<>();
+  private int size;
+  private int components = -1;
+
+  /**
+   * Create empty union-find structure.
+   * @param heapLimit number of elements stored on heap; the rest is stored off-heap
+   */
+  public UnionFind(int heapLimit) {
+    this.heapLimit = heapLimit;
+  }
+
+  /**
+   * Create empty union-find structure stored on heap.
+   */
+  public UnionFind() {
+    this(Integer.MAX_VALUE);
+  }
+
+  static IntBuffer allocate(int ints, boolean offHeap) {
+    int bytes = ints * Integer.BYTES;
+    return (offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes))
+        .asIntBuffer();
+  }
+
+  private int get(int element) {
+    return chunks.get(element >>> CHUNK_BITS).get(element & CHUNK_MASK);
+  }
+
+  private void set(int element, int value) {
+    chunks.get(element >>> CHUNK_BITS).put(element & CHUNK_MASK, value);
+  }
+
+  private void checkElement(int element) {
+    if (element < 0 || element >= size) {
+      throw new IndexOutOfBoundsException("element " + element + " out of range");
+    }
+  }
+
+  private void checkNotLabeled() {
+    if (components >= 0) {
+      throw new IllegalStateException("sets already labeled");
+    }
+  }
+
+  /**
+   * Add element in a set of its own.
+   * @return element number
+   */
+  public int add() {
+    checkNotLabeled();
+    if (size == Integer.MAX_VALUE) {
+      throw new IllegalStateException("too many elements");
+    }
+    if ((size & CHUNK_MASK) == 0) {
+      chunks.add(allocate(CHUNK_SIZE, size >= heapLimit));
+    }
+    set(size, -1);
+    return size++;
+  }
+
+  /**
+   * Number of elements.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Number of elements stored off-heap.
+   */
+  public int offHeapSize() {
+    return Math.max(0, size - Math.max(0, heapLimit));
+  }
+
+  /**
+   * Find representative of the set of an element.
+   * @param element element number
+   * @return root element of the set
+   */
+  public int find(int element) {
+    checkNotLabeled();
+    checkElement(element);
+    int x = element;
+    int parent;
+    while ((parent = get(x)) >= 0) {
+      int grandParent = get(parent);
+      if (grandParent < 0) {
+        return parent;
+      }
+      set(x, grandParent);
+      x = grandParent;
+    }
+    return x;
+  }
+
+  /**
+   * Join the sets of two elements.
+   * @param a element number
+   * @param b element number
+   * @return true if the sets were joined; false if the elements were in the same set
+   */
+  public boolean union(int a, int b) {
+    int ra = find(a);
+    int rb = find(b);
+    if (ra == rb) {
+      return false;
+    }
+    int sa = get(ra); // negated sizes
+    int sb = get(rb);
+    if (sa > sb) {
+      int t = ra;
+      ra = rb;
+      rb = t;
+    }
+    set(ra, sa + sb);
+    set(rb, ra);
+    return true;
+  }
+
+  /**
+   * Number the sets 0, 1, ... in order of their root element.
+   *
+   * <p>No more elements or unions can be made after this.
+   * @return number of sets
+   */
+  public int label() {
+    if (components >= 0) {
+      return components;
+    }
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (get(i) < 0) {
+        set(i, -1 - count++);
+      }
+    }
+    // roots now hold their label; an element that is labeled holds the label of its root
+    for (int i = 0; i < size; i++) {
+      int value = get(i);
+      while (value >= 0) {
+        value = get(value);
+      }
+      set(i, value);
+    }
+    components = count;
+    return count;
+  }
+
+  /**
+   * Set number of an element.
+   * @param element element number
+   * @return set number in range 0 to {@link #label()} - 1
+   */
+  public int component(int element) {
+    if (components < 0) {
+      throw new IllegalStateException("sets not labeled");
+    }
+    checkElement(element);
+    return -1 - get(element);
+  }
+}
@@ -0,0 +1,75 @@
+package org.folio.reservoir.util;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Append-only list of UUIDs stored as pairs of longs.
+ *
+ * <p>Storage is allocated in chunks like {@link UnionFind}; chunks for entries at or
+ * beyond the heap limit are allocated outside the Java heap.
+ */
+public class UuidList {
+  private static final int CHUNK_MASK = UnionFind.CHUNK_SIZE - 1;
+
+  private final int heapLimit;
+  private final List<LongBuffer> chunks = new ArrayList<>();
+  private int size;
+
+  /**
+   * Create empty list.
+   * @param heapLimit number of entries stored on heap; the rest is stored off-heap
+   */
+  public UuidList(int heapLimit) {
+    this.heapLimit = heapLimit;
+  }
+
+  /**
+   * Create empty list stored on heap.
+   */
+  public UuidList() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Append UUID.
+   * @param uuid value
+   * @return index of value
+   */
+  public int add(UUID uuid) {
+    if (size == Integer.MAX_VALUE) {
+      throw new IllegalStateException("too many elements");
+    }
+    if ((size & CHUNK_MASK) == 0) {
+      int bytes = 2 * UnionFind.CHUNK_SIZE * Long.BYTES;
+      chunks.add((size >= heapLimit ? ByteBuffer.allocateDirect(bytes)
+          : ByteBuffer.allocate(bytes)).asLongBuffer());
+    }
+    LongBuffer chunk = chunks.get(size >>> UnionFind.CHUNK_BITS);
+    int offset = 2 * (size & CHUNK_MASK);
+    chunk.put(offset, uuid.getMostSignificantBits());
+    chunk.put(offset + 1, uuid.getLeastSignificantBits());
+    return size++;
+  }
+
+  /**
+   * Get UUID.
+   * @param index index of value
+   * @return value
+   */
+  public UUID get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("index " + index + " out of range");
+    }
+    LongBuffer chunk = chunks.get(index >>> UnionFind.CHUNK_BITS);
+    int offset = 2 * (index & CHUNK_MASK);
+    return new UUID(chunk.get(offset), chunk.get(offset + 1));
+  }
+
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,102 @@
+package org.folio.reservoir.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class UnionFindTest {
+
+  @Test
+  public void basic() {
+    UnionFind sets = new UnionFind();
+    for (int i = 0; i < 6; i++) {
+      assertThat(sets.add(), is(i));
+    }
+    assertThat(sets.size(), is(6));
+    Assert.assertTrue(sets.union(0, 3));
+    Assert.assertTrue(sets.union(4, 3));
+    Assert.assertFalse(sets.union(0, 4));
+    Assert.assertTrue(sets.union(1, 5));
+    assertThat(sets.find(4), is(sets.find(0)));
+    Assert.assertNotEquals(sets.find(1), sets.find(0));
+    assertThat(sets.label(), is(3));
+    assertThat(sets.label(), is(3));
+    assertThat(sets.component(0), is(sets.component(3)));
+    assertThat(sets.component(0), is(sets.component(4)));
+    assertThat(sets.component(1), is(sets.component(5)));
+    Assert.assertNotEquals(sets.component(0), sets.component(1));
+    Assert.assertNotEquals(sets.component(2), sets.component(1));
+    Assert.assertNotEquals(sets.component(2), sets.component(0));
+    Assert.assertThrows(IllegalStateException.class, sets::add);
+    Assert.assertThrows(IllegalStateException.class, () -> sets.union(0, 1));
+    Assert.assertThrows(IndexOutOfBoundsException.class, () -> sets.component(6));
+  }
+
+  @Test
+  public void bad() {
+    UnionFind sets = new UnionFind();
+    Assert.assertThrows(IndexOutOfBoundsException.class, () -> sets.find(0));
+    sets.add();
+    Assert.assertThrows(IndexOutOfBoundsException.class, () -> sets.find(-1));
+    Assert.assertThrows(IllegalStateException.class, () -> sets.component(0));
+  }
+
+  static int root(int[] parent, int x) {
+    while (parent[x] != x) {
+      x = parent[x];
+    }
+    return x;
+  }
+
+  @Test
+  public void offHeap() {
+    int n = 3 * UnionFind.CHUNK_SIZE + 17;
+    UnionFind sets = new UnionFind(UnionFind.CHUNK_SIZE);
+    int[] naive = new int[n];
+    for (int i = 0; i < n; i++) {
+      sets.add();
+      naive[i] = i;
+    }
+    assertThat(sets.offHeapSize(), is(n - UnionFind.CHUNK_SIZE));
+    Random random = new Random(1);
+    for (int k = 0; k < n / 2; k++) {
+      int a = random.nextInt(n);
+      int b = random.nextInt(n / 100); // few large sets and many singletons
+      sets.union(a, b);
+      naive[root(naive, a)] = root(naive, b);
+    }
+    for (int i = 0; i < n; i++) {
+      naive[i] = root(naive, i);
+    }
+    int components = sets.label();
+    int[] map = new int[components];
+    Arrays.fill(map, -1);
+    for (int i = 0; i < n; i++) {
+      int c = sets.component(i);
+      if (map[c] == -1) {
+        map[c] = naive[i];
+      }
+      assertThat(map[c], is(naive[i]));
+    }
+    assertThat((int) Arrays.stream(naive).distinct().count(), is(components));
+  }
+
+  @Test
+  public void uuidList() {
+    UuidList list = new UuidList(1);
+    UUID[] uuids = new UUID[UnionFind.CHUNK_SIZE + 1];
+    for (int i = 0; i < uuids.length; i++) {
+      uuids[i] = UUID.randomUUID();
+      assertThat(list.add(uuids[i]), is(i));
+    }
+    assertThat(list.size(), is(uuids.length));
+    for (int i = 0; i < uuids.length; i++) {
+      assertThat(list.get(i), is(uuids[i]));
+    }
+    Assert.assertThrows(IndexOutOfBoundsException.class, () -> list.get(uuids.length));
+  }
+}